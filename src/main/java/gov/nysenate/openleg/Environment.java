@@ -5,7 +5,8 @@ import gov.nysenate.openleg.processors.AgendaProcessor;
 import gov.nysenate.openleg.processors.BillProcessor;
 import gov.nysenate.openleg.processors.CalendarProcessor;
 import gov.nysenate.openleg.processors.TranscriptProcessor;
-import gov.nysenate.openleg.util.ChangeLogger;
+import gov.nysenate.openleg.util.Application;
+import gov.nysenate.openleg.util.Metrics;
 import gov.nysenate.openleg.util.Storage;
 import gov.nysenate.openleg.util.Timer;
 import gov.nysenate.util.Config;
@@ -269,6 +270,7 @@ public class Environment
         CalendarProcessor calendarProcessor = new CalendarProcessor();
         AgendaProcessor agendaProcessor = new AgendaProcessor();
         TranscriptProcessor transcriptProcessor = new TranscriptProcessor();
+        Metrics metrics = Application.getMetrics();
 
         Collections.sort((List<File>)files, new FileNameComparator());
 
@@ -276,9 +278,10 @@ public class Environment
         // Each file processor should produce a change log indicating what happened
         timer.start();
         for(File file : files) {
+            long start = System.nanoTime();
+            String type = file.getParentFile().getName();
             try {
                 logger.debug("Ingesting: "+file);
-                String type = file.getParentFile().getName();
                 if (type.equals("bills")) {
                     billProcessor.process(file, storage);
                 }
@@ -294,13 +297,14 @@ public class Environment
                 else if (type.equals("transcripts")) {
                     transcriptProcessor.process(file, storage);
                 }
+                storage.getChangeLogger().flush();
 
                 // To avoid memory issues, occasionally flush changes to file-system and truncate memory
                 if (storage.memory.size() > 4000) {
                     storage.flush();
                     storage.clear();
                 }
-
+                metrics.record("ingest."+type, start);
             }
             catch (IOException e) {
                 logger.error("Issue with "+file.getName(), e);
@@ -314,6 +318,6 @@ public class Environment
         }
         storage.flush();
         logger.info(timer.stop()+" seconds to injest "+files.size()+" files.");
-        return ChangeLogger.getChangeLog();
+        return storage.getChangeLogger().getChangeLog();
     }
 }
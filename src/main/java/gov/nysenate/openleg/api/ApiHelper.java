@@ -5,6 +5,7 @@ import gov.nysenate.openleg.model.Action;
 import gov.nysenate.openleg.model.BaseObject;
 import gov.nysenate.openleg.model.Bill;
 import gov.nysenate.openleg.model.Calendar;
+import gov.nysenate.openleg.model.IBaseObject;
 import gov.nysenate.openleg.model.Meeting;
 import gov.nysenate.openleg.model.Result;
 import gov.nysenate.openleg.model.Section;
@@ -13,9 +14,11 @@ import gov.nysenate.openleg.model.Sequence;
 import gov.nysenate.openleg.model.Supplemental;
 import gov.nysenate.openleg.model.Transcript;
 import gov.nysenate.openleg.model.Vote;
+import gov.nysenate.openleg.util.Application;
 import gov.nysenate.openleg.util.OpenLegConstants;
 import gov.nysenate.openleg.util.TextFormatter;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -27,6 +30,9 @@ import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
 
 public class ApiHelper implements OpenLegConstants {
@@ -44,6 +50,90 @@ public class ApiHelper implements OpenLegConstants {
         return mapper;
     }
 
+    /**
+     * Loads full objects from read only storage for results indexed without their JSON data.
+     * Votes and actions are found within their bill.
+     */
+    public static final Result.Loader STORAGE_LOADER = new Result.Loader() {
+        public IBaseObject load(Result result) {
+            String key = result.getFields().get("okey");
+            String type = result.getOtype();
+            try {
+                BaseObject object = null;
+                if (type.equals("vote") || type.equals("action")) {
+                    Bill bill = (Bill)Application.getReadOnlyStorage().get(key, Bill.class);
+                    if (bill != null && type.equals("vote")) {
+                        for (Vote vote : bill.getVotes()) {
+                            if (vote.getOid().equals(result.getOid())) {
+                                vote.setBill(bill);
+                                object = vote;
+                            }
+                        }
+                    }
+                    else if (bill != null) {
+                        for (Action action : bill.getActions()) {
+                            if (action.getOid().equals(result.getOid())) {
+                                action.setBill(bill);
+                                object = action;
+                            }
+                        }
+                    }
+                }
+                else {
+                    object = Application.getReadOnlyStorage().get(key, getApiType(type).clazz());
+                }
+
+                if (object == null) {
+                    logger.error("Unable to load "+type+" "+result.getOid()+" from storage key "+key);
+                    return null;
+                }
+                object.setModifiedDate(new Date(result.getLastModified()));
+                object.setActive(result.isActive());
+                return object;
+            }
+            catch (Exception e) {
+                logger.error(TextFormatter.append("problem loading result: ", type, "-", result.getOid()), e);
+                return null;
+            }
+        }
+    };
+
+    /**
+     * Decodes the object JSON stored with a result in the index.
+     */
+    public static final Result.Loader DATA_LOADER = new Result.Loader() {
+        public IBaseObject load(Result result) {
+            Class<? extends BaseObject> clazz = getApiType(result.getOtype()).clazz();
+            try {
+                BaseObject object = readData(result.getData(), clazz);
+                object.setModifiedDate(new Date(result.getLastModified()));
+                object.setActive(result.isActive());
+                return object;
+            } catch (Exception e) {
+                logger.error("error binding:" + clazz.getName(), e);
+                return null;
+            }
+        }
+    };
+
+    /**
+     * Reads an object from the JSON stored in the index, which wraps it in an object keyed
+     * by its otype, e.g. {"bill": {...}}. The wrapper is skipped by the streaming parser
+     * rather than trimmed off a copy of the string.
+     */
+    public static <T extends BaseObject> T readData(String jsonData, Class<T> clazz) throws IOException {
+        JsonParser parser = getMapper().getJsonFactory().createJsonParser(jsonData);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME) {
+                throw new JsonParseException("Expected an object wrapped by its otype", parser.getCurrentLocation());
+            }
+            parser.nextToken();
+            return getMapper().readValue(parser, clazz);
+        } finally {
+            parser.close();
+        }
+    }
+
     public static ArrayList<Result> buildSearchResultList(SenateResponse sr) {
 
         ArrayList<Result> resultList = new ArrayList<Result>();
@@ -52,32 +142,29 @@ public class ApiHelper implements OpenLegConstants {
             return resultList;
 
         for (Result result : sr.getResults()) {
+            // Each result is only decoded and described once, however often it's built
+            if (result.getTitle() != null)
+                continue;
+
             try {
                 String type = result.getOtype();
                 String jsonData = result.getData();
 
-                if (jsonData == null)
+                if (jsonData == null) {
+                    // Lean documents; describe the result from its stored fields and
+                    // only load the full object if it is asked for.
+                    if (result.getFields() != null && result.getFields().get("okey") != null) {
+                        describeFromFields(result);
+                        result.setLoader(STORAGE_LOADER);
+                    }
                     continue;
-
-                jsonData = unwrapJson(jsonData);
-
-                ApiType apiType = getApiType(type);
-                Class<? extends BaseObject> clazz = apiType.clazz();
-
-                BaseObject resultObj = null;
-                try {
-                    resultObj = mapper.readValue(jsonData, clazz);
-                    result.setObject(resultObj);
-                } catch (Exception e) {
-                    logger.error("error binding:" + clazz.getName(), e);
                 }
 
+                result.setLoader(DATA_LOADER);
+                BaseObject resultObj = (BaseObject) result.getObject();
                 if (resultObj == null)
                     continue;
 
-                resultObj.setModifiedDate(new Date(result.getLastModified()));
-                resultObj.setActive(result.isActive());
-
                 String title = "";
                 String summary = "";
 
@@ -212,6 +299,78 @@ public class ApiHelper implements OpenLegConstants {
         return sr.getResults();
     }
 
+    /**
+     * Fills in the title, summary and listing fields of a result from the fields stored in
+     * its index document, matching what buildSearchResultList derives from full objects.
+     */
+    private static void describeFromFields(Result result) {
+        String type = result.getOtype();
+        HashMap<String, String> stored = result.getFields();
+        Date when = stored.get("when") != null ? new Date(Long.parseLong(stored.get("when"))) : null;
+
+        String title = stored.get("title") != null ? stored.get("title") : "";
+        String summary = stored.get("summary") != null ? stored.get("summary") : "";
+
+        HashMap<String, String> fields = new HashMap<String, String>();
+        fields.put("type", type);
+        fields.put("okey", stored.get("okey"));
+
+        if (type.equals("bill")) {
+            if (title.isEmpty())
+                title = "(no title)";
+            fields.put("sponsor", stored.get("sponsor"));
+            fields.put("othersponsors", stored.get("othersponsors"));
+            fields.put("committee", stored.get("committee"));
+            fields.put("billno", result.getOid());
+            fields.put("summary", summary);
+            fields.put("year", stored.get("year"));
+        } else if (type.equals("calendar")) {
+            String ctype = stored.get("ctype");
+            if (ctype == null)
+                fields.put("type", "");
+            else if (ctype.equals("active"))
+                fields.put("type", "Active List");
+            else if (ctype.equals("floor"))
+                fields.put("type", "Floor Calendar");
+            else
+                fields.put("type", ctype);
+            if (when != null)
+                fields.put("date", DATE_FORMAT_CUSTOM.format(when));
+        } else if (type.equals("transcript")) {
+            if (when != null)
+                title = new SimpleDateFormat("MMM d, yyyy h:mm aa").format(when);
+            else
+                title = "Transcript - " + stored.get("location");
+            summary = TextFormatter.append(stored.get("session-type"), ": ", stored.get("location"));
+            fields.put("location", stored.get("location"));
+        } else if (type.equals("meeting")) {
+            if (when != null)
+                title = TextFormatter.append(stored.get("committee"), " (",
+                        new SimpleDateFormat("MMM d, yyyy - h:mm a").format(when), ")");
+            fields.put("location", stored.get("location"));
+            fields.put("chair", stored.get("chair"));
+            fields.put("committee", stored.get("committee"));
+        } else if (type.equals("action")) {
+            summary = "";
+            if (when != null)
+                fields.put("date", DATE_FORMAT_MED.format(when));
+            fields.put("billno", stored.get("billno"));
+        } else if (type.equals("vote")) {
+            fields.put("type", stored.get("committee") != null ? "Committee Vote" : "Floor Vote");
+            fields.put("sponsor", stored.get("sponsor"));
+            fields.put("billno", stored.get("billno"));
+            fields.put("othersponsors", stored.get("othersponsors"));
+            if (stored.get("committee") != null)
+                fields.put("committee", stored.get("committee"));
+            title = when != null ? DATE_FORMAT_CUSTOM.format(when) : "";
+            summary = "";
+        }
+
+        result.setTitle(title);
+        result.setSummary(summary);
+        result.setFields(fields);
+    }
+
     public static String dateReplace(String term) {
         Pattern  p = Pattern.compile("(\\d{1,2}[-]?){2}(\\d{2,4})T\\d{2}-\\d{2}");
         Matcher m = p.matcher(term);
@@ -0,0 +1,140 @@
+package gov.nysenate.openleg.api;
+
+import gov.nysenate.openleg.model.Change;
+import gov.nysenate.openleg.model.admin.ChangeLogDAO;
+import gov.nysenate.openleg.util.Storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+
+/**
+ * Writes pages of the changelog as JSON so that consumers can follow every change in order
+ * without polling search.
+ * <p>
+ * Changes are returned in the order they were reported, after the change whose id is given by
+ * the after parameter. Each page includes the cursor for the next page as next: the id of its
+ * last change, or the given after value when the page is empty. A page shorter than the limit
+ * means the client has caught up; it should keep polling with next to pick up new changes.
+ * The limit, otype and oid parameters are also supported.
+ * <p>
+ * When constructed with a Storage and requested with embed=true, each change that wasn't a
+ * delete includes the current published document from storage. The document may be newer
+ * than the change when the object has changed again since.
+ */
+public class ChangeFeed
+{
+    private static final Logger logger = Logger.getLogger(ChangeFeed.class);
+
+    public static final int DEFAULT_LIMIT = 1000;
+    public static final int MAX_LIMIT = 10000;
+
+    private final ChangeLogDAO dao;
+
+    private final Storage storage;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * @param dao - The changelog to read changes from.
+     * @param storage - The storage to embed documents from; null to never embed documents.
+     */
+    public ChangeFeed(ChangeLogDAO dao, Storage storage)
+    {
+        this.dao = dao;
+        this.storage = storage;
+    }
+
+    public void write(HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        String after = request.getParameter("after");
+        String otype = request.getParameter("otype");
+        String oid = request.getParameter("oid");
+        String limitParam = request.getParameter("limit");
+        boolean embed = storage != null && "true".equals(request.getParameter("embed"));
+
+        int afterId = 0;
+        int limit = DEFAULT_LIMIT;
+        try {
+            if (after != null && !after.isEmpty()) {
+                afterId = Integer.parseInt(after.trim());
+            }
+            if (limitParam != null) {
+                limit = Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(limitParam)));
+            }
+        }
+        catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid after ["+after+"] or limit ["+limitParam+"] parameter.");
+            return;
+        }
+
+        List<Change> changes;
+        try {
+            changes = dao.getChangesAfter(afterId, otype == null ? null : otype.toLowerCase(), oid, limit);
+        }
+        catch (SQLException e) {
+            logger.error("Unable to read changelog", e);
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode changeNodes = root.putArray("changes");
+        for (Change change : changes) {
+            ObjectNode node = changeNodes.addObject();
+            node.put("id", change.getId());
+            node.put("otype", change.getOtype());
+            node.put("oid", change.getOid());
+            node.put("status", change.getStatus().name());
+            node.put("time", change.getTime().getTime());
+            if (embed) {
+                embedDocument(node, change);
+            }
+        }
+
+        if (changes.isEmpty()) {
+            root.put("next", String.valueOf(afterId));
+        }
+        else {
+            root.put("next", String.valueOf(changes.get(changes.size()-1).getId()));
+        }
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        mapper.writeValue(response.getWriter(), root);
+    }
+
+    /**
+     * Adds the raw storage JSON for the changed document. Deleted, unpublished, and changes
+     * reported before the year was recorded get a null document.
+     */
+    private void embedDocument(ObjectNode node, Change change)
+    {
+        File file = null;
+        if (change.getStatus() != Storage.Status.DELETED && change.getYear() > 0) {
+            file = storage.getPublishedStorageFile(change.getYear()+"/"+change.getOtype()+"/"+change.getOid());
+        }
+
+        if (file == null) {
+            node.putNull("document");
+            return;
+        }
+
+        try {
+            node.put("document", mapper.readTree(file));
+        }
+        catch (IOException e) {
+            logger.error("Unable to read storage file: "+file, e);
+            node.putNull("document");
+        }
+    }
+}
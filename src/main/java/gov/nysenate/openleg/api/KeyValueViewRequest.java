@@ -1,6 +1,6 @@
 package gov.nysenate.openleg.api;
 
-import gov.nysenate.openleg.api.QueryBuilder.QueryBuilderException;
+import gov.nysenate.openleg.lucene.LuceneQueryBuilder;
 import gov.nysenate.openleg.model.BaseObject;
 import gov.nysenate.openleg.model.Bill;
 import gov.nysenate.openleg.model.Result;
@@ -15,6 +15,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.Query;
 
 public class KeyValueViewRequest extends AbstractApiRequest {
     private final Logger logger = Logger.getLogger(KeyValueViewRequest.class);
@@ -37,9 +39,7 @@ public class KeyValueViewRequest extends AbstractApiRequest {
         String sortField = "sortindex";
         boolean sortOrder = false;
 
-        QueryBuilder queryBuilder = new QueryBuilder();
-
-
+        LuceneQueryBuilder luceneQueryBuilder = Application.getLucene().queryBuilder();
 
         SenateResponse sr = null;
 
@@ -47,22 +47,24 @@ public class KeyValueViewRequest extends AbstractApiRequest {
         int start = (pageNumber - 1) * pageSize;
 
         try {
-            queryBuilder.keyValue(key, "\""+value+"\"").and().otype("bill");
+            luceneQueryBuilder.phrase(key, value).otype("bill");
 
             String filter = request.getParameter("filter");
             if(filter != null) {
-                queryBuilder.and().insertAfter(filter);
+                luceneQueryBuilder.text(filter);
             }
             else {
-                queryBuilder.and().current().and().active();
+                luceneQueryBuilder.current().active();
             }
-        } catch (QueryBuilderException e) {
-            logger.error("Invalid query construction", e);
-            throw new ApiRequestException("Invalid query construction", e);
+        } catch (QueryNodeException e) {
+            logger.error("Invalid filter", e);
+            throw new ApiRequestException("Invalid filter", e);
         }
 
+        // The search term shown and linked to is the text of the query that was run
+        Query query = luceneQueryBuilder.query();
         try {
-            sr = Application.getLucene().search(queryBuilder.query(), start, pageSize, sortField, sortOrder);
+            sr = Application.getLucene().search(query, start, pageSize, sortField, sortOrder);
         }
         catch (IOException e) {
             logger.error(e);
@@ -74,9 +76,8 @@ public class KeyValueViewRequest extends AbstractApiRequest {
         sr.setResults(ApiHelper.buildSearchResultList(sr));
 
         if(format.matches("(?i)(csv|json|mobile|rss|xml)")) {
-            ArrayList<Result> searchResults = ApiHelper.buildSearchResultList(sr);
             ArrayList<Bill> bills = new ArrayList<Bill>();
-            for(Result result: searchResults) {
+            for(Result result: sr.getResults()) {
                 bills.add((Bill)result.getObject());
             }
             request.setAttribute("bills", bills);
@@ -85,7 +86,7 @@ public class KeyValueViewRequest extends AbstractApiRequest {
             request.setAttribute("sortField", sortField);
             request.setAttribute("sortOrder", Boolean.toString(sortOrder));
             request.setAttribute("type", key);
-            request.setAttribute("term", queryBuilder.query());
+            request.setAttribute("term", query.toString());
             request.setAttribute("format", format);
             request.setAttribute(PAGE_IDX, pageNumber);
             request.setAttribute(PAGE_SIZE, pageSize);
@@ -1,6 +1,6 @@
 package gov.nysenate.openleg.api;
 
-import gov.nysenate.openleg.api.QueryBuilder.QueryBuilderException;
+import gov.nysenate.openleg.lucene.Lucene;
 import gov.nysenate.openleg.model.Action;
 import gov.nysenate.openleg.model.BaseObject;
 import gov.nysenate.openleg.model.Bill;
@@ -15,6 +15,8 @@ import gov.nysenate.openleg.util.JSPHelper;
 import gov.nysenate.openleg.util.TextFormatter;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -23,6 +25,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.apache.lucene.search.Query;
 
 public class MultiViewRequest extends AbstractApiRequest {
     private final Logger logger = Logger.getLogger(MultiViewRequest.class);
@@ -43,8 +46,6 @@ public class MultiViewRequest extends AbstractApiRequest {
         String sortField = "when";
         boolean sortOrder = true;
 
-        QueryBuilder queryBuilder = new QueryBuilder();
-
         if (type.contains("bill") || type.contains("resolution")) {
             sortField = "sortindex";
             sortOrder = false;
@@ -57,15 +58,12 @@ public class MultiViewRequest extends AbstractApiRequest {
 
         type = type.substring(0, type.length() - 1);
 
+        // The search term shown and linked to is the text of the query that was run
+        Lucene lucene = Application.getLucene();
+        Query query = lucene.queryBuilder().otype(type).current().active().query();
+        String term = query.toString();
         try {
-            queryBuilder.otype(type).and().current().and().active();
-        } catch (QueryBuilderException e) {
-            logger.error("Invalid query construction", e);
-            throw new ApiRequestException("Invalid query construction", e);
-        }
-
-        try {
-            sr = Application.getLucene().search(queryBuilder.query(), start, pageSize, sortField, sortOrder);
+            sr = lucene.search(query, start, pageSize, sortField, sortOrder);
         }
         catch (IOException e) {
             logger.error(e);
@@ -77,9 +75,8 @@ public class MultiViewRequest extends AbstractApiRequest {
         sr.setResults(ApiHelper.buildSearchResultList(sr));
 
         if(type.equalsIgnoreCase("bill") && format.matches("(?i)(csv|json|mobile|rss|xml)")) {
-            ArrayList<Result> searchResults = ApiHelper.buildSearchResultList(sr);
             ArrayList<Bill> bills = new ArrayList<Bill>();
-            for(Result result: searchResults) {
+            for(Result result: sr.getResults()) {
                 bills.add((Bill)result.getObject());
             }
             request.setAttribute("bills", bills);
@@ -88,7 +85,7 @@ public class MultiViewRequest extends AbstractApiRequest {
             request.setAttribute("sortField", sortField);
             request.setAttribute("sortOrder", Boolean.toString(sortOrder));
             request.setAttribute("type", type);
-            request.setAttribute("term", queryBuilder.query());
+            request.setAttribute("term", term);
             request.setAttribute("format", format);
             request.setAttribute(PAGE_IDX, pageNumber);
             request.setAttribute(PAGE_SIZE, pageSize);
@@ -96,9 +93,14 @@ public class MultiViewRequest extends AbstractApiRequest {
             request.setAttribute("results", sr);
         }
 
-        HashMap<String, String> feeds = new HashMap<String, String>();
-        feeds.put(type+" Feed", JSPHelper.getFullLink(request, "/search/?format=atom&amp;term="+queryBuilder.query()+"&amp;title="+StringUtils.capitalize(type+" Feed")));
-        request.setAttribute("feeds", feeds);
+        try {
+            HashMap<String, String> feeds = new HashMap<String, String>();
+            feeds.put(type+" Feed", JSPHelper.getFullLink(request, "/search/?format=atom&amp;term="+URLEncoder.encode(term, "UTF-8")+"&amp;title="+StringUtils.capitalize(type+" Feed")));
+            request.setAttribute("feeds", feeds);
+        }
+        catch (UnsupportedEncodingException e) {
+            logger.error("Unsupported encoding UTF-8", e);
+        }
     }
 
     @Override
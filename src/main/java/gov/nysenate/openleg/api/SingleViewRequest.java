@@ -1,6 +1,6 @@
 package gov.nysenate.openleg.api;
 
-import gov.nysenate.openleg.api.QueryBuilder.QueryBuilderException;
+import gov.nysenate.openleg.lucene.Lucene;
 import gov.nysenate.openleg.model.BaseObject;
 import gov.nysenate.openleg.model.Bill;
 import gov.nysenate.openleg.model.Calendar;
@@ -16,6 +16,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
+import org.apache.lucene.search.Query;
 
 public class SingleViewRequest extends AbstractApiRequest {
     private final Logger logger = Logger.getLogger(SingleViewRequest.class);
@@ -41,29 +42,26 @@ public class SingleViewRequest extends AbstractApiRequest {
 
         request.setAttribute(type , so);
 
-        try {
-            if(type.equals("bill") && !format.matches("(csv|json|xml)")) {
-                Bill bill = (Bill) so;
-                request.setAttribute("related-action", bill.getActions());
-                request.setAttribute("related-vote", bill.getVotes());
-
-                String rType = "bill";
-                String rQuery = QueryBuilder.build().otype(rType).and().relatedBills("oid", id).query();
-                ArrayList<Bill> bills = Application.getLucene().getSenateObjects(rQuery);
-                request.setAttribute("related-" + rType, bills);
-
-                rType = "meeting";
-                rQuery = QueryBuilder.build().otype(rType).and().keyValue("bills", id).query();
-                ArrayList<Meeting> meetings = Application.getLucene().getSenateObjects(rQuery);
-                request.setAttribute("related-" + rType, meetings);
-
-                rType = "calendar";
-                rQuery = QueryBuilder.build().otype(rType).and().keyValue("bills", id).query();
-                ArrayList<Calendar> calendars = Application.getLucene().getSenateObjects(rQuery);
-                request.setAttribute("related-" + rType, calendars);
-            }
-        } catch (QueryBuilderException e) {
-            logger.error(e);
+        if(type.equals("bill") && !format.matches("(csv|json|xml)")) {
+            Bill bill = (Bill) so;
+            request.setAttribute("related-action", bill.getActions());
+            request.setAttribute("related-vote", bill.getVotes());
+
+            Lucene lucene = Application.getLucene();
+            String rType = "bill";
+            Query rQuery = lucene.queryBuilder().otype(rType).amendmentsOf(id).query();
+            ArrayList<Bill> bills = lucene.getSenateObjects(rQuery);
+            request.setAttribute("related-" + rType, bills);
+
+            rType = "meeting";
+            rQuery = lucene.queryBuilder().otype(rType).phrase("bills", id).query();
+            ArrayList<Meeting> meetings = lucene.getSenateObjects(rQuery);
+            request.setAttribute("related-" + rType, meetings);
+
+            rType = "calendar";
+            rQuery = lucene.queryBuilder().otype(rType).phrase("bills", id).query();
+            ArrayList<Calendar> calendars = lucene.getSenateObjects(rQuery);
+            request.setAttribute("related-" + rType, calendars);
         }
     }
 
@@ -2,14 +2,20 @@ package gov.nysenate.openleg.api.servlets;
 
 import gov.nysenate.openleg.api.AbstractApiRequest.ApiRequestException;
 import gov.nysenate.openleg.api.ApiHelper;
+import gov.nysenate.openleg.api.ChangeFeed;
 import gov.nysenate.openleg.converter.Api2JsonConverter;
 import gov.nysenate.openleg.converter.Api2XmlConverter;
 import gov.nysenate.openleg.converter.pdf.PDFConverter;
+import gov.nysenate.openleg.lucene.DocumentBuilder;
+import gov.nysenate.openleg.lucene.LuceneQueryBuilder;
 import gov.nysenate.openleg.model.SenateResponse;
+import gov.nysenate.openleg.model.admin.ChangeLogDAO;
 import gov.nysenate.openleg.util.Application;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,15 +25,23 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.Query;
 
 @SuppressWarnings("serial")
 public class ApiServlet2 extends HttpServlet
 {
     public static int DEFAULT_PAGE_SIZE = 20;
     public static int MAX_PAGE_SIZE = 1000;
+    /**
+     * Offset searches collect every hit before the requested page; past this many hits
+     * clients must page with a cursor instead.
+     */
+    public static int MAX_OFFSET = 10000;
     public final Logger logger = Logger.getLogger(ApiServlet2.class);
     public final static Pattern documentPattern = Pattern.compile("(?:/api)?/2.0/(vote|action|bill|calendar|meeting|transcript)/(.*)?\\.(json|jsonp|xml|pdf)$");
     public final static Pattern searchPattern = Pattern.compile("(?:/api)?/2.0/(search|votes|bills|meetings|actions|calendars|transcripts).(json|jsonp|xml)$");
+    public final static Pattern changesPattern = Pattern.compile("(?:/api)?/2.0/changes.json$");
 
     @Override
     public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -40,6 +54,8 @@ public class ApiServlet2 extends HttpServlet
         String pageIdxParam = request.getParameter("pageIdx");
         String pageSizeParam = request.getParameter("pageSize");
         String sortOrderParam = request.getParameter("sortOrder");
+        String cursor = request.getParameter("cursor");
+        String facetsParam = request.getParameter("facets");
 
         try {
             try {
@@ -64,6 +80,15 @@ public class ApiServlet2 extends HttpServlet
                 throw new ApiRequestException("Invalid pageIdx ["+pageIdxParam+"] or pageSize ["+pageSizeParam+"]. Must be an integer.");
             }
 
+            if (cursor != null && pageIdxParam != null) {
+                throw new ApiRequestException("Use either pageIdx or cursor, not both.");
+            }
+            else if ((long)(pageIdx-1) * pageSize > MAX_OFFSET) {
+                // Multiplied as longs so that huge page numbers can't overflow past the check
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Page offset must be at most "+MAX_OFFSET+"; use cursor=* to page through deeper results.");
+                return;
+            }
+
             if ("true".equals(sortOrderParam)) {
                 sortOrder = true;
             }
@@ -76,16 +101,41 @@ public class ApiServlet2 extends HttpServlet
 
             Matcher searchMatcher = searchPattern.matcher(path);
             Matcher documentMatcher = documentPattern.matcher(path);
-            if (searchMatcher.find()) {
+            if (changesPattern.matcher(path).find()) {
+                // Incremental change feed for mirrors, paged by cursor rather than pageIdx
+                new ChangeFeed(new ChangeLogDAO(Application.getDB().getDataSource()), Application.getReadOnlyStorage()).write(request, response);
+            }
+            else if (searchMatcher.find()) {
                 String type = searchMatcher.group(1);
                 String format = searchMatcher.group(2);
                 String term = request.getParameter("term");
 
+                LuceneQueryBuilder query = Application.getLucene().queryBuilder();
                 if (!type.equals("search")) {
-                    term = "otype:"+type.substring(0, type.length()-1)+(term == null ? "" : " AND "+term);
+                    query.otype(type.substring(0, type.length()-1));
+                }
+                if (term != null) {
+                    try {
+                        query.text(term);
+                    }
+                    catch (QueryNodeException e) {
+                        throw new ApiRequestException("Invalid term: "+term);
+                    }
+                }
+
+                // Comma separated dimensions to count all of the results by, e.g. facets=otype,committee
+                Set<String> facets = null;
+                if (facetsParam != null) {
+                    facets = new HashSet<String>();
+                    for (String facet : facetsParam.split(",")) {
+                        if (!DocumentBuilder.FACET_FIELDS.containsKey(facet.trim())) {
+                            throw new ApiRequestException("Invalid facet: "+facet+". Must be one of "+DocumentBuilder.FACET_FIELDS.keySet());
+                        }
+                        facets.add(facet.trim());
+                    }
                 }
 
-                doSearch(request, response, format, type, term, pageIdx, pageSize, sort, sortOrder);
+                doSearch(request, response, format, type, query.query(), pageIdx, pageSize, cursor, sort, sortOrder, facets);
             }
             else if (documentMatcher.find()) {
                 String otype = documentMatcher.group(1);
@@ -103,11 +153,33 @@ public class ApiServlet2 extends HttpServlet
         }
     }
 
-    private void doSearch(HttpServletRequest request, HttpServletResponse response, String format, String type, String term, int pageNumber, int pageSize, String sort, boolean sortOrder) throws ApiRequestException
+    /**
+     * Writes a page of search results. With a cursor, the page after the cursor's hit is
+     * returned instead of using the page number; "*" starts from the first page. Each full
+     * page's metadata includes the cursor for the next one. Requested facets are counted over
+     * all of the results, not just the page.
+     */
+    private void doSearch(HttpServletRequest request, HttpServletResponse response, String format, String type, Query query, int pageNumber, int pageSize, String cursor, String sort, boolean sortOrder, Set<String> facets) throws ApiRequestException
     {
+        SenateResponse sr;
+        try {
+            if (cursor != null) {
+                sr = Application.getLucene().searchAfter(query, cursor.equals("*") ? null : cursor, pageSize, sort, sortOrder, facets);
+            }
+            else {
+                int start = (pageNumber-1) * pageSize;
+                sr = Application.getLucene().search(query, start, pageSize, sort, sortOrder, null, facets);
+            }
+        }
+        catch (IllegalArgumentException e) {
+            throw new ApiRequestException(e.getMessage());
+        }
+        catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            throw new ApiRequestException("internal server error.");
+        }
+
         try {
-            int start = (pageNumber-1) * pageSize;
-            SenateResponse sr = Application.getLucene().search(term, start, pageSize, sort, sortOrder);
             ApiHelper.buildSearchResultList(sr);
 
             if (format.equals("json")) {
@@ -139,7 +211,8 @@ public class ApiServlet2 extends HttpServlet
     private void doSingleView(HttpServletRequest request, HttpServletResponse response, String format, String type, String id) throws ApiRequestException
     {
         try {
-            SenateResponse sr = Application.getLucene().search("otype:"+type+" AND oid:\""+id+"\"", 0, 1, null, false);
+            Query query = Application.getLucene().queryBuilder().otype(type).oid(id).query();
+            SenateResponse sr = Application.getLucene().search(query, 0, 1, null, false);
             ApiHelper.buildSearchResultList(sr);
 
             if (format.equals("json")) {
@@ -168,7 +241,7 @@ public class ApiServlet2 extends HttpServlet
                 }
 
                 response.setContentType("application/pdf");
-                PDFConverter.write(sr.getResults().get(0).object, response.getOutputStream());
+                PDFConverter.write(sr.getResults().get(0).getObject(), response.getOutputStream());
             }
 
         } catch (Exception e) {
@@ -2,6 +2,7 @@ package gov.nysenate.openleg.api.servlets;
 
 import gov.nysenate.openleg.api.ApiHelper;
 import gov.nysenate.openleg.lucene.Lucene;
+import gov.nysenate.openleg.lucene.LuceneQueryBuilder;
 import gov.nysenate.openleg.model.Result;
 import gov.nysenate.openleg.model.SenateResponse;
 import gov.nysenate.openleg.model.Transcript;
@@ -17,6 +18,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
 
 @SuppressWarnings("serial")
 public class TranscriptServlet extends HttpServlet
@@ -37,21 +39,26 @@ public class TranscriptServlet extends HttpServlet
             month = "";
         }
 
-        String query = "otype:transcript AND publish_date:"+year+"-"+month+"*";
-        String searchtext = request.getParameter("searchtext");
-        if (searchtext != null && searchtext.trim().length() != 0) {
-            query += " AND full:("+searchtext+")";
-        }
-        else {
-            searchtext = "";
-        }
-
         Lucene lucene = Application.getLucene();
-        SenateResponse luceneResults = lucene.search(query, 0, 1000, "published", true);
-        ApiHelper.buildSearchResultList(luceneResults);
+        LuceneQueryBuilder query = lucene.queryBuilder().otype("transcript").prefix("publish_date", year+"-"+month);
         ArrayList<Transcript> transcripts = new ArrayList<Transcript>();
-        for (Result result : luceneResults.getResults()) {
-            transcripts.add((Transcript)result.getObject());
+        String searchtext = request.getParameter("searchtext");
+        try {
+            if (searchtext != null && searchtext.trim().length() != 0) {
+                query.text("full", searchtext);
+            }
+            else {
+                searchtext = "";
+            }
+
+            SenateResponse luceneResults = lucene.search(query.query(), 0, 1000, "published", true);
+            ApiHelper.buildSearchResultList(luceneResults);
+            for (Result result : luceneResults.getResults()) {
+                transcripts.add((Transcript)result.getObject());
+            }
+        }
+        catch (QueryNodeException e) {
+            logger.warn("Unable to parse transcript search: "+searchtext, e);
         }
 
         request.setAttribute("year", year);
@@ -1,11 +1,11 @@
 package gov.nysenate.openleg.api.servlets.admin;
 
+import gov.nysenate.openleg.api.ChangeFeed;
 import gov.nysenate.openleg.model.Change;
+import gov.nysenate.openleg.model.admin.ChangeLogDAO;
 import gov.nysenate.openleg.util.Application;
-import gov.nysenate.openleg.util.Storage;
 
 import java.io.IOException;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -21,6 +21,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
 
 import org.apache.commons.dbutils.QueryRunner;
 import org.apache.commons.dbutils.ResultSetHandler;
@@ -34,29 +35,6 @@ public class UpdatesServlet extends HttpServlet
 {
     public static final int QUERY_LIMIT = 250;
 
-    private static class ChangeHandler implements ResultSetHandler<ArrayList<Change>> {
-
-        @Override
-        public ArrayList<Change> handle(ResultSet results) throws SQLException
-        {
-            ArrayList<Change> changes = new ArrayList<Change>();
-            while(results.next()) {
-                    try {
-                        changes.add(new Change(
-                            results.getString("oid"),
-                            results.getString("otype"),
-                            Storage.Status.valueOf(results.getString("status")),
-                            mysqlDateFormat.parse(results.getString("time"))
-                        ));
-                    }
-                    catch (ParseException e) {
-                        logger.error("Invalid change.time format", e);
-                    }
-            }
-            return changes;
-        }
-    }
-
     private static final Logger logger = Logger.getLogger(UpdatesServlet.class);
 
     private static final SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
@@ -66,13 +44,21 @@ public class UpdatesServlet extends HttpServlet
 
     private final ResultSetHandler<ArrayList<Change>> handler;
 
+    private final ChangeLogDAO dao;
+
     private final List<String> otypes = Arrays.asList("bill","calendar","meeting","agenda");
 
     public UpdatesServlet()
+    {
+        this(Application.getDB().getDataSource());
+    }
+
+    public UpdatesServlet(DataSource datasource)
     {
         super();
-        handler = new ChangeHandler();
-        runner = new QueryRunner(Application.getDB().getDataSource());
+        handler = new ChangeLogDAO.ChangeHandler();
+        runner = new QueryRunner(datasource);
+        dao = new ChangeLogDAO(datasource);
     }
 
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
@@ -92,6 +78,13 @@ public class UpdatesServlet extends HttpServlet
 
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
     {
+        // The full changelog as JSON, paged by change id with after=<id> rather than by time
+        // so that changes reported out of time order aren't skipped; see ChangeFeed
+        if (getSafe(request, "format", "").equalsIgnoreCase("json")) {
+            new ChangeFeed(dao, null).write(request, response);
+            return;
+        }
+
         String start = getSafe(request, "start", "");
         String end = getSafe(request, "end", "");
         String otype = getSafe(request, "otype", "");
@@ -62,6 +62,13 @@ public class Api2JsonConverter
         ObjectNode responseNode = objectMapper.createObjectNode();
         ObjectNode metadataNode = objectMapper.createObjectNode();
         metadataNode.put("totalresults", String.valueOf(response.getMetadataByKey("totalresults")));
+        if (response.getMetadataByKey("cursor") != null) {
+            metadataNode.put("cursor", (String)response.getMetadataByKey("cursor"));
+        }
+        if (response.getMetadataByKey("facets") != null) {
+            // Counts by dimension, then by value, e.g. {"committee": {"FINANCE": 12, ...}, ...}
+            metadataNode.put("facets", objectMapper.valueToTree(response.getMetadataByKey("facets")));
+        }
         responseNode.put("metadata", metadataNode);
 
         ArrayNode resultsArray = objectMapper.createArrayNode();
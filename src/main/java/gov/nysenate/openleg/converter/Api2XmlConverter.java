@@ -20,6 +20,7 @@ import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.jdom2.CDATA;
@@ -47,6 +48,7 @@ public class Api2XmlConverter
         doc.setProperty("encoding", "UTF-8");
     }
 
+    @SuppressWarnings("unchecked")
     public void write(SenateResponse response, OutputStream out) throws IOException
     {
         Element root = makeElement(
@@ -59,6 +61,12 @@ public class Api2XmlConverter
                 )
             )
         );
+        if (response.getMetadataByKey("cursor") != null) {
+            root.getChild("metadata").addContent(makeElement("cursor", (String)response.getMetadataByKey("cursor")));
+        }
+        if (response.getMetadataByKey("facets") != null) {
+            root.getChild("metadata").addContent(makeFacetsElement((Map<String, Map<String, Integer>>)response.getMetadataByKey("facets")));
+        }
 
         Element results = new Element("results");
         for (Result result : response.getResults()) {
@@ -380,6 +388,26 @@ public class Api2XmlConverter
         return element;
     }
 
+    /**
+     * e.g. &lt;facets&gt;&lt;facet name="committee"&gt;&lt;value name="FINANCE" count="12"/&gt;...
+     */
+    protected Element makeFacetsElement(Map<String, Map<String, Integer>> facets)
+    {
+        Element element = new Element("facets");
+        for (Map.Entry<String, Map<String, Integer>> facet : facets.entrySet()) {
+            Element facetElement = new Element("facet");
+            facetElement.setAttribute("name", facet.getKey());
+            for (Map.Entry<String, Integer> value : facet.getValue().entrySet()) {
+                Element valueElement = new Element("value");
+                valueElement.setAttribute("name", value.getKey());
+                valueElement.setAttribute("count", String.valueOf(value.getValue()));
+                facetElement.addContent(valueElement);
+            }
+            element.addContent(facetElement);
+        }
+        return element;
+    }
+
     protected Element makeElement(String tag, Element...values)
     {
         Element element = new Element(tag);
@@ -22,9 +22,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
@@ -37,7 +37,7 @@ import com.google.gson.JsonPrimitive;
 public class LuceneJsonConverter
 {
     public static final Logger logger = Logger.getLogger(LuceneJsonConverter.class);
-    protected static HashMap<String,JsonObject> cachedSimpleBills = new HashMap<String,JsonObject>();
+    protected static ConcurrentHashMap<String,JsonObject> cachedSimpleBills = new ConcurrentHashMap<String,JsonObject>();
     protected static DateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
 
     /**
@@ -126,11 +126,13 @@ public class LuceneJsonConverter
                             else if(type.equals("Bill")) {
                                 Bill bill = (Bill)obj;
 
-                                if(!cachedSimpleBills.containsKey(bill.getBillId())) {
-                                    cachedSimpleBills.put(bill.getBillId(), converter(obj,internal_bill_exclude()));
+                                JsonObject simpleBill = cachedSimpleBills.get(bill.getBillId());
+                                if(simpleBill == null) {
+                                    simpleBill = converter(obj,internal_bill_exclude());
+                                    cachedSimpleBills.put(bill.getBillId(), simpleBill);
                                 }
 
-                                root.add(f.getName(), cachedSimpleBills.get(bill.getBillId()));
+                                root.add(f.getName(), simpleBill);
                             }
                             else if(type.equals("Date")) {
                                 Date d = (Date)obj;
@@ -24,6 +24,9 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -57,7 +60,16 @@ public class StorageJsonConverter
     protected final ObjectMapper objectMapper;
     protected final PrettyPrinter prettyPrinter;
 
-    private final SimpleDateFormat jsonDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    /**
+     * SimpleDateFormat isn't thread safe and read only storage is shared by web requests.
+     */
+    private final ThreadLocal<SimpleDateFormat> jsonDateFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue()
+        {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        }
+    };
 
     public StorageJsonConverter(Storage storage)
     {
@@ -327,6 +339,42 @@ public class StorageJsonConverter
     public void write(Bill bill, OutputStream out) throws IOException
     {
         logger.debug("Writing Bill: "+bill.getBillId());
+        JsonGenerator generator = this.jsonFactory.createJsonGenerator(out, JsonEncoding.UTF8);
+        generator.writeTree(makeBillNode(bill));
+        generator.close();
+    }
+
+    /**
+     * Computes a digest of the stored content of the bill. The modified date and data
+     * sources are excluded because they change with every block applied to the bill
+     * even when the block doesn't change any of the bill's actual data.
+     *
+     * @param bill - The bill to compute a content hash for.
+     * @return A hex encoded MD5 digest of the bill's content.
+     * @throws IOException
+     */
+    public String contentHash(Bill bill) throws IOException
+    {
+        ObjectNode node = makeBillNode(bill);
+        node.remove("modified");
+        node.remove("dataSources");
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        JsonGenerator generator = this.jsonFactory.createJsonGenerator(stream, JsonEncoding.UTF8);
+        generator.writeTree(node);
+        generator.close();
+
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(stream.toByteArray());
+            return String.format("%032x", new BigInteger(1, digest));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException("MD5 digest is not available", e);
+        }
+    }
+
+    public ObjectNode makeBillNode(Bill bill)
+    {
         ObjectNode node = objectMapper.createObjectNode();
         node.put("actClause", bill.getActClause());
         node.put("currentCommittee", bill.getCurrentCommittee());
@@ -354,9 +402,7 @@ public class StorageJsonConverter
         node.put("uniBill", bill.isUniBill());
         node.put("amendments", makeArrayNode(bill.getAmendments()));
         node.put("votes", makeArrayNode(bill.getVotes()));
-        JsonGenerator generator = this.jsonFactory.createJsonGenerator(out, JsonEncoding.UTF8);
-        generator.writeTree(node);
-        generator.close();
+        return node;
     }
 
     public Bill readBill(Reader reader) throws JsonProcessingException, IOException
@@ -555,7 +601,7 @@ public class StorageJsonConverter
     public Date makeDate(JsonNode node)
     {
         try {
-            return node.isNull() ? null : jsonDateFormat.parse(node.asText());
+            return node.isNull() ? null : jsonDateFormat.get().parse(node.asText());
         }
         catch (ParseException e) {
             logger.error("Invalid json date format: "+node.asText(), e);
@@ -730,7 +776,7 @@ public class StorageJsonConverter
     public String makeNode(Date date)
     {
         if (date != null) {
-            return jsonDateFormat.format(date);
+            return jsonDateFormat.get().format(date);
         }
         else {
             return null;
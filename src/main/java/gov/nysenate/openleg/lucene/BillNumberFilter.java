@@ -0,0 +1,107 @@
+package gov.nysenate.openleg.lucene;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+/**
+ * Indexes the normalized forms of each bill number alongside it, e.g. s01234a-2013 is also
+ * indexed as s1234a-2013, s1234-2013, s1234a and s1234 at the same position.
+ * <p>
+ * The base print number terms let amendment family and same as lookups be exact term
+ * queries, where matching on the raw bill number needs a wildcard or range over every
+ * amendment. Must come after lower casing. Only used when indexing the
+ * {@link OpenLegislationAnalyzer#BILL_NUMBER_FIELDS}; query text is searched
+ * as written so that a specific amendment still matches only itself.
+ */
+public final class BillNumberFilter extends TokenFilter
+{
+    /**
+     * A lower case bill number: prefix, print number, amendment and session, e.g. s01234a-2013
+     */
+    public static final Pattern BILL_NUMBER = Pattern.compile("([a-z])0*([1-9][0-9]{0,4})([a-z])?(?:-([0-9]{4}))?");
+
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final PositionIncrementAttribute positionAttribute = addAttribute(PositionIncrementAttribute.class);
+    private final LinkedList<String> pending = new LinkedList<String>();
+    private State state = null;
+
+    public BillNumberFilter(TokenStream input)
+    {
+        super(input);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException
+    {
+        if (!pending.isEmpty()) {
+            restoreState(state);
+            termAttribute.setEmpty().append(pending.removeFirst());
+            positionAttribute.setPositionIncrement(0);
+            return true;
+        }
+        else if (!input.incrementToken()) {
+            return false;
+        }
+
+        Set<String> terms = terms(termAttribute.toString());
+        if (!terms.isEmpty()) {
+            pending.addAll(terms);
+            state = captureState();
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException
+    {
+        super.reset();
+        pending.clear();
+        state = null;
+    }
+
+    /**
+     * @param billNumber - A bill number with or without its amendment and session, in any case.
+     * @return The lower case print number without leading zeros or the amendment, with the
+     *         session if it was given, e.g. s1234-2013 for S01234A-2013; null if it isn't a
+     *         bill number.
+     */
+    public static String baseBillNumber(String billNumber)
+    {
+        Matcher matcher = BILL_NUMBER.matcher(billNumber.toLowerCase());
+        if (!matcher.matches()) {
+            return null;
+        }
+        String base = matcher.group(1)+matcher.group(2);
+        return matcher.group(4) == null ? base : base+"-"+matcher.group(4);
+    }
+
+    /**
+     * @return The normalized terms to index with the token, not including the token itself.
+     */
+    private static Set<String> terms(String token)
+    {
+        Set<String> terms = new LinkedHashSet<String>();
+        Matcher matcher = BILL_NUMBER.matcher(token);
+        if (matcher.matches()) {
+            String base = matcher.group(1)+matcher.group(2);
+            String printNumber = matcher.group(3) == null ? base : base+matcher.group(3);
+            if (matcher.group(4) != null) {
+                terms.add(printNumber+"-"+matcher.group(4));
+                terms.add(base+"-"+matcher.group(4));
+            }
+            terms.add(printNumber);
+            terms.add(base);
+            terms.remove(token);
+        }
+        return terms;
+    }
+}
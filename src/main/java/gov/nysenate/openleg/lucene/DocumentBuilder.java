@@ -2,6 +2,7 @@ package gov.nysenate.openleg.lucene;
 
 import gov.nysenate.openleg.converter.LuceneJsonConverter;
 import gov.nysenate.openleg.model.Action;
+import gov.nysenate.openleg.model.BaseObject;
 import gov.nysenate.openleg.model.Bill;
 import gov.nysenate.openleg.model.Calendar;
 import gov.nysenate.openleg.model.CalendarEntry;
@@ -12,24 +13,240 @@ import gov.nysenate.openleg.model.Sequence;
 import gov.nysenate.openleg.model.Supplemental;
 import gov.nysenate.openleg.model.Transcript;
 import gov.nysenate.openleg.model.Vote;
+import gov.nysenate.openleg.util.SessionYear;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.IntField;
 import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.params.FacetIndexingParams;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetFields;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
 
 public class DocumentBuilder
 {
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    /**
+     * Documents are built on several indexing threads at once and SimpleDateFormat isn't thread safe.
+     */
+    private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue()
+        {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        }
+    };
+
+    /**
+     * Fields that searches can sort on. Each gets a doc values companion so sorting doesn't
+     * have to un-invert the field into the FieldCache whenever a new searcher is opened.
+     */
+    public static final Set<String> SORT_FIELDS = new HashSet<String>(Arrays.asList(
+        "oid", "year", "when", "modified", "published", "sortindex", "sorttitle"
+    ));
+
+    /**
+     * The part of osearch that comes from bill and transcript text. It's built as its own
+     * field so that a separate full text index can take it; {@link Lucene} renames it to
+     * osearch in whichever index the document's full text ends up in.
+     */
+    public static final String SEARCH_TEXT = "osearchtext";
+
+    /**
+     * Large text fields that result listings never show. Searches skip loading them unless
+     * they are asked for by name.
+     */
+    public static final Set<String> FULL_TEXT_FIELDS = new HashSet<String>(Arrays.asList(
+        "full", "memo", "law", SEARCH_TEXT
+    ));
+
+    /**
+     * Stored fields that searches can count results by, keyed by facet dimension. The year
+     * field is counted as the session year it falls in and the status field, which holds the
+     * text of a bill's last action, as one of the {@link #STATUS_FACETS}.
+     */
+    public static final Map<String, String> FACET_FIELDS = new LinkedHashMap<String, String>();
+    static {
+        FACET_FIELDS.put("otype", "otype");
+        FACET_FIELDS.put("session", "year");
+        FACET_FIELDS.put("committee", "committee");
+        FACET_FIELDS.put("sponsor", "sponsor");
+        FACET_FIELDS.put("status", "status");
+    }
+
+    /**
+     * Facet values for the text of a bill's last action, by the pattern the text starts with.
+     * The first matching pattern is used; $n in a value is replaced by that pattern's group n.
+     * Action text that matches none of them is counted as OTHER.
+     */
+    public static final Map<Pattern, String> STATUS_FACETS = new LinkedHashMap<Pattern, String>();
+    static {
+        STATUS_FACETS.put(Pattern.compile("SIGNED CHAP"), "SIGNED");
+        STATUS_FACETS.put(Pattern.compile("VETOED"), "VETOED");
+        STATUS_FACETS.put(Pattern.compile("ADOPTED"), "ADOPTED");
+        STATUS_FACETS.put(Pattern.compile("(DELIVERED|RETURNED) TO (GOVERNOR|SENATE|ASSEMBLY)"), "$1 TO $2");
+        STATUS_FACETS.put(Pattern.compile("PASSED (SENATE|ASSEMBLY)"), "PASSED $1");
+        STATUS_FACETS.put(Pattern.compile("SUBSTITUTED (FOR|BY)"), "SUBSTITUTED");
+        STATUS_FACETS.put(Pattern.compile("DIED IN"), "DIED");
+        STATUS_FACETS.put(Pattern.compile(".*(REFERRED|COMMITTED|RECOMMIT) TO"), "IN COMMITTEE");
+        STATUS_FACETS.put(Pattern.compile(".*(REPORT CAL|REPORTED TO CALENDAR|THIRD READING)"), "ON CALENDAR");
+        STATUS_FACETS.put(Pattern.compile("PRINT NUMBER"), "AMENDED");
+    }
+
+    /**
+     * When false, documents don't store the full object JSON (odata) or large text fields;
+     * stored fields are limited to what result listings need and full objects are loaded
+     * from storage by the okey field when they are actually used.
+     */
+    private static volatile boolean storeData = true;
+
+    public static boolean isStoreData()
+    {
+        return storeData;
+    }
+
+    public static void setStoreData(boolean storeData)
+    {
+        DocumentBuilder.storeData = storeData;
+    }
+
+    /**
+     * @return The storage key of the object, e.g. 2013/bill/S1234-2013
+     */
+    public static String storageKey(BaseObject obj)
+    {
+        return obj.getYear()+"/"+obj.getOtype()+"/"+obj.getOid();
+    }
+
+    /**
+     * Renames the {@link #SEARCH_TEXT} fields of a document to osearch.
+     *
+     * @param document - A built document.
+     * @return The same document.
+     */
+    public static Document mergeSearchText(Document document)
+    {
+        IndexableField[] fields = document.getFields(SEARCH_TEXT);
+        document.removeFields(SEARCH_TEXT);
+        for (IndexableField field : fields) {
+            document.add(new TextField("osearch", field.stringValue(), Field.Store.NO));
+        }
+        return document;
+    }
+
+    /**
+     * Large text fields are only worth storing when full objects are stored too.
+     */
+    private static Field.Store fullTextStore()
+    {
+        return storeData ? Field.Store.YES : Field.Store.NO;
+    }
+
+    /**
+     * Adds a doc values field for the first indexed value of each sortable field in the
+     * document: numeric doc values for int and long fields, sorted doc values for strings.
+     * Must be called once the document is otherwise complete.
+     */
+    private static Document addSortFields(Document document)
+    {
+        Set<String> added = new HashSet<String>();
+        List<Field> sortFields = new ArrayList<Field>();
+        for (IndexableField field : document.getFields()) {
+            String name = field.name();
+            if (!SORT_FIELDS.contains(name) || !field.fieldType().indexed() || !added.add(name)) {
+                continue;
+            }
+            if (field.numericValue() != null) {
+                sortFields.add(new NumericDocValuesField(name, field.numericValue().longValue()));
+            }
+            else {
+                sortFields.add(new SortedDocValuesField(name, new BytesRef(field.stringValue())));
+            }
+        }
+        for (Field field : sortFields) {
+            document.add(field);
+        }
+        return document;
+    }
+
+    /**
+     * Adds a facet for the first stored value of each of the {@link #FACET_FIELDS} in the
+     * document so searches can count their results by it. Must be called once the document
+     * is otherwise complete.
+     */
+    private static Document addFacetFields(Document document)
+    {
+        List<CategoryPath> paths = new ArrayList<CategoryPath>();
+        for (Map.Entry<String, String> facet : FACET_FIELDS.entrySet()) {
+            IndexableField field = document.getField(facet.getValue());
+            if (field == null) {
+                continue;
+            }
+            String value = field.numericValue() != null ? field.numericValue().toString() : field.stringValue();
+            if (facet.getKey().equals("session") && field.numericValue() != null) {
+                value = String.valueOf(SessionYear.getSessionYear(field.numericValue().intValue()));
+            }
+            else if (facet.getKey().equals("status")) {
+                value = statusFacet(value);
+            }
+            // The facet separator can't appear in labels
+            value = value == null ? "" : value.replace(FacetIndexingParams.DEFAULT_FACET_DELIM_CHAR, ' ').trim();
+            if (!value.isEmpty()) {
+                paths.add(new CategoryPath(facet.getKey(), value));
+            }
+        }
+
+        try {
+            new SortedSetDocValuesFacetFields().addFields(document, paths);
+        }
+        catch (IOException e) {
+            // Only taxonomy backed facets write anything when adding fields
+            throw new IllegalStateException(e);
+        }
+        return document;
+    }
+
+    /**
+     * @param actionText - The text of a bill's last action.
+     * @return The {@link #STATUS_FACETS} value for the text, or null if there isn't any text.
+     */
+    public static String statusFacet(String actionText)
+    {
+        if (actionText == null || actionText.trim().isEmpty()) {
+            return null;
+        }
+
+        String text = actionText.trim().toUpperCase();
+        for (Map.Entry<Pattern, String> status : STATUS_FACETS.entrySet()) {
+            Matcher matcher = status.getKey().matcher(text);
+            if (matcher.lookingAt()) {
+                StringBuffer value = new StringBuffer();
+                matcher.appendReplacement(value, status.getValue());
+                return value.toString();
+            }
+        }
+        return "OTHER";
+    }
 
     public static Document build(PublicHearing hearing)
     {
@@ -45,8 +262,8 @@ public class DocumentBuilder
         document.add(new StringField("active", String.valueOf(hearing.isActive()), Field.Store.YES));
         document.add(new LongField("modified", hearing.getModifiedDate().getTime(), Field.Store.YES));
         document.add(new LongField("published", hearing.getPublishDate().getTime(), Field.Store.YES));
-        document.add(new StringField("modified", dateFormat.format(hearing.getModifiedDate()), Field.Store.NO));
-        document.add(new StringField("published", dateFormat.format(hearing.getPublishDate()), Field.Store.NO));
+        document.add(new StringField("modified", dateFormat.get().format(hearing.getModifiedDate()), Field.Store.NO));
+        document.add(new StringField("published", dateFormat.get().format(hearing.getPublishDate()), Field.Store.NO));
 
         // When searching without a field, match against the following terms.
         ArrayList<String> searchTerms = new ArrayList<String>();
@@ -55,8 +272,11 @@ public class DocumentBuilder
         // Other various search fields and filters
         document.add(new StringField("sorttitle", hearing.getOid().toLowerCase(), Field.Store.NO));
 
-        document.add(new StoredField("odata", LuceneJsonConverter.toString(hearing)));
-        return document;
+        document.add(new StoredField("okey", storageKey(hearing)));
+        if (storeData) {
+            document.add(new StoredField("odata", LuceneJsonConverter.toString(hearing)));
+        }
+        return addFacetFields(addSortFields(document));
     }
 
     public static Document build(Vote vote)
@@ -73,8 +293,8 @@ public class DocumentBuilder
         document.add(new StringField("active", String.valueOf(vote.isActive()), Field.Store.YES));
         document.add(new LongField("modified", vote.getModifiedDate().getTime(), Field.Store.YES));
         document.add(new LongField("published", vote.getPublishDate().getTime(), Field.Store.YES));
-        document.add(new StringField("modified", dateFormat.format(vote.getModifiedDate()), Field.Store.NO));
-        document.add(new StringField("published", dateFormat.format(vote.getPublishDate()), Field.Store.NO));
+        document.add(new StringField("modified", dateFormat.get().format(vote.getModifiedDate()), Field.Store.NO));
+        document.add(new StringField("published", dateFormat.get().format(vote.getPublishDate()), Field.Store.NO));
 
         // When searching without a field, match against the following terms.
         ArrayList<String> searchTerms = new ArrayList<String>();
@@ -100,6 +320,7 @@ public class DocumentBuilder
         document.add(new TextField("title", title, Field.Store.YES));
         document.add(new TextField("summary", DateFormat.getDateInstance(DateFormat.MEDIUM).format(vote.getVoteDate()), Field.Store.YES));
         document.add(new TextField("billno",vote.getBill().getBillId(), Field.Store.YES));
+        document.add(new StringField("billid", vote.getBill().getBillId().toLowerCase(), Field.Store.NO));
         document.add(new TextField("othersponsors",StringUtils.join(vote.getBill().getOtherSponsors(), ", "), Field.Store.YES));
         document.add(new TextField("sponsor", vote.getBill().getSponsor().getFullname(), Field.Store.YES));
         document.add(new TextField("abstain", StringUtils.join(vote.getAbstains(), " "), Field.Store.YES));
@@ -111,8 +332,11 @@ public class DocumentBuilder
             document.add(new TextField("committee", (vote.getDescription().isEmpty() ? vote.getBill().getCurrentCommittee() : vote.getDescription()), Field.Store.YES));
         }
 
-        document.add(new StoredField("odata", LuceneJsonConverter.toString(vote)));
-        return document;
+        document.add(new StoredField("okey", storageKey(vote.getBill())));
+        if (storeData) {
+            document.add(new StoredField("odata", LuceneJsonConverter.toString(vote)));
+        }
+        return addFacetFields(addSortFields(document));
     }
 
 
@@ -131,15 +355,13 @@ public class DocumentBuilder
         document.add(new StringField("active", String.valueOf(transcript.isActive()), Field.Store.YES));
         document.add(new LongField("modified", transcript.getModifiedDate().getTime(), Field.Store.YES));
         document.add(new LongField("published", transcript.getPublishDate().getTime(), Field.Store.YES));
-        document.add(new StringField("modified", dateFormat.format(transcript.getModifiedDate()), Field.Store.YES));
-        document.add(new StringField("published", dateFormat.format(transcript.getPublishDate()), Field.Store.YES));
-        document.add(new StringField("modified_date", dateFormat.format(transcript.getModifiedDate()), Field.Store.YES));
-        document.add(new StringField("publish_date", dateFormat.format(transcript.getPublishDate()), Field.Store.YES));
+        document.add(new StringField("modified", dateFormat.get().format(transcript.getModifiedDate()), Field.Store.YES));
+        document.add(new StringField("published", dateFormat.get().format(transcript.getPublishDate()), Field.Store.YES));
+        document.add(new StringField("modified_date", dateFormat.get().format(transcript.getModifiedDate()), Field.Store.YES));
+        document.add(new StringField("publish_date", dateFormat.get().format(transcript.getPublishDate()), Field.Store.YES));
 
-        // When searching without a field, match against the following terms.
-        ArrayList<String> searchTerms = new ArrayList<String>();
-        searchTerms.add(transcript.getTranscriptText());
-        document.add(new TextField("osearch", StringUtils.join(searchTerms, "; "), Field.Store.NO));
+        // When searching without a field, match against the transcript text.
+        document.add(new TextField(SEARCH_TEXT, transcript.getTranscriptText(), Field.Store.NO));
 
         // Other various search fields and filters
         ArrayList<String> billIds = new ArrayList<String>();
@@ -149,14 +371,17 @@ public class DocumentBuilder
         document.add(new TextField("title", transcript.getType(), Field.Store.YES));
         document.add(new TextField("summary", transcript.getLocation(), Field.Store.YES));
         document.add(new TextField("relatedBills", StringUtils.join(billIds, ", "), Field.Store.YES));
-        document.add(new TextField("full", transcript.getTranscriptText(), Field.Store.YES));
+        document.add(new TextField("full", transcript.getTranscriptText(), fullTextStore()));
         document.add(new TextField("session-type", transcript.getType(), Field.Store.YES));
         document.add(new TextField("location", transcript.getLocation(), Field.Store.YES));
         document.add(new LongField("when", transcript.getTimeStamp().getTime(), Field.Store.YES));
         document.add(new StringField("sorttitle", transcript.getOid().toLowerCase(), Field.Store.NO));
 
-        document.add(new StoredField("odata", LuceneJsonConverter.toString(transcript)));
-        return document;
+        document.add(new StoredField("okey", storageKey(transcript)));
+        if (storeData) {
+            document.add(new StoredField("odata", LuceneJsonConverter.toString(transcript)));
+        }
+        return addFacetFields(addSortFields(document));
     }
 
     public static Document build(Meeting meeting)
@@ -173,8 +398,8 @@ public class DocumentBuilder
         document.add(new StringField("active", String.valueOf(meeting.isActive()), Field.Store.YES));
         document.add(new LongField("modified", meeting.getModifiedDate().getTime(), Field.Store.YES));
         document.add(new LongField("published", meeting.getPublishDate().getTime(), Field.Store.YES));
-        document.add(new StringField("modified", dateFormat.format(meeting.getModifiedDate()), Field.Store.YES));
-        document.add(new StringField("published", dateFormat.format(meeting.getPublishDate()), Field.Store.YES));
+        document.add(new StringField("modified", dateFormat.get().format(meeting.getModifiedDate()), Field.Store.YES));
+        document.add(new StringField("published", dateFormat.get().format(meeting.getPublishDate()), Field.Store.YES));
 
         // When searching without a field, match against the following terms.
         ArrayList<String> searchTerms = new ArrayList<String>();
@@ -201,8 +426,11 @@ public class DocumentBuilder
         document.add(new StringField("sortindex", meeting.getMeetingDateTime().getTime()+meeting.getCommitteeName(), Field.Store.NO));
         document.add(new StringField("sorttitle", document.getField("title").stringValue().toLowerCase(), Field.Store.NO));
 
-        document.add(new StoredField("odata", LuceneJsonConverter.toString(meeting)));
-        return document;
+        document.add(new StoredField("okey", storageKey(meeting)));
+        if (storeData) {
+            document.add(new StoredField("odata", LuceneJsonConverter.toString(meeting)));
+        }
+        return addFacetFields(addSortFields(document));
     }
 
     public static Document build(Calendar calendar)
@@ -220,8 +448,8 @@ public class DocumentBuilder
         document.add(new StringField("active", String.valueOf(calendar.isActive()), Field.Store.YES));
         document.add(new LongField("modified", calendar.getModifiedDate().getTime(), Field.Store.YES));
         document.add(new LongField("published", calendar.getPublishDate().getTime(), Field.Store.YES));
-        document.add(new StringField("modified", dateFormat.format(calendar.getModifiedDate()), Field.Store.YES));
-        document.add(new StringField("published", dateFormat.format(calendar.getPublishDate()), Field.Store.YES));
+        document.add(new StringField("modified", dateFormat.get().format(calendar.getModifiedDate()), Field.Store.YES));
+        document.add(new StringField("published", dateFormat.get().format(calendar.getPublishDate()), Field.Store.YES));
 
         // When searching without a field, match against the following terms.
         ArrayList<String> searchTerms = new ArrayList<String>();
@@ -269,8 +497,11 @@ public class DocumentBuilder
         document.add(new LongField("when", calendar.getDate().getTime(), Field.Store.YES));
         document.add(new StringField("sorttitle", document.getField("title").stringValue().toLowerCase(), Field.Store.NO));
 
-        document.add(new StoredField("odata", LuceneJsonConverter.toString(calendar)));
-        return document;
+        document.add(new StoredField("okey", storageKey(calendar)));
+        if (storeData) {
+            document.add(new StoredField("odata", LuceneJsonConverter.toString(calendar)));
+        }
+        return addFacetFields(addSortFields(document));
     }
 
     public static Document build(Action action)
@@ -287,8 +518,8 @@ public class DocumentBuilder
         document.add(new StringField("active", String.valueOf(action.isActive()), Field.Store.YES));
         document.add(new LongField("modified", action.getModifiedDate().getTime(), Field.Store.YES));
         document.add(new LongField("published", action.getPublishDate().getTime(), Field.Store.YES));
-        document.add(new StringField("modified", dateFormat.format(action.getModifiedDate()), Field.Store.YES));
-        document.add(new StringField("published", dateFormat.format(action.getPublishDate()), Field.Store.YES));
+        document.add(new StringField("modified", dateFormat.get().format(action.getModifiedDate()), Field.Store.YES));
+        document.add(new StringField("published", dateFormat.get().format(action.getPublishDate()), Field.Store.YES));
 
         // When searching without a field, match against the following terms.
         ArrayList<String> searchTerms = new ArrayList<String>();
@@ -299,12 +530,16 @@ public class DocumentBuilder
         // Other various search fields and filters
         document.add(new LongField("when", action.getDate().getTime(), Field.Store.YES));
         document.add(new TextField("billno", action.getBill().getBillId().toLowerCase(), Field.Store.YES));
+        document.add(new StringField("billid", action.getBill().getBillId().toLowerCase(), Field.Store.NO));
         document.add(new TextField("title", action.getText(), Field.Store.YES));
         document.add(new TextField("summary", DateFormat.getDateInstance(DateFormat.MEDIUM).format(action.getDate()), Field.Store.YES));
         document.add(new StringField("sorttitle", action.getBill().getBillId()+" "+action.getText().toLowerCase(), Field.Store.NO));
 
-        document.add(new StoredField("odata", LuceneJsonConverter.toString(action)));
-        return document;
+        document.add(new StoredField("okey", storageKey(action.getBill())));
+        if (storeData) {
+            document.add(new StoredField("odata", LuceneJsonConverter.toString(action)));
+        }
+        return addFacetFields(addSortFields(document));
     }
 
     public static Document build(Bill bill)
@@ -322,8 +557,8 @@ public class DocumentBuilder
         document.add(new StringField("active", String.valueOf(bill.isActive()), Field.Store.YES));
         document.add(new LongField("modified", bill.getModifiedDate().getTime(), Field.Store.YES));
         document.add(new LongField("published", bill.getPublishDate().getTime(), Field.Store.YES));
-        document.add(new StringField("modified", dateFormat.format(bill.getModifiedDate()), Field.Store.YES));
-        document.add(new StringField("published", dateFormat.format(bill.getPublishDate()), Field.Store.YES));
+        document.add(new StringField("modified", dateFormat.get().format(bill.getModifiedDate()), Field.Store.YES));
+        document.add(new StringField("published", dateFormat.get().format(bill.getPublishDate()), Field.Store.YES));
 
         // When searching without a field, match against the following terms.
         // TODO: Use field boosting to rank results better
@@ -335,8 +570,8 @@ public class DocumentBuilder
         searchTerms.add(bill.getSponsor() != null ? bill.getSponsor().getFullname() : "");
         searchTerms.add(bill.getTitle());
         searchTerms.add(bill.getSummary());
-        searchTerms.add(bill.getFulltext());
         document.add(new TextField("osearch", StringUtils.join(searchTerms, "; "), Field.Store.NO));
+        document.add(new TextField(SEARCH_TEXT, bill.getFulltext(), Field.Store.NO));
 
         // Sorting should prioritize senate bills over assembly bills and resolutions.
         String sortId = bill.getPaddedBillId();
@@ -351,6 +586,8 @@ public class DocumentBuilder
         document.add(new TextField("title", bill.getTitle(), Field.Store.YES));
         document.add(new TextField("summary", bill.getSummary(), Field.Store.YES));
         document.add(new TextField("lawsection", bill.getLawSection(), Field.Store.YES));
+        // Also indexes the base bill number, e.g. s1234-2013, shared by every amendment
+        document.add(new TextField("billno", bill.getBillId(), Field.Store.NO));
         document.add(new TextField("sameas", bill.getSameAs(), Field.Store.YES));
         document.add(new TextField("sponsor", bill.getSponsor() == null ? "" : bill.getSponsor().toString(), Field.Store.YES));
         document.add(new TextField("cosponsors", StringUtils.join(bill.getCoSponsors(), ", "), Field.Store.YES));
@@ -359,9 +596,9 @@ public class DocumentBuilder
         document.add(new TextField("pastcommittees", StringUtils.join(bill.getPastCommittees(), ", "), Field.Store.YES));
         document.add(new TextField("actions", StringUtils.join(bill.getActions(), ", "), Field.Store.YES));
         document.add(new TextField("committee", bill.getCurrentCommittee(), Field.Store.YES));
-        document.add(new TextField("full", bill.getFulltext(), Field.Store.YES));
-        document.add(new TextField("memo", bill.getMemo(), Field.Store.YES));
-        document.add(new TextField("law", bill.getLaw(), Field.Store.YES));
+        document.add(new TextField("full", bill.getFulltext(), fullTextStore()));
+        document.add(new TextField("memo", bill.getMemo(), fullTextStore()));
+        document.add(new TextField("law", bill.getLaw(), fullTextStore()));
         document.add(new TextField("actclause", bill.getActClause(), Field.Store.YES));
         document.add(new LongField("when", bill.getModifiedDate().getTime(), Field.Store.YES));
         document.add(new StringField("unibill", String.valueOf(bill.isUniBill()), Field.Store.YES));
@@ -376,7 +613,10 @@ public class DocumentBuilder
         }
         document.add(new TextField("status", billStatus, Field.Store.YES));
 
-        document.add(new StoredField("odata", LuceneJsonConverter.toString(bill)));
-        return document;
+        document.add(new StoredField("okey", storageKey(bill)));
+        if (storeData) {
+            document.add(new StoredField("odata", LuceneJsonConverter.toString(bill)));
+        }
+        return addFacetFields(addSortFields(document));
     }
 }
@@ -0,0 +1,161 @@
+package gov.nysenate.openleg.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.facet.params.FacetSearchParams;
+import org.apache.lucene.facet.search.CountFacetRequest;
+import org.apache.lucene.facet.search.FacetRequest;
+import org.apache.lucene.facet.search.FacetResult;
+import org.apache.lucene.facet.search.FacetResultNode;
+import org.apache.lucene.facet.search.FacetsCollector;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesAccumulator;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+import org.apache.lucene.index.IndexReader;
+
+/**
+ * Counts the results of a search by the facets {@link DocumentBuilder} adds for each of the
+ * {@link DocumentBuilder#FACET_FIELDS}.
+ * <p>
+ * The counts are collected in the same pass as the top hits, so one search returns a page
+ * of results along with e.g. how many of them are in each committee. Facet labels are read
+ * from sorted set doc values; the ordinal map for them is built once per reader. The maps for
+ * the last few readers are kept, so searches still running on a searcher from before a
+ * refresh don't rebuild its map or evict the current one.
+ */
+public class FacetCounter
+{
+    private static final Logger logger = Logger.getLogger(FacetCounter.class);
+
+    /**
+     * The number of readers to keep ordinal maps for.
+     */
+    public static final int MAX_READERS = 4;
+
+    /**
+     * The ordinal map for a reader and the dimensions it has values for.
+     */
+    private static class ReaderState
+    {
+        final SortedSetDocValuesReaderState state;
+        final Set<String> dimensions;
+
+        ReaderState(SortedSetDocValuesReaderState state, Set<String> dimensions)
+        {
+            this.state = state;
+            this.dimensions = dimensions;
+        }
+    }
+
+    private final int maxValues;
+
+    private final Map<Object, ReaderState> states = new LinkedHashMap<Object, ReaderState>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, ReaderState> eldest)
+        {
+            return size() > MAX_READERS;
+        }
+    };
+
+    /**
+     * @param maxValues - The most values to count for each dimension; the rest are dropped.
+     */
+    public FacetCounter(int maxValues)
+    {
+        this.maxValues = maxValues;
+    }
+
+    /**
+     * @param reader - The reader of the searcher the collector will be used with.
+     * @param requested - The dimensions to count.
+     * @return A collector counting the requested dimensions that are in the index, or null
+     *         if none of them are.
+     * @throws IOException
+     */
+    public FacetsCollector collector(IndexReader reader, Collection<String> requested) throws IOException
+    {
+        ReaderState readerState;
+        synchronized (this) {
+            readerState = states.get(reader.getCoreCacheKey());
+            if (readerState == null) {
+                readerState = load(reader);
+                states.put(reader.getCoreCacheKey(), readerState);
+            }
+        }
+
+        List<FacetRequest> requests = new ArrayList<FacetRequest>();
+        for (String dimension : DocumentBuilder.FACET_FIELDS.keySet()) {
+            if (requested.contains(dimension) && readerState.dimensions.contains(dimension)) {
+                requests.add(new CountFacetRequest(new CategoryPath(dimension), maxValues));
+            }
+        }
+
+        if (requests.isEmpty()) {
+            return null;
+        }
+        return FacetsCollector.create(new SortedSetDocValuesAccumulator(readerState.state, new FacetSearchParams(requests)));
+    }
+
+    /**
+     * @return The counts for each dimension the collector was created for, keyed by dimension
+     *         and then by value in order of decreasing count.
+     * @throws IOException
+     */
+    public static Map<String, Map<String, Integer>> counts(FacetsCollector collector) throws IOException
+    {
+        Map<String, Map<String, Integer>> counts = new LinkedHashMap<String, Map<String, Integer>>();
+        for (FacetResult result : collector.getFacetResults()) {
+            FacetResultNode root = result.getFacetResultNode();
+            Map<String, Integer> values = new LinkedHashMap<String, Integer>();
+            for (FacetResultNode node : root.subResults) {
+                values.put(node.label.components[node.label.length-1], (int)node.value);
+            }
+            counts.put(root.label.components[0], values);
+        }
+        return counts;
+    }
+
+    /**
+     * Drops every ordinal map so they can be garbage collected once their searchers are closed.
+     */
+    public synchronized void clear()
+    {
+        states.clear();
+    }
+
+    private ReaderState load(IndexReader reader) throws IOException
+    {
+        Set<String> dimensions = new HashSet<String>();
+        SortedSetDocValuesReaderState state;
+        try {
+            state = new SortedSetDocValuesReaderState(reader);
+        }
+        catch (IllegalArgumentException e) {
+            // Nothing indexed since facets were added has them
+            logger.warn("Index has no facets; reindex to count results by "+DocumentBuilder.FACET_FIELDS.keySet());
+            return new ReaderState(null, dimensions);
+        }
+
+        // Accumulators reject dimensions that no document has a value for
+        for (String dimension : DocumentBuilder.FACET_FIELDS.keySet()) {
+            try {
+                new SortedSetDocValuesAccumulator(state, new FacetSearchParams(new CountFacetRequest(new CategoryPath(dimension), 1)));
+                dimensions.add(dimension);
+            }
+            catch (IllegalArgumentException e) {
+                logger.debug("No values for facet dimension "+dimension);
+            }
+        }
+        return new ReaderState(state, dimensions);
+    }
+}
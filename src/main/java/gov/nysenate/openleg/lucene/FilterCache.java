@@ -0,0 +1,169 @@
+package gov.nysenate.openleg.lucene;
+
+import gov.nysenate.openleg.util.Application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.queries.BooleanFilter;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+
+/**
+ * Pulls the low cardinality otype, active and year clauses out of parsed queries and turns
+ * them into cached filters.
+ * <p>
+ * Nearly every listing and search ANDs together the same few of these clauses. Scoring them
+ * is wasted work, so each distinct clause becomes a CachingWrapperFilter whose per segment
+ * bitsets survive searcher refreshes for segments that haven't changed. The rest of the query
+ * is scored as usual within the intersection of the filters.
+ */
+public class FilterCache
+{
+    /**
+     * Fields whose required clauses are applied as filters instead of being scored.
+     */
+    public static final Set<String> FILTER_FIELDS = new HashSet<String>(Arrays.asList("otype", "active", "year"));
+
+    /**
+     * A query split into the part to score and the filter to restrict it by.
+     */
+    public static class SplitQuery
+    {
+        public final Query query;
+        public final Filter filter;
+
+        public SplitQuery(Query query, Filter filter)
+        {
+            this.query = query;
+            this.filter = filter;
+        }
+    }
+
+    /**
+     * Maximum number of distinct clauses to cache. Filters for clauses past this are still
+     * used, just not cached, so odd year ranges can't grow the cache without bound.
+     */
+    private final int maxSize;
+
+    private final ConcurrentHashMap<Query, Filter> filters = new ConcurrentHashMap<Query, Filter>();
+
+    public FilterCache(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Separates the required filter clauses from the given query. Queries that aren't a
+     * conjunction with at least one such clause are returned unchanged with a null filter.
+     *
+     * @param query - The parsed query.
+     * @return The query to score and the filter to apply, which match the same documents as the original query.
+     */
+    public SplitQuery split(Query query)
+    {
+        if (isFilterClause(query)) {
+            return new SplitQuery(new MatchAllDocsQuery(), getFilter(query));
+        }
+        else if (!(query instanceof BooleanQuery)) {
+            return new SplitQuery(query, null);
+        }
+
+        BooleanQuery booleanQuery = (BooleanQuery)query;
+        List<Filter> clauseFilters = new ArrayList<Filter>();
+        BooleanQuery remaining = new BooleanQuery(booleanQuery.isCoordDisabled());
+        boolean required = false;
+        for (BooleanClause clause : booleanQuery.getClauses()) {
+            if (clause.getOccur() == Occur.MUST && isFilterClause(clause.getQuery())) {
+                clauseFilters.add(getFilter(clause.getQuery()));
+            }
+            else {
+                remaining.add(clause);
+                required |= clause.getOccur() == Occur.MUST;
+            }
+        }
+
+        if (clauseFilters.isEmpty()) {
+            return new SplitQuery(query, null);
+        }
+
+        // Without a required clause the optional ones would become required; keep them optional
+        if (!required) {
+            remaining.add(new MatchAllDocsQuery(), Occur.MUST);
+        }
+        remaining.setBoost(booleanQuery.getBoost());
+        remaining.setMinimumNumberShouldMatch(booleanQuery.getMinimumNumberShouldMatch());
+
+        if (clauseFilters.size() == 1) {
+            return new SplitQuery(remaining, clauseFilters.get(0));
+        }
+
+        BooleanFilter filter = new BooleanFilter();
+        for (Filter clauseFilter : clauseFilters) {
+            filter.add(clauseFilter, Occur.MUST);
+        }
+        return new SplitQuery(remaining, filter);
+    }
+
+    /**
+     * @return The cached filter for a single clause, created if necessary.
+     */
+    public Filter getFilter(Query clause)
+    {
+        Filter filter = filters.get(clause);
+        if (filter != null) {
+            Application.getMetrics().increment("lucene.filter.hit");
+            return filter;
+        }
+
+        Application.getMetrics().increment("lucene.filter.miss");
+        filter = new CachingWrapperFilter(new QueryWrapperFilter(clause));
+        if (filters.size() < maxSize) {
+            Filter existing = filters.putIfAbsent(clause, filter);
+            if (existing != null) {
+                filter = existing;
+            }
+        }
+        return filter;
+    }
+
+    public int size()
+    {
+        return filters.size();
+    }
+
+    public void clear()
+    {
+        filters.clear();
+    }
+
+    private boolean isFilterClause(Query query)
+    {
+        if (query.getBoost() != 1.0f) {
+            return false;
+        }
+        else if (query instanceof TermQuery) {
+            return FILTER_FIELDS.contains(((TermQuery)query).getTerm().field());
+        }
+        else if (query instanceof NumericRangeQuery) {
+            return FILTER_FIELDS.contains(((NumericRangeQuery<?>)query).getField());
+        }
+        else if (query instanceof TermRangeQuery) {
+            return FILTER_FIELDS.contains(((TermRangeQuery)query).getField());
+        }
+        return false;
+    }
+}
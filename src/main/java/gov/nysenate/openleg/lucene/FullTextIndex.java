@@ -0,0 +1,343 @@
+package gov.nysenate.openleg.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Version;
+
+/**
+ * A separate index for the large bill and transcript text fields, joined to the main index
+ * by oid.
+ * <p>
+ * Keeping multi-megabyte text out of the main index keeps its segments small, so listings,
+ * filters and merges of small documents like actions, votes and calendars don't compete
+ * with the text. {@link Lucene} splits the {@link DocumentBuilder#FULL_TEXT_FIELDS} off each
+ * document it indexes into a document here, and rewrites each part of a query that only
+ * searches those fields into a filter on the oids it matches here.
+ * <p>
+ * The text's part of the default osearch field lives here too, as this index's osearch
+ * field. Each part of a query that searches osearch matches documents by either index, so
+ * unqualified searches still find words in the text. Documents matched by their text are
+ * scored with the score their text got here, so they still rank by how well the text matches.
+ * Queries that mention neither osearch nor the full text fields never touch this index.
+ * <p>
+ * The oids and scores for each part are cached until this index's searcher is refreshed, so
+ * a repeated search or a page through its results only searches this index once.
+ */
+public class FullTextIndex
+{
+    /**
+     * Maximum number of routed query parts to cache for the current searcher.
+     */
+    public static final int MAX_CACHED_QUERIES = 100;
+
+    private IndexWriter indexWriter = null;
+    private SearcherManager searcherManager = null;
+
+    /**
+     * Matches for recently routed query parts, valid only for the reader they were built from.
+     */
+    private IndexReader cachedReader = null;
+    private final Map<Query, Query> cachedMatches = new LinkedHashMap<Query, Query>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Query, Query> eldest)
+        {
+            return size() > MAX_CACHED_QUERIES;
+        }
+    };
+
+    /**
+     * @param indexDir - The directory for the full text index.
+     * @param readOnly - When true, an index writer is not created.
+     * @param analyzer - The analyzer shared with the main index.
+     * @param searcherFactory - Creates searchers for the index.
+     * @param listener - Notified whenever a new searcher is opened.
+     */
+    public FullTextIndex(File indexDir, boolean readOnly, Analyzer analyzer, SearcherFactory searcherFactory, ReferenceManager.RefreshListener listener) throws IOException
+    {
+        if (!readOnly) {
+            IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_46, analyzer);
+            config.setOpenMode(OpenMode.CREATE_OR_APPEND);
+            this.indexWriter = new IndexWriter(FSDirectory.open(indexDir), config);
+            this.indexWriter.commit();
+        }
+
+        this.searcherManager = new SearcherManager(FSDirectory.open(indexDir), searcherFactory);
+        this.searcherManager.addListener(listener);
+    }
+
+    /**
+     * Moves the full text fields out of a main index document.
+     *
+     * @param doc - The document being indexed. Its full text fields are removed.
+     * @return A document holding the full text fields keyed by the document's oid, or null
+     *         if it doesn't have any.
+     */
+    public Document split(Document doc)
+    {
+        List<IndexableField> fields = new ArrayList<IndexableField>();
+        for (IndexableField field : doc.getFields()) {
+            if (DocumentBuilder.FULL_TEXT_FIELDS.contains(field.name())) {
+                fields.add(field);
+            }
+        }
+        if (fields.isEmpty()) {
+            return null;
+        }
+
+        // The first oid is the stored, original case one
+        String oid = doc.get("oid").toLowerCase();
+        Document fullText = new Document();
+        fullText.add(new StringField("oid", oid, Field.Store.YES));
+        fullText.add(new SortedDocValuesField("oid", new BytesRef(oid)));
+        fullText.add(new StringField("otype", doc.get("otype"), Field.Store.YES));
+        for (IndexableField field : fields) {
+            doc.removeFields(field.name());
+            fullText.add(field);
+        }
+        return DocumentBuilder.mergeSearchText(fullText);
+    }
+
+    public void addDocuments(List<Document> docs) throws IOException
+    {
+        indexWriter.addDocuments(docs);
+    }
+
+    public void updateDocument(Term term, Document doc) throws IOException
+    {
+        indexWriter.updateDocument(term, doc);
+    }
+
+    public void deleteDocuments(Term... terms) throws IOException
+    {
+        indexWriter.deleteDocuments(terms);
+    }
+
+    public void forceMerge(int maxSegments) throws IOException
+    {
+        indexWriter.forceMerge(maxSegments);
+    }
+
+    public void commit() throws IOException
+    {
+        indexWriter.commit();
+    }
+
+    public void refresh() throws IOException
+    {
+        searcherManager.maybeRefresh();
+    }
+
+    /**
+     * Replaces each part of the query that only searches full text fields with a query on the
+     * oids it matches in this index, scored by their full text. Other parts are left alone.
+     *
+     * @param query - A query against the main index.
+     * @return An equivalent query that only searches main index fields.
+     * @throws IOException
+     */
+    public Query route(Query query) throws IOException
+    {
+        Boolean fullText = isFullText(query);
+        if (fullText != null && fullText) {
+            Query oids = matchingOids(query);
+            oids.setBoost(query.getBoost());
+            return oids;
+        }
+        else if ("osearch".equals(field(query))) {
+            // Matches either the osearch field of the main index or the text's part of it here
+            BooleanQuery either = new BooleanQuery(true);
+            either.add(query, BooleanClause.Occur.SHOULD);
+            either.add(matchingOids(query), BooleanClause.Occur.SHOULD);
+            return either;
+        }
+        else if (!(query instanceof BooleanQuery)) {
+            return query;
+        }
+
+        BooleanQuery booleanQuery = (BooleanQuery)query;
+        BooleanQuery routed = new BooleanQuery(booleanQuery.isCoordDisabled());
+        boolean changed = false;
+        for (BooleanClause clause : booleanQuery.getClauses()) {
+            Query clauseQuery = route(clause.getQuery());
+            changed |= clauseQuery != clause.getQuery();
+            routed.add(clauseQuery, clause.getOccur());
+        }
+        if (!changed) {
+            return query;
+        }
+        routed.setBoost(booleanQuery.getBoost());
+        routed.setMinimumNumberShouldMatch(booleanQuery.getMinimumNumberShouldMatch());
+        return routed;
+    }
+
+    public synchronized void close() throws IOException
+    {
+        if (indexWriter != null) {
+            indexWriter.close();
+            indexWriter = null;
+        }
+
+        if (searcherManager != null) {
+            searcherManager.close();
+            searcherManager = null;
+        }
+    }
+
+    /**
+     * @return A query matching the main index documents whose full text matches the given
+     *         query, scored by their full text score. Cached until the searcher is refreshed.
+     */
+    private Query matchingOids(Query query) throws IOException
+    {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            Query matches;
+            synchronized (cachedMatches) {
+                if (cachedReader != searcher.getIndexReader()) {
+                    cachedMatches.clear();
+                    cachedReader = searcher.getIndexReader();
+                }
+                matches = cachedMatches.get(query);
+            }
+
+            if (matches == null) {
+                matches = searchOids(searcher, query);
+                synchronized (cachedMatches) {
+                    if (cachedReader == searcher.getIndexReader()) {
+                        cachedMatches.put(query, matches);
+                    }
+                }
+            }
+
+            // Callers may set a boost on the copy; the per segment lookups are still shared
+            return matches.clone();
+        }
+        finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private Query searchOids(IndexSearcher searcher, Query query) throws IOException
+    {
+        final Map<BytesRef, Float> oids = new HashMap<BytesRef, Float>();
+        searcher.search(query, new Collector() {
+            private Scorer scorer;
+            private SortedDocValues values;
+            private final BytesRef oid = new BytesRef();
+
+            @Override
+            public void setScorer(Scorer scorer)
+            {
+                this.scorer = scorer;
+            }
+
+            @Override
+            public void setNextReader(AtomicReaderContext context) throws IOException
+            {
+                values = context.reader().getSortedDocValues("oid");
+            }
+
+            @Override
+            public void collect(int doc) throws IOException
+            {
+                if (values != null) {
+                    values.get(doc, oid);
+                    oids.put(BytesRef.deepCopyOf(oid), scorer.score());
+                }
+            }
+
+            @Override
+            public boolean acceptsDocsOutOfOrder()
+            {
+                return true;
+            }
+        });
+
+        if (oids.isEmpty()) {
+            // An empty boolean query matches nothing
+            return new BooleanQuery();
+        }
+        return new OidScoreQuery(oids);
+    }
+
+    /**
+     * @return True if every field the query searches is a full text field, false if none
+     *         or only some are, and null if the fields can't be determined.
+     */
+    private Boolean isFullText(Query query)
+    {
+        if (query instanceof BooleanQuery) {
+            Boolean all = null;
+            for (BooleanClause clause : ((BooleanQuery)query).getClauses()) {
+                Boolean fullText = isFullText(clause.getQuery());
+                if (fullText == null || (all != null && !all.equals(fullText))) {
+                    return fullText == null ? null : false;
+                }
+                all = fullText;
+            }
+            return all;
+        }
+
+        String field = field(query);
+        return field == null ? null : DocumentBuilder.FULL_TEXT_FIELDS.contains(field);
+    }
+
+    /**
+     * @return The field searched by a single field query, or null if it isn't one.
+     */
+    private String field(Query query)
+    {
+        String field = null;
+        if (query instanceof TermQuery) {
+            field = ((TermQuery)query).getTerm().field();
+        }
+        else if (query instanceof PhraseQuery) {
+            Term[] terms = ((PhraseQuery)query).getTerms();
+            field = terms.length == 0 ? null : terms[0].field();
+        }
+        else if (query instanceof MultiPhraseQuery) {
+            List<Term[]> termArrays = ((MultiPhraseQuery)query).getTermArrays();
+            field = termArrays.isEmpty() || termArrays.get(0).length == 0 ? null : termArrays.get(0)[0].field();
+        }
+        else if (query instanceof MultiTermQuery) {
+            field = ((MultiTermQuery)query).getField();
+        }
+        return field;
+    }
+}
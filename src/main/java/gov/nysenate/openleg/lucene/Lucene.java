@@ -4,36 +4,57 @@ import gov.nysenate.openleg.model.Bill;
 import gov.nysenate.openleg.model.IBaseObject;
 import gov.nysenate.openleg.model.Result;
 import gov.nysenate.openleg.model.SenateResponse;
+import gov.nysenate.openleg.util.Application;
 import gov.nysenate.openleg.util.ResultIterator;
-import gov.nysenate.openleg.util.TextFormatter;
 import gov.nysenate.util.Config;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.facet.search.FacetsCollector;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
-import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.Version;
 
 
@@ -60,6 +81,72 @@ public class Lucene
 	 */
 	protected SearcherManager searcherManager = null;
 
+    /**
+     * The longest time in milliseconds that commits can go unseen by searches. Searchers are
+     * reopened on a background thread at this interval. 0 to refresh before every search.
+     */
+    protected long maxStaleness = 0;
+
+    /**
+     * Background thread that periodically reopens the searcher.
+     */
+    protected ScheduledExecutorService refresher = null;
+
+    /**
+     * Separate index for the full text fields; null when they're kept in the main index.
+     */
+    protected FullTextIndex fullTextIndex = null;
+
+    /**
+     * Number of threads used to search segments in parallel.
+     */
+    protected int searchThreads = 1;
+
+    /**
+     * Creates searchers backed by the segment search threads; null when searches are single threaded.
+     */
+    protected ParallelSearcherFactory parallelSearcherFactory = null;
+
+    /**
+     * Number of times a new searcher has been opened since startup.
+     */
+    protected final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Stored fields loaded for every search result.
+     */
+    public static final Set<String> RESULT_FIELDS = new HashSet<String>(Arrays.asList(
+        "otype", "oid", "odata", "okey", "modified", "active"
+    ));
+
+    /**
+     * Cached filters for the otype, active and year clauses shared by most queries.
+     */
+    protected final FilterCache filterCache = new FilterCache(1000);
+
+    /**
+     * Recently searched result pages, valid until the searcher is next refreshed.
+     */
+    protected final ResultCache resultCache = new ResultCache(256);
+
+    /**
+     * Counts search results by facet, reusing the facet ordinals of the last few searchers.
+     */
+    protected final FacetCounter facetCounter = new FacetCounter(100);
+
+    /**
+     * Recently parsed query strings. Parsing doesn't depend on the index so these never go stale.
+     */
+    protected final Map<String, Query> parsedQueries = Collections.synchronizedMap(new LinkedHashMap<String, Query>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Query> eldest)
+        {
+            return size() > 1000;
+        }
+    });
+
     /**
      * A reference to the configuration used by the indexWriter
      */
@@ -71,10 +158,27 @@ public class Lucene
 	protected IndexWriter indexWriter = null;
 
 	/**
-	 * A reference to the analyzer used when adding documents and parsing queries
+	 * A reference to the analyzer used when adding documents
 	 */
 	protected Analyzer analyzer = null;
 
+    /**
+     * The analyzer for query text. It matches the indexing analyzer except that bill numbers
+     * are searched as written rather than expanded to their whole amendment family.
+     */
+    protected Analyzer queryAnalyzer = null;
+
+    /**
+     * Query parsers for the query analyzer, one per thread since they aren't thread safe.
+     */
+    protected final ThreadLocal<OpenLegislationQueryParser> queryParser = new ThreadLocal<OpenLegislationQueryParser>() {
+        @Override
+        protected OpenLegislationQueryParser initialValue()
+        {
+            return new OpenLegislationQueryParser(queryAnalyzer);
+        }
+    };
+
     /**
      * Constructs a new Lucene connection from the given configuration file using
      * parameters within the given dot separated prefix. If a lucene database
@@ -87,7 +191,10 @@ public class Lucene
 	public Lucene(Config config, String prefix) throws IOException
 	{
 	    this(new File(config.getValue(prefix+".directory")),
-	         Boolean.parseBoolean(config.getValue(prefix+".readOnly", "false")));
+	         fullTextDirectory(config.getValue(prefix+".fullTextDirectory", "")),
+	         Boolean.parseBoolean(config.getValue(prefix+".readOnly", "false")),
+	         Long.parseLong(config.getValue(prefix+".maxStaleness", "1000")),
+	         Integer.parseInt(config.getValue(prefix+".searchThreads", "1")));
 	}
 
 	/**
@@ -99,9 +206,63 @@ public class Lucene
 	 *                   writer may be open at a time across all system processes.
 	 */
 	public Lucene(File indexDir, boolean readOnly) throws IOException
+	{
+	    this(indexDir, readOnly, 0);
+	}
+
+	/**
+	 * Creates a new Lucene connection to the given directory. If a lucene database
+	 * does not yet exist in the directory then a new one is created.
+	 *
+	 * @param indexDir - The directory for the lucene database.
+	 * @param readOnly - When true, an index writer is not created. Only one index
+	 *                   writer may be open at a time across all system processes.
+	 * @param maxStaleness - Milliseconds between background searcher refreshes. 0 to
+	 *                       refresh before every search instead.
+	 */
+	public Lucene(File indexDir, boolean readOnly, long maxStaleness) throws IOException
+	{
+	    this(indexDir, readOnly, maxStaleness, 1);
+	}
+
+	/**
+	 * Creates a new Lucene connection to the given directory. If a lucene database
+	 * does not yet exist in the directory then a new one is created.
+	 *
+	 * @param indexDir - The directory for the lucene database.
+	 * @param readOnly - When true, an index writer is not created. Only one index
+	 *                   writer may be open at a time across all system processes.
+	 * @param maxStaleness - Milliseconds between background searcher refreshes. 0 to
+	 *                       refresh before every search instead.
+	 * @param searchThreads - Threads shared by all searches for searching segments in
+	 *                        parallel. 1 to search each query's segments in turn on the
+	 *                        calling thread.
+	 */
+	public Lucene(File indexDir, boolean readOnly, long maxStaleness, int searchThreads) throws IOException
+	{
+	    this(indexDir, null, readOnly, maxStaleness, searchThreads);
+	}
+
+	/**
+	 * Creates a new Lucene connection to the given directory. If a lucene database
+	 * does not yet exist in the directory then a new one is created.
+	 *
+	 * @param indexDir - The directory for the lucene database.
+	 * @param fullTextDir - The directory for a separate index of the full text fields, or
+	 *                      null to keep them in the main index. See {@link FullTextIndex}.
+	 * @param readOnly - When true, an index writer is not created. Only one index
+	 *                   writer may be open at a time across all system processes.
+	 * @param maxStaleness - Milliseconds between background searcher refreshes. 0 to
+	 *                       refresh before every search instead.
+	 * @param searchThreads - Threads shared by all searches for searching segments in
+	 *                        parallel. 1 to search each query's segments in turn on the
+	 *                        calling thread.
+	 */
+	public Lucene(File indexDir, File fullTextDir, boolean readOnly, long maxStaleness, int searchThreads) throws IOException
 	{
         this.indexDir = indexDir;
-        this.analyzer = new OpenLegislationAnalyzer(Version.LUCENE_46);
+        this.analyzer = OpenLegislationAnalyzer.forIndexing(Version.LUCENE_46);
+        this.queryAnalyzer = new OpenLegislationAnalyzer(Version.LUCENE_46, false);
 
 	    if (!readOnly) {
             this.indexWriterConfig = new IndexWriterConfig(Version.LUCENE_46, this.analyzer);
@@ -113,9 +274,118 @@ public class Lucene
             this.indexWriter.commit();
         }
 
-        this.searcherManager = new SearcherManager(FSDirectory.open(indexDir), new SearcherFactory());
+        SearcherFactory searcherFactory = new SearcherFactory();
+        if (searchThreads > 1) {
+            this.parallelSearcherFactory = new ParallelSearcherFactory(searchThreads);
+            searcherFactory = parallelSearcherFactory;
+        }
+        this.searchThreads = Math.max(searchThreads, 1);
+        ReferenceManager.RefreshListener refreshListener = new ReferenceManager.RefreshListener() {
+            public void beforeRefresh() {}
+
+            public void afterRefresh(boolean didRefresh)
+            {
+                if (didRefresh) {
+                    generation.incrementAndGet();
+                    resultCache.clear();
+                    Application.getMetrics().increment("lucene.refresh.generation");
+                }
+            }
+        };
+        this.searcherManager = new SearcherManager(FSDirectory.open(indexDir), searcherFactory);
+        this.searcherManager.addListener(refreshListener);
+
+        if (fullTextDir != null) {
+            this.fullTextIndex = new FullTextIndex(fullTextDir, readOnly, analyzer, searcherFactory, refreshListener);
+        }
+
+        this.maxStaleness = maxStaleness;
+        if (maxStaleness > 0) {
+            this.refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "lucene-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.refresher.scheduleWithFixedDelay(new Runnable() {
+                public void run()
+                {
+                    refresh();
+                }
+            }, maxStaleness, maxStaleness, TimeUnit.MILLISECONDS);
+        }
 	}
 
+    /**
+     * Reopens the searcher if the index has changed since it was last opened. Refresh
+     * times are recorded as the lucene.refresh metric and the number of searchers opened
+     * as lucene.refresh.generation.
+     */
+    public void refresh()
+    {
+        SearcherManager manager = searcherManager;
+        if (manager == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            manager.maybeRefresh();
+            if (fullTextIndex != null) {
+                fullTextIndex.refresh();
+            }
+            Application.getMetrics().record("lucene.refresh", start);
+        }
+        catch (Exception e) {
+            // Don't let a failed refresh kill the refresh thread; the old searcher stays in use
+            logger.error("Unable to refresh the index searcher", e);
+        }
+    }
+
+    public long getMaxStaleness()
+    {
+        return maxStaleness;
+    }
+
+    public int getSearchThreads()
+    {
+        return searchThreads;
+    }
+
+    /**
+     * @return The separate full text index, or null if full text is kept in the main index.
+     */
+    public FullTextIndex getFullTextIndex()
+    {
+        return fullTextIndex;
+    }
+
+    /**
+     * @return The full text index directory for a configured path; null if the path is blank.
+     */
+    public static File fullTextDirectory(String path)
+    {
+        return path == null || path.trim().isEmpty() ? null : new File(path);
+    }
+
+    /**
+     * Drops every cached result page, e.g. so benchmarks time the search itself.
+     */
+    public void clearResultCache()
+    {
+        resultCache.clear();
+    }
+
+    /**
+     * @return The number of times a new searcher has been opened since startup.
+     */
+    public long getGeneration()
+    {
+        return generation.get();
+    }
+
 
 	/**
 	 * Performs a sorted search on the Lucene database with the given parameters.
@@ -130,22 +400,71 @@ public class Lucene
 	 */
     protected LuceneResult _search(String queryString, int skipCount, int retrieveCount, String sortFieldName, boolean reversed) throws IOException
     {
-        // detect when people are trying to pull up a specific bill
-        if (queryString.matches("^[A-Z][0-9]{1,5}(-[0-9]+)?$")) {
-            queryString = "oid:"+queryString;
+        return _search(queryString, null, skipCount, retrieveCount, sortFieldName, reversed);
+    }
+
+    /**
+     * Parses the query string and performs a sorted search starting after the given hit.
+     *
+     * @return LuceneResult, or null if the query could not be parsed
+     * @throws IOException
+     * @see #_search(Query, FieldDoc, int, int, String, boolean)
+     */
+    protected LuceneResult _search(String queryString, FieldDoc after, int skipCount, int retrieveCount, String sortFieldName, boolean reversed) throws IOException
+    {
+        Query query;
+        try {
+            query = parse(queryString, "osearch");
         }
-        else {
-            // cheap implementation of otype:resolution
-            queryString = queryString.replaceAll("otype:resolution", "(otype:bill AND oid:(R* OR E* OR J* OR K* OR L*))");
-            logger.info(queryString);
-            queryString = queryToLowerCase(queryString);
+        catch (QueryNodeException e) {
+            logger.warn("Unable to parse query: "+queryString,e);
+            return null;
+        }
+        return _search(query, after, skipCount, retrieveCount, sortFieldName, reversed, null, null);
+    }
+
+    /**
+     * Performs a sorted search on the Lucene database, starting after the given hit. Only the
+     * hits after the cursor are collected so deep pages cost the same as the first page.
+     *
+     * @param query - The search query
+     * @param after - The last hit of the previous page, or null to start from the beginning
+     * @param skipCount - The number of hits after the cursor to skip
+     * @param retrieveCount - The number of results to fetch
+     * @param sortFieldName - The document field to sort on. Use null to sort by relevance.
+     * @param reversed - true to reverse the order of results
+     * @param fields - The stored fields to load for each hit in addition to {@link #RESULT_FIELDS},
+     *                 or null for all but the full text fields
+     * @param facets - The {@link DocumentBuilder#FACET_FIELDS} dimensions to count all hits by,
+     *                 or null to skip counting
+     * @return LuceneResult with the last hit set if the page was full
+     * @throws IOException
+     */
+    protected LuceneResult _search(Query query, FieldDoc after, int skipCount, int retrieveCount, String sortFieldName, boolean reversed, Set<String> fields, Set<String> facets) throws IOException
+    {
+        if (fields != null) {
+            fields = new HashSet<String>(fields);
+            fields.addAll(RESULT_FIELDS);
+        }
+
+        if (refresher == null) {
+            refresh();
+        }
+
+        // Read the generation first so a refresh that races the search can only make the page look stale
+        ResultCache.Key key = new ResultCache.Key(query, after, skipCount, retrieveCount, sortFieldName, reversed, fields, facets);
+        long searchGeneration = generation.get();
+        LuceneResult cached = resultCache.get(key, searchGeneration);
+        if (cached != null) {
+            return cached;
         }
 
-        searcherManager.maybeRefresh();
         IndexSearcher searcher = searcherManager.acquire();
 
         try {
-            Query query = new OpenLegislationQueryParser(analyzer).parse(queryString, "osearch");
+            // Resolve full text clauses against their own index first
+            Query routed = fullTextIndex == null ? query : fullTextIndex.route(query);
+            FilterCache.SplitQuery split = filterCache.split(routed);
 
             // Sort by relevance unless they say otherwise
             Sort sort;
@@ -160,6 +479,10 @@ public class Lucene
                 else if (sortFieldName.equals("when") || sortFieldName.equals("modified") || sortFieldName.equals("published")) {
                     sortType = SortField.Type.LONG;
                 }
+                else if (DocumentBuilder.SORT_FIELDS.contains(sortFieldName)) {
+                    // Ordinal sort backed by the field's sorted doc values
+                    sortType = SortField.Type.STRING;
+                }
                 else {
                     sortType = SortField.Type.STRING_VAL;
                 }
@@ -168,28 +491,97 @@ public class Lucene
 
             // Time our searches so bottle necks can be identified
             long startTime = System.nanoTime();
-            TopDocs topDocs = searcher.search(query, skipCount + retrieveCount, sort);
+            FacetsCollector facetsCollector = facets == null || facets.isEmpty() ? null : facetCounter.collector(searcher.getIndexReader(), facets);
+            TopDocs topDocs;
+            if (facetsCollector == null) {
+                topDocs = after == null
+                        ? searcher.search(split.query, split.filter, skipCount + retrieveCount, sort)
+                        : searcher.searchAfter(after, split.query, split.filter, skipCount + retrieveCount, sort);
+            }
+            else {
+                // Count every hit by facet in the same pass that collects the top hits
+                TopFieldCollector topCollector = TopFieldCollector.create(sort, Math.max(skipCount + retrieveCount, 1), after, true, false, false, false);
+                searcher.search(split.query, split.filter, MultiCollector.wrap(topCollector, facetsCollector));
+                topDocs = topCollector.topDocs();
+            }
             double duration = (System.nanoTime()-startTime)/1000000.0;
-            logger.info(String.format("[%.2f ms] %,d hits for query %s; sorted by %s", duration, topDocs.totalHits, query, sort));
+            logger.info(String.format("[%.2f ms] %,d hits for query %s filtered by %s; sorted by %s", duration, topDocs.totalHits, split.query, split.filter, sort));
 
-            // Only fetch the documents for this "page" for our results.
+            // Only fetch the stored fields we need for this "page" of results.
             ScoreDoc[] scoreDocs = topDocs.scoreDocs;
-            ArrayList<Document> results = new ArrayList<Document>();
+            ArrayList<HashMap<String, String>> results = new ArrayList<HashMap<String, String>>();
             for (int i=skipCount; (i < scoreDocs.length && i < skipCount+retrieveCount); i++) {
-                results.add(searcher.doc(scoreDocs[i].doc));
+                ResultFieldVisitor visitor = new ResultFieldVisitor(fields);
+                searcher.doc(scoreDocs[i].doc, visitor);
+                results.add(visitor.getValues());
             }
 
-            return new LuceneResult(results,topDocs.totalHits);
-        }
-        catch (QueryNodeException e) {
-            logger.warn("Unable to parse query: "+queryString,e);
+            LuceneResult result = new LuceneResult(results,topDocs.totalHits);
+            if (facetsCollector != null) {
+                result.facets = FacetCounter.counts(facetsCollector);
+            }
+            if (results.size() == retrieveCount && retrieveCount > 0) {
+                result.last = (FieldDoc)scoreDocs[skipCount+retrieveCount-1];
+            }
+            resultCache.put(key, searchGeneration, result);
+            return result;
         }
         finally {
             // If this doesn't get released we'll be leaking GIGANTIC amounts of memory
             searcherManager.release(searcher);
         }
+    }
 
-        return null;
+    /**
+     * Parses user supplied query text. Bare bill ids like S1234-2013 are searched by oid,
+     * otype:resolution is expanded to bills with a resolution prefix and everything but the
+     * boolean operators is lower cased to match the index.
+     *
+     * @param queryString - The query text
+     * @param defaultField - The field to search for terms that don't name one
+     * @return The parsed query
+     * @throws QueryNodeException - If the text is not a valid query
+     */
+    public Query parse(String queryString, String defaultField) throws QueryNodeException
+    {
+        String key = defaultField+":"+queryString;
+        Query query = parsedQueries.get(key);
+        if (query == null) {
+            query = parseUncached(queryString, defaultField);
+            parsedQueries.put(key, query);
+        }
+        // Callers may add clauses to or reboost what they get back
+        return query.clone();
+    }
+
+    private Query parseUncached(String queryString, String defaultField) throws QueryNodeException
+    {
+        // detect when people are trying to pull up a specific bill
+        if (queryString.matches("^[A-Z][0-9]{1,5}(-[0-9]+)?$")) {
+            queryString = "oid:"+queryString;
+        }
+        else {
+            // cheap implementation of otype:resolution
+            queryString = queryString.replace("otype:resolution", "(otype:bill AND oid:(R* OR E* OR J* OR K* OR L*))");
+            queryString = queryToLowerCase(queryString);
+        }
+        return queryParser.get().parse(queryString, defaultField);
+    }
+
+    /**
+     * @return A builder for typed queries against this index.
+     */
+    public LuceneQueryBuilder queryBuilder()
+    {
+        return new LuceneQueryBuilder(this);
+    }
+
+    /**
+     * @return The analyzer for query text.
+     */
+    public Analyzer getAnalyzer()
+    {
+        return queryAnalyzer;
     }
 
     /**
@@ -203,11 +595,69 @@ public class Lucene
     {
         logger.info("indexing document: " + doc.getField("otype").stringValue() + "=" + doc.getField("oid").stringValue());
         String oid = doc.getField("oid").stringValue();
-        indexWriter.updateDocument(new Term("oid", oid.toLowerCase()), doc);
+        Term term = new Term("oid", oid.toLowerCase());
+        if (fullTextIndex != null) {
+            Document fullText = fullTextIndex.split(doc);
+            if (fullText != null) {
+                fullTextIndex.updateDocument(term, fullText);
+            }
+            else {
+                fullTextIndex.deleteDocuments(term);
+            }
+        }
+        else {
+            DocumentBuilder.mergeSearchText(doc);
+        }
+        indexWriter.updateDocument(term, doc);
     }
 
     /**
-     * Deletes all documents from the index that match the given query.
+     * Adds a batch of documents to the index. Callers are responsible for deleting any
+     * existing documents with the same oids first.
+     *
+     * @param docs - The documents to be indexed.
+     * @throws IOException
+     */
+    public void addDocuments(List<Document> docs) throws IOException
+    {
+        logger.info("indexing "+docs.size()+" documents");
+        if (fullTextIndex != null) {
+            List<Document> fullTextDocs = new ArrayList<Document>();
+            for (Document doc : docs) {
+                Document fullText = fullTextIndex.split(doc);
+                if (fullText != null) {
+                    fullTextDocs.add(fullText);
+                }
+            }
+            fullTextIndex.addDocuments(fullTextDocs);
+        }
+        else {
+            for (Document doc : docs) {
+                DocumentBuilder.mergeSearchText(doc);
+            }
+        }
+        indexWriter.addDocuments(docs);
+    }
+
+    /**
+     * Deletes all documents from the index that match any of the given terms. Terms are
+     * matched exactly so their values must already be lower case where the indexed field is.
+     *
+     * @param terms - The terms to delete documents by.
+     * @throws IOException
+     */
+    public void deleteDocuments(Term... terms) throws IOException
+    {
+        if (fullTextIndex != null) {
+            fullTextIndex.deleteDocuments(terms);
+        }
+        indexWriter.deleteDocuments(terms);
+    }
+
+    /**
+     * Deletes all documents from the index that match the given query. The full text of
+     * each matching document is deleted by its oid, including changes that haven't been
+     * committed yet.
      *
      * @param queryString - The query to use when deleting documents
      * @throws IOException
@@ -215,9 +665,93 @@ public class Lucene
      */
     public void deleteDocumentsByQuery(String queryString) throws IOException, QueryNodeException
     {
-        queryString = queryToLowerCase(queryString);
-		Query query = new OpenLegislationQueryParser(indexWriter.getAnalyzer()).parse(queryString, "osearch");
-		indexWriter.deleteDocuments(query);
+        Query query = queryParser.get().parse(queryToLowerCase(queryString), "osearch");
+        if (fullTextIndex != null) {
+            query = fullTextIndex.route(query);
+            fullTextIndex.deleteDocuments(matchingOids(query));
+        }
+        indexWriter.deleteDocuments(query);
+    }
+
+    /**
+     * @return oid terms for the main index documents matching the query, as of the last write.
+     */
+    private Term[] matchingOids(Query query) throws IOException
+    {
+        final List<Integer> docIds = new ArrayList<Integer>();
+        DirectoryReader reader = DirectoryReader.open(indexWriter, true);
+        try {
+            new IndexSearcher(reader).search(query, new Collector() {
+                private int docBase;
+
+                @Override
+                public void setScorer(Scorer scorer) {}
+
+                @Override
+                public void setNextReader(AtomicReaderContext context)
+                {
+                    docBase = context.docBase;
+                }
+
+                @Override
+                public void collect(int doc)
+                {
+                    docIds.add(docBase + doc);
+                }
+
+                @Override
+                public boolean acceptsDocsOutOfOrder()
+                {
+                    return true;
+                }
+            });
+
+            List<Term> oids = new ArrayList<Term>();
+            Set<String> oidField = Collections.singleton("oid");
+            for (int docId : docIds) {
+                String oid = reader.document(docId, oidField).get("oid");
+                if (oid != null) {
+                    oids.add(new Term("oid", oid.toLowerCase()));
+                }
+            }
+            return oids.toArray(new Term[oids.size()]);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the storage key of every document in the index, as of the last write. Votes and
+     * actions have the key of their bill. Documents indexed before storage keys were stored
+     * are left out.
+     *
+     * @return The distinct storage keys in the index.
+     * @throws IOException
+     */
+    public Set<String> getIndexedKeys() throws IOException
+    {
+        Set<String> keys = new HashSet<String>();
+        Set<String> okeyField = Collections.singleton("okey");
+        DirectoryReader reader = DirectoryReader.open(indexWriter, true);
+        try {
+            for (AtomicReaderContext context : reader.leaves()) {
+                AtomicReader segment = context.reader();
+                Bits liveDocs = segment.getLiveDocs();
+                for (int doc = 0; doc < segment.maxDoc(); doc++) {
+                    if (liveDocs == null || liveDocs.get(doc)) {
+                        String key = segment.document(doc, okeyField).get("okey");
+                        if (key != null) {
+                            keys.add(key);
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return keys;
     }
 
     /**
@@ -228,7 +762,22 @@ public class Lucene
      */
     public void deleteDocumentById(String oid) throws IOException
     {
-        indexWriter.deleteDocuments(new Term("oid", oid.toLowerCase()));
+        deleteDocuments(new Term("oid", oid.toLowerCase()));
+    }
+
+    /**
+     * Merges the index down to at most the given number of segments, e.g. after a reindex
+     * to drop old segments built without doc values.
+     *
+     * @param maxSegments - The maximum number of segments to leave.
+     * @throws IOException
+     */
+    public void forceMerge(int maxSegments) throws IOException
+    {
+        if (fullTextIndex != null) {
+            fullTextIndex.forceMerge(maxSegments);
+        }
+        indexWriter.forceMerge(maxSegments);
     }
 
     /**
@@ -239,7 +788,13 @@ public class Lucene
      */
     public void commit() throws CorruptIndexException, IOException
     {
+        if (fullTextIndex != null) {
+            fullTextIndex.commit();
+        }
         this.indexWriter.commit();
+
+        // Make our own changes visible right away rather than waiting for the next refresh
+        refresh();
     }
 
     /**
@@ -250,11 +805,21 @@ public class Lucene
      */
     public synchronized void close() throws IOException
     {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+
         if (analyzer != null) {
             analyzer.close();
             analyzer = null;
         }
 
+        if (queryAnalyzer != null) {
+            queryAnalyzer.close();
+            queryAnalyzer = null;
+        }
+
         if (indexWriter != null) {
             indexWriter.close();
             indexWriter = null;
@@ -264,36 +829,120 @@ public class Lucene
             searcherManager.close();
             searcherManager = null;
         }
+
+        if (fullTextIndex != null) {
+            fullTextIndex.close();
+            fullTextIndex = null;
+        }
+
+        if (parallelSearcherFactory != null) {
+            parallelSearcherFactory.shutdown();
+            parallelSearcherFactory = null;
+        }
     }
 
 
 
     public SenateResponse search(String queryText, int skipCount, int retrieveCount, String sortFieldName, boolean reversed) throws IOException
     {
-        SenateResponse response = new SenateResponse();
+        return toResponse(this._search(queryText,skipCount,retrieveCount,sortFieldName,reversed),sortFieldName,reversed);
+    }
+
+    public SenateResponse search(Query query, int skipCount, int retrieveCount, String sortFieldName, boolean reversed) throws IOException
+    {
+        return search(query,skipCount,retrieveCount,sortFieldName,reversed,null);
+    }
+
+    /**
+     * Performs a sorted search that only loads the given stored fields for each result. The
+     * fields every result needs, {@link #RESULT_FIELDS}, are always loaded.
+     *
+     * @param fields - The extra stored fields to load, or null for all but the full text fields.
+     */
+    public SenateResponse search(Query query, int skipCount, int retrieveCount, String sortFieldName, boolean reversed, Set<String> fields) throws IOException
+    {
+        return search(query,skipCount,retrieveCount,sortFieldName,reversed,fields,null);
+    }
+
+    /**
+     * Performs a sorted search that also counts all of the hits by facet. The response's
+     * "facets" metadata maps each counted dimension to its most common values and their counts.
+     *
+     * @param fields - The extra stored fields to load, or null for all but the full text fields.
+     * @param facets - The {@link DocumentBuilder#FACET_FIELDS} dimensions to count, or null for none.
+     */
+    public SenateResponse search(Query query, int skipCount, int retrieveCount, String sortFieldName, boolean reversed, Set<String> fields, Set<String> facets) throws IOException
+    {
+        return toResponse(this._search(query,null,skipCount,retrieveCount,sortFieldName,reversed,fields,facets),sortFieldName,reversed);
+    }
+
+    /**
+     * Fetches the page of results following a cursor. The response's "cursor" metadata holds
+     * the token for the next page and is missing once the results run out.
+     *
+     * @param queryText - The search query; must match the query the cursor came from.
+     * @param cursor - A cursor from a previous response, or null for the first page.
+     * @param retrieveCount - The number of results to fetch.
+     * @param sortFieldName - The sort field; must match the search the cursor came from.
+     * @param reversed - The sort order; must match the search the cursor came from.
+     * @throws IllegalArgumentException - If the cursor is malformed or came from a differently sorted search.
+     * @throws IOException
+     */
+    public SenateResponse searchAfter(String queryText, String cursor, int retrieveCount, String sortFieldName, boolean reversed) throws IOException
+    {
+        FieldDoc after = cursor == null ? null : SearchCursor.decode(cursor,sortFieldName,reversed);
+        return toResponse(this._search(queryText,after,0,retrieveCount,sortFieldName,reversed),sortFieldName,reversed);
+    }
 
-        LuceneResult result = this._search(queryText,skipCount,retrieveCount,sortFieldName,reversed);
+    /**
+     * Fetches the page of results following a cursor for a typed query.
+     *
+     * @see #searchAfter(String, String, int, String, boolean)
+     */
+    public SenateResponse searchAfter(Query query, String cursor, int retrieveCount, String sortFieldName, boolean reversed) throws IOException
+    {
+        return searchAfter(query,cursor,retrieveCount,sortFieldName,reversed,null);
+    }
+
+    /**
+     * Fetches the page of results following a cursor for a typed query, counting all of the
+     * hits by facet.
+     *
+     * @see #search(Query, int, int, String, boolean, Set, Set)
+     * @see #searchAfter(String, String, int, String, boolean)
+     */
+    public SenateResponse searchAfter(Query query, String cursor, int retrieveCount, String sortFieldName, boolean reversed, Set<String> facets) throws IOException
+    {
+        FieldDoc after = cursor == null ? null : SearchCursor.decode(cursor,sortFieldName,reversed);
+        return toResponse(this._search(query,after,0,retrieveCount,sortFieldName,reversed,null,facets),sortFieldName,reversed);
+    }
+
+    private SenateResponse toResponse(LuceneResult result, String sortFieldName, boolean reversed)
+    {
+        SenateResponse response = new SenateResponse();
 
         if (result != null) {
             response.addMetadataByKey("totalresults", result.total );
+            if (result.last != null) {
+                response.addMetadataByKey("cursor", SearchCursor.encode(result.last, sortFieldName, reversed));
+            }
+            if (result.facets != null) {
+                response.addMetadataByKey("facets", result.facets);
+            }
 
-            for (Document doc : result.results) {
+            for (HashMap<String, String> doc : result.results) {
                 String lastModified = doc.get("modified");
                 if (lastModified == null || lastModified.length() == 0)
                     lastModified = new Date().getTime()+"";
 
-                HashMap<String,String> fields = new HashMap<String,String>();
-                for(IndexableField field : doc.getFields()) {
-                    fields.put(field.name(), doc.get(field.name()));
-                }
-
+                // Cached pages are shared, so give each result its own copy of the fields
                 response.addResult(new Result(
                         doc.get("otype"),
                         doc.get("odata"),
                         doc.get("oid"),
                         Long.parseLong(lastModified),
                         Boolean.parseBoolean(doc.get("active")),
-                        fields));
+                        new HashMap<String, String>(doc)));
             }
         }
         else {
@@ -305,18 +954,25 @@ public class Lucene
 
     public IBaseObject getSenateObject(String oid, String type) {
         oid = oid.replace(" ", "-").replace(",", "");
-        ResultIterator longSearch = new ResultIterator("otype:"+type+" AND oid:\""+oid+"\"", 1, 1, "oid", true);
+        ResultIterator longSearch = new ResultIterator(queryBuilder().otype(type).oid(oid).query(), 1, 1, "oid", true);
         for(Result result:longSearch) {
             return result.getObject();
         }
         return null;
     }
 
-    @SuppressWarnings("unchecked") // Doesn't seem to be a way to properly type check here
     public <T extends IBaseObject> ArrayList<T> getSenateObjects(String query) {
+        return getSenateObjects(new ResultIterator(query));
+    }
+
+    public <T extends IBaseObject> ArrayList<T> getSenateObjects(Query query) {
+        return getSenateObjects(new ResultIterator(query));
+    }
+
+    @SuppressWarnings("unchecked") // Doesn't seem to be a way to properly type check here
+    private <T extends IBaseObject> ArrayList<T> getSenateObjects(ResultIterator longSearch) {
         ArrayList<T> senateObjects = new ArrayList<T>();
 
-        ResultIterator longSearch = new ResultIterator(query);
         for(Result result:longSearch) {
             senateObjects.add((T)result.getObject());
         }
@@ -339,18 +995,7 @@ public class Lucene
     }
 
     private ArrayList<Bill> getRelatedBills(String billNumber, String year) {
-        int length = billNumber.length();
-        if(!Character.isDigit(billNumber.charAt(length-1))) {
-            billNumber = billNumber.substring(0, length-1);
-        }
-
-        String query = TextFormatter.append("otype:bill AND oid:((",
-                billNumber, "-", year,
-                " OR [", billNumber, "A-", year,
-                " TO ", billNumber, "Z-", year,
-                "]) AND ", billNumber, "*-", year, ")");
-
-        return getSenateObjects(query);
+        return getSenateObjects(queryBuilder().otype("bill").amendmentsOf(billNumber+"-"+year).query());
     }
 
     /**
@@ -362,16 +1007,16 @@ public class Lucene
      */
     private String queryToLowerCase(String query)
     {
-        String[] tokens = query.split(" ");
-        query = "";
-        for(String token : tokens) {
+        StringBuilder lowered = new StringBuilder(query.length()+1);
+        for(String token : query.split(" ")) {
             if (token.equals("TO") || token.equals("AND") || token.equals("OR") || token.equals("NOT")) {
-                query += token+" ";
+                lowered.append(token);
             }
             else {
-                query += token.toLowerCase()+" ";
+                lowered.append(token.toLowerCase());
             }
+            lowered.append(' ');
         }
-        return query;
+        return lowered.toString();
     }
 }
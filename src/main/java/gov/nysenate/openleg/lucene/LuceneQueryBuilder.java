@@ -0,0 +1,217 @@
+package gov.nysenate.openleg.lucene;
+
+import gov.nysenate.openleg.util.SessionYear;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * Builds Lucene queries directly out of typed clauses, all of which are required to match.
+ * <p>
+ * Only user supplied free text is handed to the query parser. Everything else is built as
+ * the exact term, range or phrase query it would have parsed to, so fixed clauses like
+ * otype, active and year are never escaped, re-parsed or re-analyzed and always match the
+ * cached filters in {@link FilterCache}.
+ */
+public class LuceneQueryBuilder
+{
+    /**
+     * Bill prefixes used for resolutions; see {@link Lucene#parse(String, String)}.
+     */
+    private static final String[] RESOLUTION_PREFIXES = {"r", "e", "j", "k", "l"};
+
+    private final Lucene lucene;
+    private final BooleanQuery query = new BooleanQuery();
+
+    public LuceneQueryBuilder(Lucene lucene)
+    {
+        this.lucene = lucene;
+    }
+
+    /**
+     * Requires documents of the given type. "resolution" matches bills with a resolution prefix.
+     */
+    public LuceneQueryBuilder otype(String otype)
+    {
+        otype = otype.toLowerCase();
+        if (otype.equals("resolution")) {
+            BooleanQuery prefixes = new BooleanQuery();
+            for (String prefix : RESOLUTION_PREFIXES) {
+                prefixes.add(new PrefixQuery(new Term("oid", prefix)), Occur.SHOULD);
+            }
+            must(new TermQuery(new Term("otype", "bill")));
+            return must(prefixes);
+        }
+        return must(new TermQuery(new Term("otype", otype)));
+    }
+
+    public LuceneQueryBuilder oid(String oid)
+    {
+        return must(new TermQuery(new Term("oid", oid.toLowerCase())));
+    }
+
+    /**
+     * Requires the bill with the given number and year along with all of its amendments, or
+     * the votes and actions on any of them. Matches the base bill number term that
+     * {@link BillNumberFilter} indexes in the billno field.
+     *
+     * @param billNo - A bill number such as S1234A-2013. The current session is used if the year is missing.
+     */
+    public LuceneQueryBuilder amendmentsOf(String billNo)
+    {
+        if (!billNo.contains("-")) {
+            billNo = billNo+"-"+SessionYear.getSessionYear();
+        }
+        String baseBillNo = BillNumberFilter.baseBillNumber(billNo);
+        return must(new TermQuery(new Term("billno", baseBillNo != null ? baseBillNo : billNo.toLowerCase())));
+    }
+
+    public LuceneQueryBuilder active()
+    {
+        return must(new TermQuery(new Term("active", "true")));
+    }
+
+    public LuceneQueryBuilder inactive()
+    {
+        return must(new TermQuery(new Term("active", "false")));
+    }
+
+    /**
+     * Requires documents from the two year session containing the given year.
+     */
+    public LuceneQueryBuilder inSession(int year)
+    {
+        int session = SessionYear.getSessionYear(year);
+        return must(NumericRangeQuery.newIntRange("year", session, session+1, true, true));
+    }
+
+    public LuceneQueryBuilder current()
+    {
+        return inSession(SessionYear.getSessionYear());
+    }
+
+    /**
+     * Requires a numeric long field, e.g. when, modified or published, to fall within the inclusive range.
+     */
+    public LuceneQueryBuilder range(String field, long from, long to)
+    {
+        return must(NumericRangeQuery.newLongRange(field, from, to, true, true));
+    }
+
+    public LuceneQueryBuilder prefix(String field, String prefix)
+    {
+        return must(new PrefixQuery(new Term(field, prefix.toLowerCase())));
+    }
+
+    /**
+     * Requires the exact phrase in an analyzed field such as sponsor, committee or bills. The
+     * text is analyzed the same way the field was when indexed.
+     */
+    public LuceneQueryBuilder phrase(String field, String text)
+    {
+        PhraseQuery phrase = new PhraseQuery();
+        List<Term> terms = new ArrayList<Term>();
+        Analyzer analyzer = lucene.getAnalyzer();
+        try {
+            TokenStream stream = analyzer.tokenStream(field, text);
+            CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+            PositionIncrementAttribute positionAttribute = stream.addAttribute(PositionIncrementAttribute.class);
+            try {
+                stream.reset();
+                int position = -1;
+                while (stream.incrementToken()) {
+                    position += positionAttribute.getPositionIncrement();
+                    Term term = new Term(field, termAttribute.toString());
+                    phrase.add(term, position);
+                    terms.add(term);
+                }
+                stream.end();
+            }
+            finally {
+                stream.close();
+            }
+        }
+        catch (IOException e) {
+            // Analyzing a string in memory doesn't do any I/O
+            throw new IllegalStateException(e);
+        }
+
+        if (terms.size() == 1) {
+            return must(new TermQuery(terms.get(0)));
+        }
+        return must(phrase);
+    }
+
+    /**
+     * Requires a match for user supplied query text searched against the osearch field.
+     *
+     * @throws QueryNodeException - If the text can't be parsed.
+     */
+    public LuceneQueryBuilder text(String text) throws QueryNodeException
+    {
+        return text("osearch", text);
+    }
+
+    /**
+     * Requires a match for user supplied query text. Terms without a field are searched in
+     * the given default field.
+     *
+     * @throws QueryNodeException - If the text can't be parsed.
+     */
+    public LuceneQueryBuilder text(String defaultField, String text) throws QueryNodeException
+    {
+        return must(lucene.parse(text, defaultField));
+    }
+
+    public LuceneQueryBuilder must(Query clause)
+    {
+        query.add(clause, Occur.MUST);
+        return this;
+    }
+
+    public LuceneQueryBuilder mustNot(Query clause)
+    {
+        query.add(clause, Occur.MUST_NOT);
+        return this;
+    }
+
+    /**
+     * @return The conjunction of every clause added so far; matches all documents if there are
+     *         none. A lone required clause is returned by itself so it equals the parsed query
+     *         for the same text.
+     */
+    public Query query()
+    {
+        List<BooleanClause> clauses = query.clauses();
+        if (clauses.isEmpty()) {
+            return new MatchAllDocsQuery();
+        }
+        else if (clauses.size() == 1 && clauses.get(0).getOccur() == Occur.MUST) {
+            return clauses.get(0).getQuery().clone();
+        }
+        return query.clone();
+    }
+
+    @Override
+    public String toString()
+    {
+        return query().toString();
+    }
+}
@@ -1,14 +1,27 @@
 package gov.nysenate.openleg.lucene;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.apache.lucene.document.Document;
+import org.apache.lucene.search.FieldDoc;
 
 public class LuceneResult
 {
 	public int total;
-	public Collection<Document> results;
-	public LuceneResult(Collection<Document> documents, int totalresults) {
+	/**
+	 * The stored fields loaded for each hit on the page.
+	 */
+	public Collection<HashMap<String, String>> results;
+	/**
+	 * The last hit of a full page, used to fetch the next page; null if there are no more.
+	 */
+	public FieldDoc last;
+	/**
+	 * Hit counts by facet dimension and value; null if facets weren't counted.
+	 */
+	public Map<String, Map<String, Integer>> facets;
+	public LuceneResult(Collection<HashMap<String, String>> documents, int totalresults) {
 		total = totalresults;
 		results = documents;
 	}
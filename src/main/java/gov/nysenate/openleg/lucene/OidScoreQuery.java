@@ -0,0 +1,252 @@
+package gov.nysenate.openleg.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Matches the main index documents with the given oids, each scored with the score its full
+ * text got in the {@link FullTextIndex}.
+ * <p>
+ * This keeps words found only in the text ranked by how well they match instead of giving
+ * every such document the same score. The documents for each oid are looked up once per
+ * segment and kept for as long as the segment is open, so a query reused across searches
+ * only pays for segments it hasn't seen.
+ */
+class OidScoreQuery extends Query
+{
+    /**
+     * The documents and scores of one segment, in document order.
+     */
+    private static class SegmentScores
+    {
+        final int[] docs;
+        final float[] scores;
+
+        SegmentScores(int[] docs, float[] scores)
+        {
+            this.docs = docs;
+            this.scores = scores;
+        }
+    }
+
+    private final Map<BytesRef, Float> scores;
+
+    private final Map<Object, SegmentScores> segments = Collections.synchronizedMap(new WeakHashMap<Object, SegmentScores>());
+
+    /**
+     * @param scores - The full text score for each lower case oid.
+     */
+    public OidScoreQuery(Map<BytesRef, Float> scores)
+    {
+        this.scores = scores;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher)
+    {
+        return new Weight() {
+            private float queryWeight = getBoost();
+
+            @Override
+            public Query getQuery()
+            {
+                return OidScoreQuery.this;
+            }
+
+            @Override
+            public float getValueForNormalization()
+            {
+                return queryWeight * queryWeight;
+            }
+
+            @Override
+            public void normalize(float norm, float topLevelBoost)
+            {
+                queryWeight = getBoost() * norm * topLevelBoost;
+            }
+
+            @Override
+            public Scorer scorer(AtomicReaderContext context, boolean scoreDocsInOrder, boolean topScorer, Bits acceptDocs) throws IOException
+            {
+                SegmentScores segment = getSegmentScores(context);
+                return segment.docs.length == 0 ? null : new OidScorer(this, segment, acceptDocs, queryWeight);
+            }
+
+            @Override
+            public Explanation explain(AtomicReaderContext context, int doc) throws IOException
+            {
+                SegmentScores segment = getSegmentScores(context);
+                int index = Arrays.binarySearch(segment.docs, doc);
+                if (index < 0) {
+                    return new Explanation(0, "oid not matched by full text");
+                }
+                return new Explanation(segment.scores[index] * queryWeight, "full text score");
+            }
+        };
+    }
+
+    private SegmentScores getSegmentScores(AtomicReaderContext context) throws IOException
+    {
+        Object key = context.reader().getCoreCacheKey();
+        SegmentScores segment = segments.get(key);
+        if (segment != null) {
+            return segment;
+        }
+
+        // Deleted documents are left in and skipped when scoring so the lookup can be shared
+        // by every reader on this segment.
+        List<int[]> matches = new ArrayList<int[]>();
+        Terms terms = context.reader().terms("oid");
+        if (terms != null) {
+            TermsEnum termsEnum = terms.iterator(null);
+            DocsEnum docsEnum = null;
+            for (Entry<BytesRef, Float> entry : scores.entrySet()) {
+                if (termsEnum.seekExact(entry.getKey())) {
+                    docsEnum = termsEnum.docs(null, docsEnum, DocsEnum.FLAG_NONE);
+                    int doc;
+                    while ((doc = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                        matches.add(new int[]{doc, Float.floatToIntBits(entry.getValue())});
+                    }
+                }
+            }
+        }
+
+        Collections.sort(matches, new Comparator<int[]>() {
+            public int compare(int[] a, int[] b)
+            {
+                return a[0] < b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+            }
+        });
+
+        // A document indexed under several oids keeps its best score
+        int[] docs = new int[matches.size()];
+        float[] docScores = new float[matches.size()];
+        int size = 0;
+        for (int[] match : matches) {
+            float score = Float.intBitsToFloat(match[1]);
+            if (size > 0 && docs[size-1] == match[0]) {
+                docScores[size-1] = Math.max(docScores[size-1], score);
+            }
+            else {
+                docs[size] = match[0];
+                docScores[size] = score;
+                size++;
+            }
+        }
+
+        segment = new SegmentScores(Arrays.copyOf(docs, size), Arrays.copyOf(docScores, size));
+        segments.put(key, segment);
+        return segment;
+    }
+
+    private static class OidScorer extends Scorer
+    {
+        private final SegmentScores segment;
+        private final Bits acceptDocs;
+        private final float weight;
+        private int index = -1;
+        private int doc = -1;
+
+        OidScorer(Weight weight, SegmentScores segment, Bits acceptDocs, float queryWeight)
+        {
+            super(weight);
+            this.segment = segment;
+            this.acceptDocs = acceptDocs;
+            this.weight = queryWeight;
+        }
+
+        @Override
+        public float score()
+        {
+            return segment.scores[index] * weight;
+        }
+
+        @Override
+        public int freq()
+        {
+            return 1;
+        }
+
+        @Override
+        public int docID()
+        {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc()
+        {
+            while (++index < segment.docs.length) {
+                if (acceptDocs == null || acceptDocs.get(segment.docs[index])) {
+                    return doc = segment.docs[index];
+                }
+            }
+            return doc = NO_MORE_DOCS;
+        }
+
+        @Override
+        public int advance(int target)
+        {
+            int next;
+            do {
+                next = nextDoc();
+            } while (next < target);
+            return next;
+        }
+
+        @Override
+        public long cost()
+        {
+            return segment.docs.length;
+        }
+    }
+
+    @Override
+    public void extractTerms(Set<Term> terms)
+    {
+        // The oids are an implementation detail of the full text match, not terms to highlight
+    }
+
+    @Override
+    public String toString(String field)
+    {
+        return "oidScore("+scores.size()+" oids)"+(getBoost() == 1.0f ? "" : "^"+getBoost());
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (!super.equals(obj)) {
+            return false;
+        }
+        return scores.equals(((OidScoreQuery)obj).scores);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return super.hashCode() ^ scores.hashCode();
+    }
+}
@@ -1,6 +1,10 @@
 package gov.nysenate.openleg.lucene;
 
 import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenFilter;
@@ -8,15 +12,52 @@ import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.core.LowerCaseFilter;
 import org.apache.lucene.analysis.core.StopAnalyzer;
 import org.apache.lucene.analysis.core.StopFilter;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.util.Version;
 
 public class OpenLegislationAnalyzer extends Analyzer
 {
+    /**
+     * The fields that hold bill numbers. Only these get the normalized bill number terms;
+     * titles, summaries and full text would otherwise be filled with terms for anything that
+     * looks like a bill number, e.g. section or chapter numbers.
+     */
+    public static final List<String> BILL_NUMBER_FIELDS = Arrays.asList("billno", "sameas", "bills");
+
     private final Version matchVersion;
+    private final boolean indexBillNumbers;
 
+    /**
+     * Creates an analyzer that indexes the normalized forms of bill numbers in every field.
+     * Use {@link #forIndexing(Version)} for documents.
+     */
     public OpenLegislationAnalyzer(Version matchVersion)
+    {
+        this(matchVersion, true);
+    }
+
+    /**
+     * @param indexBillNumbers - True to add the normalized forms of bill numbers with a
+     *                           {@link BillNumberFilter}. Use false for query text.
+     */
+    public OpenLegislationAnalyzer(Version matchVersion, boolean indexBillNumbers)
     {
         this.matchVersion = matchVersion;
+        this.indexBillNumbers = indexBillNumbers;
+    }
+
+    /**
+     * @return The analyzer for indexing documents, which adds the normalized forms of bill
+     *         numbers to the {@link #BILL_NUMBER_FIELDS} only.
+     */
+    public static Analyzer forIndexing(Version matchVersion)
+    {
+        Map<String, Analyzer> fieldAnalyzers = new HashMap<String, Analyzer>();
+        Analyzer billNumberAnalyzer = new OpenLegislationAnalyzer(matchVersion, true);
+        for (String field : BILL_NUMBER_FIELDS) {
+            fieldAnalyzers.put(field, billNumberAnalyzer);
+        }
+        return new PerFieldAnalyzerWrapper(new OpenLegislationAnalyzer(matchVersion, false), fieldAnalyzers);
     }
 
     @Override
@@ -25,6 +66,9 @@ public class OpenLegislationAnalyzer extends Analyzer
         Tokenizer source = new OpenLegislationTokenizer(matchVersion, reader);
         TokenFilter filter = new StopFilter(matchVersion, source, StopAnalyzer.ENGLISH_STOP_WORDS_SET);
         filter = new LowerCaseFilter(matchVersion, filter);
+        if (indexBillNumbers) {
+            filter = new BillNumberFilter(filter);
+        }
         return new TokenStreamComponents(source, filter);
     }
 }
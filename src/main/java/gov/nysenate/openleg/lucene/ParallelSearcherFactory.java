@@ -0,0 +1,55 @@
+package gov.nysenate.openleg.lucene;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+
+/**
+ * Creates searchers that search the segments of the index in parallel.
+ * <p>
+ * Each query is split into one task per segment and run on a shared, fixed size pool, so
+ * the slow full text queries over bill text and transcripts finish in roughly the time of
+ * their largest segment. The pool is bounded so that concurrent requests queue for threads
+ * rather than each adding a thread per segment.
+ */
+public class ParallelSearcherFactory extends SearcherFactory
+{
+    private final ExecutorService executor;
+
+    /**
+     * @param threads - The number of threads shared by all searches for segment tasks.
+     */
+    public ParallelSearcherFactory(int threads)
+    {
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "lucene-search-"+count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public IndexSearcher newSearcher(IndexReader reader)
+    {
+        return new IndexSearcher(reader, executor);
+    }
+
+    /**
+     * Stops the search threads. Searchers from this factory can't be used afterwards.
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+}
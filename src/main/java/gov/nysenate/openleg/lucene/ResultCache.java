@@ -0,0 +1,158 @@
+package gov.nysenate.openleg.lucene;
+
+import gov.nysenate.openleg.util.Application;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Query;
+
+/**
+ * Caches pages of search results for the current searcher generation.
+ * <p>
+ * Listings and feeds run the same few queries over and over between pushes. Pages are kept
+ * in a least recently used map keyed by the parsed query, sort, cursor, page bounds, loaded
+ * fields and counted facets, and tagged with the searcher generation they were read from.
+ * Once a refresh opens a new searcher every cached page is stale and is dropped on its next
+ * lookup.
+ */
+public class ResultCache
+{
+    /**
+     * Identifies a page of results. Queries are compared by value so equal typed or parsed
+     * queries share entries.
+     */
+    public static class Key
+    {
+        private final Query query;
+        private final String after;
+        private final int skipCount;
+        private final int retrieveCount;
+        private final String sortFieldName;
+        private final boolean reversed;
+        private final Set<String> fields;
+        private final Set<String> facets;
+
+        public Key(Query query, FieldDoc after, int skipCount, int retrieveCount, String sortFieldName, boolean reversed, Set<String> fields, Set<String> facets)
+        {
+            this.query = query;
+            this.after = after == null ? null : SearchCursor.encode(after, sortFieldName, reversed);
+            this.skipCount = skipCount;
+            this.retrieveCount = retrieveCount;
+            this.sortFieldName = sortFieldName == null || sortFieldName.isEmpty() ? null : sortFieldName;
+            this.reversed = reversed;
+            this.fields = fields;
+            this.facets = facets == null || facets.isEmpty() ? null : facets;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = query.hashCode();
+            hash = 31*hash + (after == null ? 0 : after.hashCode());
+            hash = 31*hash + skipCount;
+            hash = 31*hash + retrieveCount;
+            hash = 31*hash + (sortFieldName == null ? 0 : sortFieldName.hashCode());
+            hash = 31*hash + (reversed ? 1 : 0);
+            hash = 31*hash + (fields == null ? 0 : fields.hashCode());
+            return 31*hash + (facets == null ? 0 : facets.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            else if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key)obj;
+            return query.equals(other.query)
+                    && (after == null ? other.after == null : after.equals(other.after))
+                    && skipCount == other.skipCount
+                    && retrieveCount == other.retrieveCount
+                    && (sortFieldName == null ? other.sortFieldName == null : sortFieldName.equals(other.sortFieldName))
+                    && reversed == other.reversed
+                    && (fields == null ? other.fields == null : fields.equals(other.fields))
+                    && (facets == null ? other.facets == null : facets.equals(other.facets));
+        }
+    }
+
+    private static class Entry
+    {
+        final long generation;
+        final LuceneResult result;
+
+        Entry(long generation, LuceneResult result)
+        {
+            this.generation = generation;
+            this.result = result;
+        }
+    }
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, Entry> entries;
+
+    /**
+     * @param maxSize - Maximum number of pages to keep. 0 disables caching.
+     */
+    public ResultCache(final int maxSize)
+    {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param key - The page to look up.
+     * @param generation - The current searcher generation.
+     * @return The cached page, or null if it isn't cached or was read from an older searcher.
+     */
+    public synchronized LuceneResult get(Key key, long generation)
+    {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.generation == generation) {
+            Application.getMetrics().increment("lucene.cache.hit");
+            return entry.result;
+        }
+        else if (entry != null) {
+            entries.remove(key);
+        }
+
+        Application.getMetrics().increment("lucene.cache.miss");
+        return null;
+    }
+
+    /**
+     * @param key - The page that was searched for.
+     * @param generation - The searcher generation read before the searcher was acquired.
+     * @param result - The page of results.
+     */
+    public synchronized void put(Key key, long generation, LuceneResult result)
+    {
+        if (maxSize > 0) {
+            entries.put(key, new Entry(generation, result));
+        }
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+}
@@ -0,0 +1,83 @@
+package gov.nysenate.openleg.lucene;
+
+import java.util.HashMap;
+import java.util.Set;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.StoredFieldVisitor;
+
+/**
+ * Loads the stored fields of a single hit straight into a field map.
+ * <p>
+ * Only the requested fields are decoded; the rest are skipped without being read into
+ * memory. When no fields are requested everything but the large full text fields is loaded,
+ * which is all a listing needs. Multi-valued fields keep their first value, the same as
+ * Document.get.
+ */
+public class ResultFieldVisitor extends StoredFieldVisitor
+{
+    private final Set<String> fields;
+    private final HashMap<String, String> values = new HashMap<String, String>();
+
+    /**
+     * @param fields - The fields to load, or null for all but {@link DocumentBuilder#FULL_TEXT_FIELDS}.
+     */
+    public ResultFieldVisitor(Set<String> fields)
+    {
+        this.fields = fields;
+    }
+
+    @Override
+    public Status needsField(FieldInfo fieldInfo)
+    {
+        if (values.containsKey(fieldInfo.name)) {
+            return Status.NO;
+        }
+        else if (fields == null) {
+            return DocumentBuilder.FULL_TEXT_FIELDS.contains(fieldInfo.name) ? Status.NO : Status.YES;
+        }
+        else if (fields.contains(fieldInfo.name)) {
+            return Status.YES;
+        }
+        // Stop reading the document once every requested field has been found
+        return values.size() == fields.size() ? Status.STOP : Status.NO;
+    }
+
+    @Override
+    public void stringField(FieldInfo fieldInfo, String value)
+    {
+        values.put(fieldInfo.name, value);
+    }
+
+    @Override
+    public void intField(FieldInfo fieldInfo, int value)
+    {
+        values.put(fieldInfo.name, Integer.toString(value));
+    }
+
+    @Override
+    public void longField(FieldInfo fieldInfo, long value)
+    {
+        values.put(fieldInfo.name, Long.toString(value));
+    }
+
+    @Override
+    public void floatField(FieldInfo fieldInfo, float value)
+    {
+        values.put(fieldInfo.name, Float.toString(value));
+    }
+
+    @Override
+    public void doubleField(FieldInfo fieldInfo, double value)
+    {
+        values.put(fieldInfo.name, Double.toString(value));
+    }
+
+    /**
+     * @return The loaded field values by name.
+     */
+    public HashMap<String, String> getValues()
+    {
+        return values;
+    }
+}
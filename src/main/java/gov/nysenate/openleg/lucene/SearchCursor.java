@@ -0,0 +1,143 @@
+package gov.nysenate.openleg.lucene;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Converts the last hit of a search page to and from an opaque, URL safe token that can be
+ * handed to clients and passed back to {@link Lucene#searchAfter} to fetch the next page.
+ * <p>
+ * The token holds the sort it was made for, and the hit's sort values, score and document
+ * number. Sort values decide the page boundary; the document number only breaks ties, so a
+ * cursor stays usable across searcher refreshes although hits with identical sort values may
+ * shift if the index changes. A cursor can't be used with a different sort since its values
+ * wouldn't be comparable.
+ */
+public class SearchCursor
+{
+    private static final byte VERSION = 2;
+
+    private static final byte NULL = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte FLOAT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BYTES = 5;
+    private static final byte STRING = 6;
+
+    /**
+     * @param last - The last hit of a sorted search page.
+     * @param sortFieldName - The field the search was sorted on; null or empty for relevance.
+     * @param reversed - true if the sort order was reversed.
+     * @return An opaque token for the page following the hit.
+     */
+    public static String encode(FieldDoc last, String sortFieldName, boolean reversed)
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeUTF(sortFieldName == null ? "" : sortFieldName);
+            out.writeBoolean(reversed);
+            out.writeInt(last.doc);
+            out.writeFloat(last.score);
+            out.writeByte(last.fields.length);
+            for (Object field : last.fields) {
+                if (field == null) {
+                    out.writeByte(NULL);
+                }
+                else if (field instanceof Integer) {
+                    out.writeByte(INT);
+                    out.writeInt((Integer)field);
+                }
+                else if (field instanceof Long) {
+                    out.writeByte(LONG);
+                    out.writeLong((Long)field);
+                }
+                else if (field instanceof Float) {
+                    out.writeByte(FLOAT);
+                    out.writeFloat((Float)field);
+                }
+                else if (field instanceof Double) {
+                    out.writeByte(DOUBLE);
+                    out.writeDouble((Double)field);
+                }
+                else if (field instanceof BytesRef) {
+                    BytesRef ref = (BytesRef)field;
+                    out.writeByte(BYTES);
+                    out.writeInt(ref.length);
+                    out.write(ref.bytes, ref.offset, ref.length);
+                }
+                else {
+                    out.writeByte(STRING);
+                    out.writeUTF(field.toString());
+                }
+            }
+            out.close();
+            return DatatypeConverter.printHexBinary(bytes.toByteArray()).toLowerCase();
+        }
+        catch (IOException e) {
+            // Can't happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param token - A token previously returned by {@link #encode(FieldDoc, String, boolean)}.
+     * @param sortFieldName - The field the search is sorted on; null or empty for relevance.
+     * @param reversed - true if the sort order is reversed.
+     * @return The hit to search after.
+     * @throws IllegalArgumentException - If the token is malformed or was made for a different sort.
+     */
+    public static FieldDoc decode(String token, String sortFieldName, boolean reversed)
+    {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(DatatypeConverter.parseHexBinary(token)));
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unsupported cursor: "+token);
+            }
+
+            String cursorSort = in.readUTF();
+            boolean cursorReversed = in.readBoolean();
+            if (!cursorSort.equals(sortFieldName == null ? "" : sortFieldName) || cursorReversed != reversed) {
+                throw new IllegalArgumentException("Cursor is for a search sorted by "+(cursorSort.isEmpty() ? "relevance" : cursorSort)+(cursorReversed ? " reversed" : "")+": "+token);
+            }
+
+            int doc = in.readInt();
+            float score = in.readFloat();
+            Object[] fields = new Object[in.readByte()];
+            for (int i = 0; i < fields.length; i++) {
+                byte type = in.readByte();
+                switch (type) {
+                case NULL: fields[i] = null; break;
+                case INT: fields[i] = in.readInt(); break;
+                case LONG: fields[i] = in.readLong(); break;
+                case FLOAT: fields[i] = in.readFloat(); break;
+                case DOUBLE: fields[i] = in.readDouble(); break;
+                case BYTES:
+                    byte[] value = new byte[in.readInt()];
+                    in.readFully(value);
+                    fields[i] = new BytesRef(value);
+                    break;
+                case STRING: fields[i] = in.readUTF(); break;
+                default: throw new IllegalArgumentException("Invalid cursor: "+token);
+                }
+            }
+            return new FieldDoc(doc, score, fields);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Invalid cursor: "+token, e);
+        }
+        catch (NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Invalid cursor: "+token, e);
+        }
+    }
+}
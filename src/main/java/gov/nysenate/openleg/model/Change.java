@@ -10,6 +10,16 @@ import java.util.Date;
  */
 public class Change implements Comparable<Object>
 {
+    /**
+     * The changelog table row id; 0 for changes that haven't been reported.
+     */
+    private int id;
+
+    /**
+     * The storage year of the object that was changed; 0 if unknown.
+     */
+    private int year;
+
     /**
      * The type of the object that was changed.
      */
@@ -53,6 +63,38 @@ public class Change implements Comparable<Object>
         this.setStatus(status);
     }
 
+    /**
+     * @return - The changelog table row id; 0 for changes that haven't been reported.
+     */
+    public int getId()
+    {
+        return id;
+    }
+
+    /**
+     * @param id - The new changelog row id.
+     */
+    public void setId(int id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * @return - The storage year of the object that was changed; 0 if unknown.
+     */
+    public int getYear()
+    {
+        return year;
+    }
+
+    /**
+     * @param year - The new storage year.
+     */
+    public void setYear(int year)
+    {
+        this.year = year;
+    }
+
     /**
      * @return - The type of the object that was changed.
      */
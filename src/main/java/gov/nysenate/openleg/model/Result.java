@@ -4,6 +4,13 @@ import java.util.HashMap;
 
 public class Result {
 
+    /**
+     * Loads the full object for results whose index document doesn't store it.
+     */
+    public interface Loader {
+        public IBaseObject load(Result result);
+    }
+
     public String otype;
     public String oid;
     public String title;
@@ -13,6 +20,7 @@ public class Result {
     public String data;
     public IBaseObject object;
     public HashMap<String,String> fields;
+    protected Loader loader;
 
     public Result(String otype, String data, String oid, long lastModified, boolean active, HashMap<String,String> fields) {
         this.otype = otype;
@@ -51,7 +59,14 @@ public class Result {
         return data;
     }
 
+    /**
+     * @return The full object, loaded on first use if the result has a loader.
+     */
     public IBaseObject getObject() {
+        if (object == null && loader != null) {
+            object = loader.load(this);
+            loader = null;
+        }
         return object;
     }
 
@@ -91,6 +106,10 @@ public class Result {
         this.object = object;
     }
 
+    public void setLoader(Loader loader) {
+        this.loader = loader;
+    }
+
     public void setFields(HashMap<String, String> fields) {
         this.fields = fields;
     }
@@ -7,7 +7,13 @@ import java.util.List;
 
 public class Vote extends BaseObject {
 
-    public static SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd");
+    private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue()
+        {
+            return new SimpleDateFormat("yyyy/MM/dd");
+        }
+    };
 
     private int voteType;
 
@@ -63,7 +69,7 @@ public class Vote extends BaseObject {
         this.setSession(this.getYear() % 2 == 0 ? this.getYear() -1 : this.getYear());
         this.voteType = type;
         this.setSequenceNumber(sequenceNumber);
-        this.oid = billId+'-'+dateFormat.format(voteDate)+'-'+String.valueOf(voteType)+'-'+sequenceNumber;
+        this.oid = billId+'-'+dateFormat.get().format(voteDate)+'-'+String.valueOf(voteType)+'-'+sequenceNumber;
     }
 
     public Vote(Bill bill, Date date, int type, String sequenceNumber)
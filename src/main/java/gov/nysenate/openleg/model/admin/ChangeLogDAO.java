@@ -0,0 +1,83 @@
+package gov.nysenate.openleg.model.admin;
+
+import gov.nysenate.openleg.model.Change;
+import gov.nysenate.openleg.util.Storage;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.ResultSetHandler;
+
+/**
+ * Reads reported changes back out of the changelog table.
+ */
+public class ChangeLogDAO
+{
+    public static class ChangeHandler implements ResultSetHandler<ArrayList<Change>> {
+
+        @Override
+        public ArrayList<Change> handle(ResultSet results) throws SQLException
+        {
+            ArrayList<Change> changes = new ArrayList<Change>();
+            while(results.next()) {
+                Change change = new Change(
+                    results.getString("oid"),
+                    results.getString("otype"),
+                    Storage.Status.valueOf(results.getString("status")),
+                    new Date(results.getTimestamp("time").getTime())
+                );
+                change.setId(results.getInt("id"));
+                change.setYear(results.getInt("year"));
+                changes.add(change);
+            }
+            return changes;
+        }
+    }
+
+    private final QueryRunner runner;
+
+    private final ChangeHandler handler = new ChangeHandler();
+
+    public ChangeLogDAO(DataSource datasource)
+    {
+        this.runner = new QueryRunner(datasource);
+    }
+
+    /**
+     * Gets a page of changes that come after the given id in ascending id order. Changes are
+     * paged by the auto increment id alone since that is the order they were reported in; a
+     * change can be reported with an earlier time than one already paged past.
+     *
+     * @param afterId - the id of the last change on the previous page; 0 to start at the beginning.
+     * @param otype - the otype of the document types to get updates for; null or empty for all.
+     * @param oid - the oid of the document to get updates for; null or empty for all.
+     * @param limit - the maximum number of changes to return.
+     * @return List of matching changes
+     * @throws SQLException
+     */
+    public List<Change> getChangesAfter(int afterId, String otype, String oid, int limit) throws SQLException
+    {
+        String query = "SELECT * FROM changelog WHERE id > ?";
+        List<Object> params = new ArrayList<Object>();
+        params.add(afterId);
+
+        if (otype != null && !otype.isEmpty()) {
+            query += " AND otype = ?";
+            params.add(otype);
+        }
+
+        if (oid != null && !oid.isEmpty()) {
+            query += " AND oid = ?";
+            params.add(oid);
+        }
+
+        query += " ORDER BY id LIMIT "+limit;
+        return runner.query(query, handler, params.toArray());
+    }
+}
@@ -7,7 +7,6 @@ import gov.nysenate.openleg.model.Meeting;
 import gov.nysenate.openleg.model.Person;
 import gov.nysenate.openleg.model.SOBIBlock;
 import gov.nysenate.openleg.model.Vote;
-import gov.nysenate.openleg.util.ChangeLogger;
 import gov.nysenate.openleg.util.OpenLegConstants;
 import gov.nysenate.openleg.util.Storage;
 import gov.nysenate.openleg.xml.committee.XMLAddendum;
@@ -37,7 +36,14 @@ public class AgendaProcessor implements OpenLegConstants {
 
     private final Logger logger;
     private Date modifiedDate;
-    public static SimpleDateFormat sobiDateFormat = new SimpleDateFormat("'SOBI.D'yyMMdd'.T'HHmmss'.TXT'");
+    public final SimpleDateFormat sobiDateFormat = new SimpleDateFormat("'SOBI.D'yyMMdd'.T'HHmmss'.TXT'");
+
+    /**
+     * Instance copies of the shared LRS formats; SimpleDateFormat isn't thread safe and
+     * processors may run concurrently on separate threads.
+     */
+    protected final SimpleDateFormat lrsDateOnlyFormat = new SimpleDateFormat("yyyy-MM-dd");
+    protected final SimpleDateFormat lrsDateTimeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH.mm.ss'Z'");
 
     public AgendaProcessor() {
         logger = Logger.getLogger(this.getClass());
@@ -57,7 +63,7 @@ public class AgendaProcessor implements OpenLegConstants {
             logger.error("Error parsing file date.", e);
         }
 
-        ChangeLogger.setContext(file, modifiedDate);
+        storage.getChangeLogger().setContext(modifiedDate);
         for(Object next : senateData.getSenagendaOrSenagendavote()) {
             if (next instanceof XMLSenagenda) {
                 Agenda agenda = handleXMLSenagenda(storage,(XMLSenagenda)next);
@@ -69,7 +75,7 @@ public class AgendaProcessor implements OpenLegConstants {
                         agenda.setPublishDate(modifiedDate);
                     }
                     storage.set(agenda);
-                    ChangeLogger.record(storage.key(agenda), storage);
+                    storage.getChangeLogger().record(storage.key(agenda), storage);
 
                     for (Addendum addendum : agenda.getAddendums()) {
                         for (Meeting meeting : addendum.getMeetings()) {
@@ -77,7 +83,7 @@ public class AgendaProcessor implements OpenLegConstants {
                             // This might be a false positive change
                             meeting.setModifiedDate(addendum.getPublishDate());
                             storage.set(meeting);
-                            ChangeLogger.record(storage.key(meeting), storage);
+                            storage.getChangeLogger().record(storage.key(meeting), storage);
                         }
                     }
                 }
@@ -92,12 +98,12 @@ public class AgendaProcessor implements OpenLegConstants {
                         agenda.setPublishDate(modifiedDate);
                     }
                     storage.set(agenda);
-                    ChangeLogger.record(storage.key(agenda), storage);
+                    storage.getChangeLogger().record(storage.key(agenda), storage);
 
                     for (Addendum addendum : agenda.getAddendums()) {
                         for (Meeting meeting : addendum.getMeetings()) {
                             storage.set(meeting);
-                            ChangeLogger.record(storage.key(meeting), storage);
+                            storage.getChangeLogger().record(storage.key(meeting), storage);
                         }
                     }
                 }
@@ -151,7 +157,7 @@ public class AgendaProcessor implements OpenLegConstants {
 
             // Make sure the bill gets updated on disc
             storage.set(bill);
-            ChangeLogger.record(storage.key(bill), storage);
+            storage.getChangeLogger().record(storage.key(bill), storage);
         }
 
         return bill;
@@ -219,13 +225,13 @@ public class AgendaProcessor implements OpenLegConstants {
         if (agenda != null && action.equalsIgnoreCase("remove")) {
             logger.info("removing agenda: " + agenda.getOid());
             storage.del(key);
-            ChangeLogger.delete(key, storage);
+            storage.getChangeLogger().delete(key, storage);
 
             for (Addendum addendum : agenda.getAddendums()) {
                 for (Meeting meeting : addendum.getMeetings()) {
                     key = storage.key(meeting);
                     storage.del(key);
-                    ChangeLogger.delete(key, storage);
+                    storage.getChangeLogger().delete(key, storage);
                 }
             }
 
@@ -269,7 +275,7 @@ public class AgendaProcessor implements OpenLegConstants {
         Date publishDate = null;
         if (xmlAddendum.getPubdate() != null) {
             try {
-                publishDate = LRS_DATETIME_FORMAT.parse(xmlAddendum.getPubdate().getContent() + xmlAddendum.getPubtime().getContent());
+                publishDate = lrsDateTimeFormat.parse(xmlAddendum.getPubdate().getContent() + xmlAddendum.getPubtime().getContent());
             } catch (ParseException pe) {
                 logger.error("unable to parse addendum date/time format", pe);
             }
@@ -303,10 +309,10 @@ public class AgendaProcessor implements OpenLegConstants {
                         // Delete the meeting and save the agenda
                         String key = storage.key(meeting);
                         storage.del(key);
-                        ChangeLogger.delete(key, storage);
+                        storage.getChangeLogger().delete(key, storage);
                         listMeetings.remove(meeting);
                         storage.set(agenda);
-                        ChangeLogger.record(storage.key(agenda), storage);
+                        storage.getChangeLogger().record(storage.key(agenda), storage);
                         break;
                     }
                 }
@@ -316,7 +322,7 @@ public class AgendaProcessor implements OpenLegConstants {
             // If action isn't remove, we should have a date time.
             Date meetDateTime = null;
             try {
-                meetDateTime = LRS_DATETIME_FORMAT.parse(xmlCommMeeting.getMeetdate().getContent() + xmlCommMeeting.getMeettime().getContent());
+                meetDateTime = lrsDateTimeFormat.parse(xmlCommMeeting.getMeetdate().getContent() + xmlCommMeeting.getMeettime().getContent());
             } catch (ParseException e) {
                 logger.error("Could not parse meeting date", e);
                 continue;
@@ -391,7 +397,7 @@ public class AgendaProcessor implements OpenLegConstants {
                 }
             }
             storage.set(meeting);
-            ChangeLogger.record(storage.key(meeting), storage);
+            storage.getChangeLogger().record(storage.key(meeting), storage);
         }
         addendum.setMeetings(listMeetings);
         return addendum;
@@ -5,7 +5,8 @@ import gov.nysenate.openleg.model.Bill;
 import gov.nysenate.openleg.model.Person;
 import gov.nysenate.openleg.model.SOBIBlock;
 import gov.nysenate.openleg.model.Vote;
-import gov.nysenate.openleg.util.ChangeLogger;
+import gov.nysenate.openleg.util.Application;
+import gov.nysenate.openleg.util.Metrics;
 import gov.nysenate.openleg.util.Storage;
 
 import java.io.File;
@@ -49,17 +50,17 @@ public class BillProcessor
     /**
      * The format required for the SobiFile name. e.g. SOBI.D130323.T065432.TXT
      */
-    public static SimpleDateFormat sobiDateFormat = new SimpleDateFormat("'SOBI.D'yyMMdd'.T'HHmmss'.TXT'");
+    public final SimpleDateFormat sobiDateFormat = new SimpleDateFormat("'SOBI.D'yyMMdd'.T'HHmmss'.TXT'");
 
     /**
      * Date format found in SOBIBlock[4] bill event blocks. e.g. 02/04/13
      */
-    protected static SimpleDateFormat eventDateFormat = new SimpleDateFormat("MM/dd/yy");
+    protected final SimpleDateFormat eventDateFormat = new SimpleDateFormat("MM/dd/yy");
 
     /**
      * Date format found in SOBIBlock[V] vote memo blocks. e.g. 02/05/2013
      */
-    protected static SimpleDateFormat voteDateFormat = new SimpleDateFormat("MM/dd/yyyy");
+    protected final SimpleDateFormat voteDateFormat = new SimpleDateFormat("MM/dd/yyyy");
 
     /**
      * The expected format for the first line of the vote memo [V] block data.
@@ -109,9 +110,30 @@ public class BillProcessor
     public static Pattern substituteEventTextPattern = Pattern.compile("SUBSTITUTED (FOR|BY) (.*)");
 
     /**
-     * Used to check if a bill is unpublished before storing it
+     * Used to check if a bill is unpublished before storing it. Created from the
+     * application config on first use.
      */
-    private static UnpublishListManager unpublishListManager = new UnpublishListManager();
+    private static UnpublishListManager unpublishListManager = null;
+
+    /**
+     * @return The list manager used to check if a bill is unpublished.
+     */
+    public static synchronized UnpublishListManager getUnpublishListManager()
+    {
+        if (unpublishListManager == null) {
+            unpublishListManager = new UnpublishListManager();
+        }
+        return unpublishListManager;
+    }
+
+    /**
+     * Replaces the list manager used to check if a bill is unpublished, for example to
+     * process files without a configured environment.
+     */
+    public static synchronized void setUnpublishListManager(UnpublishListManager unpublishListManager)
+    {
+        BillProcessor.unpublishListManager = unpublishListManager;
+    }
 
 
     @SuppressWarnings("serial")
@@ -133,7 +155,7 @@ public class BillProcessor
     {
         Date date = null;
         try {
-            date = BillProcessor.sobiDateFormat.parse(sobiFile.getName());
+            date = this.sobiDateFormat.parse(sobiFile.getName());
         }
         catch (ParseException e) {
             logger.error("Unparseable date: "+sobiFile.getName());
@@ -141,11 +163,14 @@ public class BillProcessor
         }
 
         // Set the context for all future changes logged.
-        ChangeLogger.setContext(sobiFile, date);
+        storage.getChangeLogger().setContext(date);
 
         // Catch exceptions on a per-block basis so that a single error won't corrupt the whole file.
+        Metrics metrics = Application.getMetrics();
         for (SOBIBlock block : getBlocks(sobiFile)) {
             logger.info("Processing "+block);
+            long start = System.nanoTime();
+            String metric = "bill.block."+block.getType();
             try {
                 String data = block.getData().toString();
                 Bill bill = getOrCreateBill(block, date, storage);
@@ -170,12 +195,19 @@ public class BillProcessor
                 }
                 bill.addDataSource(sobiFile.getName());
                 saveBill(bill, storage);
+                metrics.record(metric, start);
             }
             catch (ParseError e) {
                 logger.error("ParseError at "+block.getLocation(), e);
+                metrics.increment(metric+".error");
             }
             catch (Exception e) {
                 logger.error("Unexpected Exception at "+block.getLocation(), e);
+                metrics.increment(metric+".error");
+            }
+            finally {
+                // Make the block's changes visible to change log consumers all at once
+                storage.getChangeLogger().flush();
             }
         }
     }
@@ -407,7 +439,7 @@ public class BillProcessor
         }
 
         // Check if the bill is on the unpublished list
-        if (unpublishListManager.getUnpublishedBills().contains(bill.getBillId())){
+        if (getUnpublishListManager().getUnpublishedBills().contains(bill.getBillId())){
             // If so set the publish date to null
             bill.setPublishDate(null);
         }
@@ -433,8 +465,9 @@ public class BillProcessor
                 billVersion.setLawSection(bill.getLawSection());
                 billVersion.setLaw(bill.getLaw());
                 billVersion.setSummary(bill.getSummary());
-                storage.set(billVersion);
-                ChangeLogger.record(storage.key(billVersion), storage);
+                if (storage.setIfChanged(billVersion)) {
+                    storage.getChangeLogger().record(storage.key(billVersion), storage);
+                }
             }
             if (bill.isUniBill()) {
                 // Uni bills share text, always sent to the senate bill.
@@ -446,8 +479,9 @@ public class BillProcessor
                     // If senate bill/reso, copy to assembly
                     if (bill.getBillId().matches("^[SJBR]")) {
                         uniBill.setFulltext(bill.getFulltext());
-                        storage.set(uniBill);
-                        ChangeLogger.record(storage.key(uniBill), storage);
+                        if (storage.setIfChanged(uniBill)) {
+                            storage.getChangeLogger().record(storage.key(uniBill), storage);
+                        }
                     }
                     // Copy from senate bill
                     else if (!billText.equals(uniBillText)) {
@@ -456,8 +490,10 @@ public class BillProcessor
                 }
             }
 
-            storage.set(bill);
-            ChangeLogger.record(storage.key(bill), storage);
+            // Blocks that re-send existing data don't need to be saved or pushed out.
+            if (storage.setIfChanged(bill)) {
+                storage.getChangeLogger().record(storage.key(bill), storage);
+            }
         }
         else {
             // When saving an unpublished bill make sure that references to it are removed
@@ -475,15 +511,15 @@ public class BillProcessor
                     if (bill.isActive() && versionKey.equals(newActiveBill)) {
                         billVersion.setActive(true);
                     }
-                    storage.set(billVersion);
-                    ChangeLogger.record(storage.key(billVersion), storage);
+                    if (storage.setIfChanged(billVersion)) {
+                        storage.getChangeLogger().record(storage.key(billVersion), storage);
+                    }
                 }
             }
             // Deactivate ourselves.
             bill.setActive(false);
-            storage.set(bill);
-            if (!bill.isBrandNew()) {
-                ChangeLogger.delete(storage.key(bill), storage);
+            if (storage.setIfChanged(bill) && !bill.isBrandNew()) {
+                storage.getChangeLogger().delete(storage.key(bill), storage);
             }
         }
     }
@@ -8,7 +8,6 @@ import gov.nysenate.openleg.model.SOBIBlock;
 import gov.nysenate.openleg.model.Section;
 import gov.nysenate.openleg.model.Sequence;
 import gov.nysenate.openleg.model.Supplemental;
-import gov.nysenate.openleg.util.ChangeLogger;
 import gov.nysenate.openleg.util.OpenLegConstants;
 import gov.nysenate.openleg.util.Storage;
 import gov.nysenate.openleg.xml.calendar.XMLCalno;
@@ -41,7 +40,14 @@ public class CalendarProcessor implements OpenLegConstants {
     private Object removeObject = null;
     private String removeObjectId = null;
 
-    public static SimpleDateFormat sobiDateFormat = new SimpleDateFormat("'SOBI.D'yyMMdd'.T'HHmmss'.TXT'");
+    public final SimpleDateFormat sobiDateFormat = new SimpleDateFormat("'SOBI.D'yyMMdd'.T'HHmmss'.TXT'");
+
+    /**
+     * Instance copies of the shared LRS formats; SimpleDateFormat isn't thread safe and
+     * processors may run concurrently on separate threads.
+     */
+    protected final SimpleDateFormat lrsDateOnlyFormat = new SimpleDateFormat("yyyy-MM-dd");
+    protected final SimpleDateFormat lrsDateTimeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH.mm.ss'Z'");
 
     public CalendarProcessor() {
         logger = Logger.getLogger(this.getClass());
@@ -59,7 +65,7 @@ public class CalendarProcessor implements OpenLegConstants {
             logger.error("Error parsing file date.", e);
         }
 
-        ChangeLogger.setContext(file, modifiedDate);
+        storage.getChangeLogger().setContext(modifiedDate);
         for(Object obj:senateData.getSencalendarOrSencalendaractive()) {
 
             Calendar calendar = null;
@@ -136,7 +142,7 @@ public class CalendarProcessor implements OpenLegConstants {
                 calendar.setPublishDate(modifiedDate);
             }
             storage.set(calendar);
-            ChangeLogger.record(storage.key(calendar), storage);
+            storage.getChangeLogger().record(storage.key(calendar), storage);
             removeObject = null;
         }
     }
@@ -193,7 +199,7 @@ public class CalendarProcessor implements OpenLegConstants {
         // Set the supplemental calendar date from the parent calendar
         if (xmlSupp.getCaldate()!=null)	{
             try {
-                Date calDate = OpenLegConstants.LRS_DATE_ONLY_FORMAT.parse(xmlSupp.getCaldate().getContent());
+                Date calDate = lrsDateOnlyFormat.parse(xmlSupp.getCaldate().getContent());
                 supplemental.setCalendarDate(calDate);
             }
             catch (ParseException e) {
@@ -205,7 +211,7 @@ public class CalendarProcessor implements OpenLegConstants {
         if (xmlSupp.getReleasedate()!=null && xmlSupp.getReleasetime()!=null) {
             try {
                 String dateString = xmlSupp.getReleasedate().getContent() + xmlSupp.getReleasetime().getContent();
-                Date releaseDateTime = OpenLegConstants.LRS_DATETIME_FORMAT.parse(dateString);
+                Date releaseDateTime = lrsDateTimeFormat.parse(dateString);
                 supplemental.setReleaseDateTime(releaseDateTime);
 
             } catch (ParseException e) {
@@ -309,7 +315,7 @@ public class CalendarProcessor implements OpenLegConstants {
         if (xmlSequence.getActcaldate()!=null) {
 
             try {
-                Date actCalDate = LRS_DATE_ONLY_FORMAT.parse(xmlSequence.getActcaldate().getContent());
+                Date actCalDate = lrsDateOnlyFormat.parse(xmlSequence.getActcaldate().getContent());
                 sequence.setActCalDate(actCalDate);
             }
             catch (ParseException e) {
@@ -320,7 +326,7 @@ public class CalendarProcessor implements OpenLegConstants {
         // Set release date time if possible
         if (xmlSequence.getReleasedate()!=null && xmlSequence.getReleasetime()!=null) {
             try {
-                Date relDateTime = LRS_DATETIME_FORMAT.parse(xmlSequence.getReleasedate().getContent() + xmlSequence.getReleasetime().getContent());
+                Date relDateTime = lrsDateTimeFormat.parse(xmlSequence.getReleasedate().getContent() + xmlSequence.getReleasetime().getContent());
                 sequence.setReleaseDateTime(relDateTime);
             }
             catch (ParseException e) {
@@ -365,7 +371,7 @@ public class CalendarProcessor implements OpenLegConstants {
         if (xmlCalNo.getMotiondate()!=null)
         {
             try {
-                Date motionDate = LRS_DATE_ONLY_FORMAT.parse(xmlCalNo.getMotiondate().getContent());
+                Date motionDate = lrsDateOnlyFormat.parse(xmlCalNo.getMotiondate().getContent());
                 calEntry.setMotionDate(motionDate);
             } catch (ParseException e) {
                 logger.error("unable to parse calentry " + xmlCalNo.getNo() + " motiondate");
@@ -2,6 +2,10 @@ package gov.nysenate.openleg.processors;
 
 import gov.nysenate.openleg.model.Change;
 import gov.nysenate.openleg.services.ServiceBase;
+import gov.nysenate.openleg.util.Application;
+import gov.nysenate.openleg.util.ChangeLogger;
+import gov.nysenate.openleg.util.CircuitBreaker;
+import gov.nysenate.openleg.util.Metrics;
 import gov.nysenate.openleg.util.Storage;
 
 import java.io.BufferedReader;
@@ -10,12 +14,24 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,8 +62,12 @@ import org.apache.log4j.Logger;
  *      the SOBI file name. Delegates file processing based on document type.
  *   </li>
  *   <li>
+ *      {@link #replay(File, File, List, int, ChangeLogger) Replay}:
+ *      Rebuilds storage from archived collated files, one session year per thread.
+ *   </li>
+ *   <li>
  *      {@link #push(Storage, List, List) Push}:
- *      Pushes a set of changes out to a list of services.
+ *      Pushes a set of changes out to a list of services concurrently, retrying failures.
  *   </li>
  *   <li>
  *      {@link #archive(File, File) Archive}:
@@ -70,6 +90,11 @@ public class DataProcessor
      */
     protected static String encoding = "CP850";
 
+    /**
+     * Where changes that couldn't be pushed to a service are kept for redelivery.
+     */
+    protected File deadLetterDirectory = null;
+
     /**
      * Any directory that we attempt to list files from should exist. If it doesn't then
      * make it so. This makes the processes robust against incomplete environment setups.
@@ -209,16 +234,30 @@ public class DataProcessor
      * @throws IOException
      */
     public void ingest(File workingDir, Storage storage) throws IOException
+    {
+        ingest(getSortedFiles(workingDir, true), storage);
+    }
+
+    /**
+     * Processes the given files in order. The appropriate file processor for each
+     * file is based on the directory it is stored in.
+     *
+     * @param files - The collated files to process, in processing order.
+     * @param storage - The Storage object to use for persistence.
+     */
+    public void ingest(Collection<File> files, Storage storage)
     {
         BillProcessor billProcessor = new BillProcessor();
         AgendaProcessor agendaProcessor = new AgendaProcessor();
         CalendarProcessor calendarProcessor = new CalendarProcessor();
         TranscriptProcessor transcriptProcessor = new TranscriptProcessor();
+        Metrics metrics = Application.getMetrics();
 
-        for (File file : getSortedFiles(workingDir, true)) {
+        for (File file : files) {
+            long start = System.nanoTime();
+            String type = file.getParentFile().getName();
             try {
                 logger.info("Working on: "+file);
-                String type = file.getParentFile().getName();
                 if (type.equals("bills")) {
                     billProcessor.process(file, storage);
                 } else if (type.equals("calendars")) {
@@ -237,38 +276,374 @@ public class DataProcessor
                     // The rules don't really need processing, just put them somewhere for later
                     FileUtils.copyFileToDirectory(file, storage.getStorageDir());
                 }
+                storage.getChangeLogger().flush();
 
                 // To avoid memory issues, occasionally flush changes to file-system and truncate memory
                 if (storage.memory.size() > 4000) {
                     storage.flush();
                     storage.clear();
                 }
+                metrics.record("ingest."+type, start);
+                logger.info(String.format("Finished %s in %.3f seconds", file.getName(), (System.nanoTime()-start)/1e9));
             }
             catch (IOException e) {
                 logger.error("IO issue with "+file.getName(), e);
+                metrics.increment("ingest."+type+".error");
             } catch (JAXBException e) {
                 logger.error("XML issue with "+file.getName(), e);
+                metrics.increment("ingest."+type+".error");
             }
         }
         storage.flush();
     }
 
     /**
-     * Pushes the specified changes to the indicated services in the provided order.
+     * Replays archived bill, calendar, and agenda files into storage. Session years never
+     * share objects so each session is ingested on its own thread with its own Storage
+     * instance and change log. Files within a session are still processed in chronological
+     * order. Each session's changes are merged into the given change log when it finishes.
+     * <p>
+     * Archives are split by calendar year so a session's files are pulled from both
+     * {@literal archive/<session>/} and {@literal archive/<session+1>/}. Transcripts and hearings are not
+     * archived by year and are not replayed.
+     *
+     * @param archiveDir - The base archive directory.
+     * @param storageDir - The storage directory to rebuild.
+     * @param sessions - The session years to replay. Must be odd years.
+     * @param threads - The maximum number of sessions to replay at once.
+     * @param changes - The change log to merge each session's changes into.
+     * @return true if every session replayed without an unexpected failure.
+     * @throws IOException
+     */
+    public boolean replay(File archiveDir, File storageDir, List<Integer> sessions, int threads, ChangeLogger changes) throws IOException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sessions.size())));
+        Map<Integer, Future<?>> results = new TreeMap<Integer, Future<?>>();
+        Map<Integer, Storage> storages = new TreeMap<Integer, Storage>();
+        for (final int session : sessions) {
+            final List<File> files = new ArrayList<File>();
+            for (int year = session; year <= session + 1; year++) {
+                File yearDir = new File(archiveDir, String.valueOf(year));
+                for (String type : new String[]{"bills", "calendars", "agendas"}) {
+                    File typeDir = new File(yearDir, type);
+                    if (typeDir.isDirectory()) {
+                        files.addAll(safeListFiles(typeDir, null, false));
+                    }
+                }
+            }
+            Collections.sort(files, new Comparator<File>(){
+                public int compare(File a, File b) {
+                    return a.getName().compareTo(b.getName());
+                }
+            });
+
+            final Storage storage = new Storage(storageDir);
+            storages.put(session, storage);
+            results.put(session, executor.submit(new Runnable() {
+                public void run() {
+                    logger.info("Replaying "+files.size()+" files for session "+session);
+                    long start = System.nanoTime();
+                    ingest(files, storage);
+                    Application.getMetrics().record("replay."+session, start);
+                    logger.info(String.format("Replayed session %d in %.3f seconds", session, (System.nanoTime()-start)/1e9));
+                }
+            }));
+        }
+        executor.shutdown();
+
+        boolean success = true;
+        for (Entry<Integer, Future<?>> result : results.entrySet()) {
+            try {
+                result.getValue().get();
+                changes.merge(storages.get(result.getKey()).getChangeLogger());
+                changes.flush();
+            }
+            catch (InterruptedException e) {
+                logger.error("Interrupted while replaying session "+result.getKey(), e);
+                Thread.currentThread().interrupt();
+                success = false;
+            }
+            catch (ExecutionException e) {
+                logger.error("Unable to replay session "+result.getKey(), e.getCause());
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * @return The directory undelivered changes are saved to; null if they are discarded.
+     */
+    public File getDeadLetterDirectory()
+    {
+        return deadLetterDirectory;
+    }
+
+    /**
+     * @param deadLetterDirectory - The directory to save undelivered changes to, one change
+     *                              file per service. null to discard them.
+     */
+    public void setDeadLetterDirectory(File deadLetterDirectory)
+    {
+        this.deadLetterDirectory = deadLetterDirectory;
+    }
+
+    /**
+     * @return The dead letter file for the given service.
+     */
+    public File getDeadLetterFile(ServiceBase service)
+    {
+        return new File(deadLetterDirectory, service.getName()+".dead.log");
+    }
+
+    /**
+     * @return The file the given service's circuit breaker state is kept in between pushes.
+     */
+    public File getCircuitBreakerFile(ServiceBase service)
+    {
+        return new File(deadLetterDirectory, service.getName()+".breaker");
+    }
+
+    /**
+     * Pushes the specified changes to all of the indicated services at once. Services are
+     * independent so each one runs on its own thread; a slow or failing service doesn't hold
+     * up the others. Storage isn't thread safe, so each service reads from its own read only
+     * Storage over the same directory. The given storage must be flushed before pushing.
+     * <p>
+     * Failed pushes are retried with backoff according to each service's retry policy and
+     * stop early if the service's circuit breaker opens. When a dead letter directory is set,
+     * each breaker's state is kept next to the service's dead letters so that failures add up
+     * across pushes made by separate runs. Services with a timeout are cancelled
+     * once it elapses, counting from when the service started. Durations and failures are
+     * logged and recorded as push.&lt;service&gt; metrics.
+     * <p>
+     * When a dead letter directory is set, changes a service fails to accept are saved to
+     * its dead letter file and sent along with the next push to that service, so an empty
+     * list of changes redelivers only what previously failed.
      *
-     * @param storage - The Storage object used for persistence
+     * @param storage - The flushed Storage the changes were made to.
      * @param changes - A list of changes to push out to all services
      * @param services - A list of services to push change to.
+     * @return true if every service accepted the changes.
+     */
+    public boolean push(Storage storage, List<Entry<String, Change>> changes, List<ServiceBase> services)
+    {
+        if (services.isEmpty()) {
+            return true;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(services.size());
+        Map<ServiceBase, PushTask> tasks = new LinkedHashMap<ServiceBase, PushTask>();
+        for (ServiceBase service : services) {
+            loadCircuitBreaker(service);
+            Storage serviceStorage = storage == null ? null : new Storage(storage.getStorageDir(), true);
+            PushTask task = new PushTask(service, serviceStorage, addDeadLetters(service, changes));
+            task.future = executor.submit(task);
+            tasks.put(service, task);
+        }
+        executor.shutdown();
+
+        boolean success = true;
+        for (PushTask task : tasks.values()) {
+            ServiceBase service = task.service;
+            boolean delivered = false;
+            try {
+                if (service.getTimeout() > 0) {
+                    task.started.await();
+                    long remaining = task.startMillis + service.getTimeout() - System.currentTimeMillis();
+                    delivered = task.future.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+                }
+                else {
+                    delivered = task.future.get();
+                }
+            }
+            catch (TimeoutException e) {
+                logger.error("Push to "+service.getName()+" timed out after "+service.getTimeout()+"ms");
+                Application.getMetrics().increment("push."+service.getName()+".timeout");
+                task.future.cancel(true);
+            }
+            catch (InterruptedException e) {
+                logger.error("Interrupted while pushing to "+service.getName(), e);
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                logger.error("Service exception from "+service.getClass().getName(), e.getCause());
+            }
+
+            if (delivered) {
+                clearDeadLetters(service);
+            }
+            else {
+                saveDeadLetters(service, task.changes);
+                success = false;
+            }
+            saveCircuitBreaker(service);
+        }
+        return success;
+    }
+
+    /**
+     * Pushes to a single service, noting when it actually starts so that its timeout
+     * doesn't count time spent waiting for a thread.
+     */
+    private class PushTask implements Callable<Boolean>
+    {
+        final ServiceBase service;
+        final Storage storage;
+        final List<Entry<String, Change>> changes;
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile long startMillis;
+        Future<Boolean> future;
+
+        PushTask(ServiceBase service, Storage storage, List<Entry<String, Change>> changes)
+        {
+            this.service = service;
+            this.storage = storage;
+            this.changes = changes;
+        }
+
+        public Boolean call()
+        {
+            startMillis = System.currentTimeMillis();
+            started.countDown();
+            return pushService(service, storage, changes);
+        }
+    }
+
+    /**
+     * Pushes changes to a single service, retrying failures with exponential backoff until
+     * the retries run out, the service's timeout elapses or its circuit breaker opens.
+     *
+     * @return true if the service accepted the changes.
      */
-    public void push(Storage storage, List<Entry<String, Change>> changes, List<ServiceBase> services)
+    protected boolean pushService(ServiceBase service, Storage storage, List<Entry<String, Change>> changes)
     {
-        for(ServiceBase service : services) {
+        String metric = "push."+service.getName();
+        long deadline = service.getTimeout() > 0 ? System.currentTimeMillis() + service.getTimeout() : 0;
+        CircuitBreaker breaker = service.getCircuitBreaker();
+        for (int attempt = 0; attempt <= service.getRetries(); attempt++) {
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(service.getRetryDelay(attempt));
+                }
+                catch (InterruptedException e) {
+                    return false;
+                }
+                logger.info("Retrying push to "+service.getName()+" ("+attempt+"/"+service.getRetries()+")");
+                Application.getMetrics().increment(metric+".retry");
+            }
+
+            if (breaker != null && !breaker.allowRequest()) {
+                logger.error("Circuit breaker for "+service.getName()+" is open; skipping push");
+                Application.getMetrics().increment(metric+".open");
+                return false;
+            }
+
+            long start = System.nanoTime();
             try {
-                service.process(changes, storage);
-            } catch (Exception e) {
+                if (service.process(changes, storage)) {
+                    Application.getMetrics().record(metric, start);
+                    logger.info(String.format("Pushed %d changes to %s in %.3f seconds", changes.size(), service.getName(), (System.nanoTime()-start)/1e9));
+                    if (breaker != null) {
+                        breaker.recordSuccess();
+                    }
+                    return true;
+                }
+                logger.error("Push to "+service.getName()+" failed");
+            }
+            catch (Exception e) {
                 // Services should all be independent so log the issue and move on
                 logger.error("Service exception from "+service.getClass().getName(), e);
             }
+            Application.getMetrics().increment(metric+".error");
+            if (breaker != null) {
+                breaker.recordFailure();
+            }
+
+            // Services may swallow the interrupt from a timeout; don't keep retrying past it
+            if (Thread.currentThread().isInterrupted() || (deadline > 0 && System.currentTimeMillis() >= deadline)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The given changes combined with any earlier changes the service failed to accept.
+     */
+    private List<Entry<String, Change>> addDeadLetters(ServiceBase service, List<Entry<String, Change>> changes)
+    {
+        if (deadLetterDirectory == null || !getDeadLetterFile(service).exists()) {
+            return changes;
+        }
+
+        ChangeLogger deadLetters = new ChangeLogger();
+        try {
+            deadLetters.readFromFile(getDeadLetterFile(service));
+        }
+        catch (IOException e) {
+            logger.error("Unable to read dead letters for "+service.getName(), e);
+            return changes;
+        }
+        logger.info("Redelivering "+deadLetters.getChangeLog().size()+" changes to "+service.getName());
+        deadLetters.merge(changes);
+        return deadLetters.getEntries();
+    }
+
+    private void saveDeadLetters(ServiceBase service, List<Entry<String, Change>> changes)
+    {
+        if (deadLetterDirectory == null) {
+            logger.error("Discarding "+changes.size()+" undelivered changes for "+service.getName());
+            return;
+        }
+
+        File deadLetterFile = getDeadLetterFile(service);
+        File tempFile = new File(deadLetterFile.getPath()+".tmp");
+        try {
+            FileUtils.forceMkdir(deadLetterDirectory);
+            ChangeLogger deadLetters = new ChangeLogger();
+            deadLetters.merge(changes);
+            deadLetters.writeToFile(tempFile);
+            FileUtils.deleteQuietly(deadLetterFile);
+            FileUtils.moveFile(tempFile, deadLetterFile);
+            Application.getMetrics().get("push."+service.getName()+".deadletter").increment(changes.size());
+            logger.error("Saved "+changes.size()+" undelivered changes for "+service.getName()+" to "+deadLetterFile);
+        }
+        catch (IOException e) {
+            logger.error("Unable to save dead letters for "+service.getName()+" to "+deadLetterFile, e);
+        }
+    }
+
+    private void loadCircuitBreaker(ServiceBase service)
+    {
+        if (deadLetterDirectory != null && service.getCircuitBreaker() != null) {
+            try {
+                service.getCircuitBreaker().load(getCircuitBreakerFile(service));
+            }
+            catch (IOException e) {
+                logger.error("Unable to load circuit breaker state for "+service.getName(), e);
+            }
+        }
+    }
+
+    private void saveCircuitBreaker(ServiceBase service)
+    {
+        if (deadLetterDirectory != null && service.getCircuitBreaker() != null) {
+            try {
+                FileUtils.forceMkdir(deadLetterDirectory);
+                service.getCircuitBreaker().save(getCircuitBreakerFile(service));
+            }
+            catch (IOException e) {
+                logger.error("Unable to save circuit breaker state for "+service.getName(), e);
+            }
+        }
+    }
+
+    private void clearDeadLetters(ServiceBase service)
+    {
+        if (deadLetterDirectory != null && getDeadLetterFile(service).exists()) {
+            FileUtils.deleteQuietly(getDeadLetterFile(service));
+            logger.info("Cleared dead letters for "+service.getName());
         }
     }
 
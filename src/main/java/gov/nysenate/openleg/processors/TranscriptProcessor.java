@@ -2,7 +2,6 @@ package gov.nysenate.openleg.processors;
 
 import gov.nysenate.openleg.util.TranscriptLine;
 import gov.nysenate.openleg.model.Transcript;
-import gov.nysenate.openleg.util.ChangeLogger;
 import gov.nysenate.openleg.util.Storage;
 
 import java.io.BufferedReader;
@@ -103,7 +102,7 @@ public class TranscriptProcessor {
         storage.set(transcript);
 
         // Make an entry in the change log
-        ChangeLogger.setContext(file, transcript.getTimeStamp());
-        ChangeLogger.record(key, storage);
+        storage.getChangeLogger().setContext(transcript.getTimeStamp());
+        storage.getChangeLogger().record(key, storage);
     }
 }
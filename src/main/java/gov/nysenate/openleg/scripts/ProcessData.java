@@ -7,18 +7,44 @@ import gov.nysenate.openleg.services.ServiceBase;
 import gov.nysenate.openleg.services.UpdateReporter;
 import gov.nysenate.openleg.services.Varnish;
 import gov.nysenate.openleg.util.Application;
+import gov.nysenate.openleg.util.ChangeFile;
 import gov.nysenate.openleg.util.ChangeLogger;
+import gov.nysenate.openleg.util.SessionYear;
+import gov.nysenate.openleg.util.Storage;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.TreeSet;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
 
 /**
- * Usage: bin/run.sh ProcessData --environment app.properties --tasks collate,ingest,push,archive --push-targets lucene,varnish,reporter --change-file logs/D20130511.T123500.change.log &>> logs/D20130511.T123500.process.log
+ * Usage: bin/run.sh ProcessData --environment app.properties --tasks collate,ingest,push,archive --push-targets lucene,varnish,reporter --change-file logs/D20130511.T123500.change.log --metrics-file logs/D20130511.T123500.metrics.json &>> logs/D20130511.T123500.process.log
+ * <p>
+ * Ingest metrics are available over JMX while the script runs and are written to the
+ * metrics file (JSON, or CSV for a .csv extension) when it finishes.
+ * <p>
+ * The replay task rebuilds storage from the archive, one thread per session year:
+ * bin/run.sh ProcessData --environment app.properties --tasks replay --sessions 2009,2011,2013 --change-file logs/replay.change.log
+ * <p>
+ * Changes are appended to the change file as they happen. A push can tail the change file
+ * from a byte offset with --offset; the offset to continue from is logged when it finishes.
+ * The change file is binary; the export task writes a text copy next to it for debugging:
+ * bin/run.sh ProcessData --environment app.properties --tasks export --change-file logs/replay.change.log
+ * <p>
+ * The change file keeps every change appended to it. The compact task rewrites it with only
+ * the latest change for each key; offsets saved before compacting are no longer valid.
+ * <p>
+ * Changes a push target fails to accept are saved to a per target dead letter file in the
+ * dead letter directory (default: deadletters/ in the environment directory) and sent again
+ * with the next push to that target. Pushing without a change file redelivers only those:
+ * bin/run.sh ProcessData --environment app.properties --tasks push --push-targets lucene,varnish,reporter
  *
  * @author graylinkim
  *
@@ -34,8 +60,13 @@ public class ProcessData extends BaseScript
     {
         Options options =  new Options();
         options.addOption("f","change-file",true,"File to write the changes to.");
-        options.addOption("t","tasks",true,"Comma separated list of tasks to perform in the specified environment: collate,ingest,push,archive");
+        options.addOption("o","offset",true,"Byte offset in the change file to push changes from.");
+        options.addOption("t","tasks",true,"Comma separated list of tasks to perform in the specified environment: collate,ingest,replay,push,archive,export,compact");
         options.addOption("p","push-targets",true,"Comma separated list of push targets: lucene,reporter,varnish");
+        options.addOption("s","sessions",true,"Comma separated list of session years to replay from the archive. Defaults to all archived sessions.");
+        options.addOption("n","threads",true,"Maximum number of sessions to replay at once. Defaults to the number of processors.");
+        options.addOption("m","metrics-file",true,"File to write ingest metrics to; .csv for CSV, otherwise JSON.");
+        options.addOption("d","dead-letter-dir",true,"Directory to save undelivered push changes to. Defaults to deadletters/ in the environment directory.");
         return options;
     }
 
@@ -95,8 +126,61 @@ public class ProcessData extends BaseScript
             }
         }
 
+        long offset = -1;
+        if (opts.hasOption("offset")) {
+            offset = Long.parseLong(opts.getOptionValue("offset"));
+        }
+
+        List<Integer> sessions = new ArrayList<Integer>();
+        if (opts.hasOption("sessions")) {
+            for (String session : opts.getOptionValue("sessions").split(",\\s*")) {
+                sessions.add(SessionYear.getSessionYear(Integer.parseInt(session)));
+            }
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (opts.hasOption("threads")) {
+            threads = Integer.parseInt(opts.getOptionValue("threads"));
+        }
+
+        File metricsFile = null;
+        if (opts.hasOption("metrics-file")) {
+            metricsFile = new File(opts.getOptionValue("metrics-file"));
+        }
+
+        File deadLetterDir = null;
+        if (opts.hasOption("dead-letter-dir")) {
+            deadLetterDir = new File(opts.getOptionValue("dead-letter-dir"));
+        }
+
+        try {
+            runTasks(tasks, services, changeFile, offset, sessions, threads, deadLetterDir);
+        }
+        finally {
+            if (metricsFile != null) {
+                Application.getMetrics().writeReport(metricsFile);
+            }
+        }
+    }
+
+    protected void runTasks(List<String> tasks, List<ServiceBase> services, File changeFile, long offset, List<Integer> sessions, int threads, File deadLetterDir) throws Exception
+    {
         Environment env = Application.getEnvironment();
+        Storage storage = Application.getStorage();
+        if (changeFile != null) {
+            storage.setChangeLogger(new ChangeLogger(changeFile));
+        }
+        ChangeLogger changeLogger = storage.getChangeLogger();
+
+        // Convert old text change logs so that new changes can be appended
+        if (changeFile != null && changeFile.length() > 0 && !ChangeFile.isChangeFile(changeFile)) {
+            logger.info("Converting text change log "+changeFile);
+            changeLogger.readFromFile(changeFile);
+            changeLogger.writeToFile(changeFile);
+        }
+
         DataProcessor process = new DataProcessor();
+        process.setDeadLetterDirectory(deadLetterDir != null ? deadLetterDir : new File(env.getDirectory(), "deadletters"));
         for (String task : tasks) {
             // TODO: With Java7 we can make this a switch case
             if (task.equals("stage")) {
@@ -106,29 +190,81 @@ public class ProcessData extends BaseScript
                 process.collate(env.getWorkingDirectory());
             }
             else if (task.equals("ingest")) {
-                process.ingest(env.getWorkingDirectory(), Application.getStorage());
-                if (changeFile != null) {
-                    ChangeLogger.writeToFile(changeFile);
+                process.ingest(env.getWorkingDirectory(), storage);
+            }
+            else if (task.equals("replay")) {
+                if (sessions.isEmpty()) {
+                    sessions = getArchivedSessions(env.getArchiveDirectory());
                 }
+                process.replay(env.getArchiveDirectory(), env.getStorageDirectory(), sessions, threads, changeLogger);
+            }
+            else if (task.equals("compact")) {
+                if (changeFile == null || !changeFile.exists()) {
+                    System.err.println("The compact task requires an existing change-file.");
+                    System.exit(1);
+                }
+                changeLogger.compact();
+                logger.info("Compacted "+changeFile+"; offsets into it must restart from 0.");
             }
             else if (task.equals("push")) {
-                if (ChangeLogger.getChangeLog().isEmpty()) {
+                if (changeFile != null && offset >= 0) {
+                    ChangeLogger.Segment segment = ChangeLogger.tail(changeFile, offset);
+                    process.push(storage, segment.getEntries(), services);
+                    logger.info("Pushed "+changeFile+" through offset "+segment.getNextOffset());
+                    continue;
+                }
+
+                if (changeLogger.getChangeLog().isEmpty()) {
                     if (changeFile != null) {
-                        ChangeLogger.readFromFile(changeFile);
+                        changeLogger.readFromFile(changeFile);
                     }
                     else {
-                        System.err.println("Unable to push with an empty change log.");
+                        logger.info("No change file given; only redelivering dead letters.");
                     }
                 }
-                process.push(Application.getStorage(), ChangeLogger.getEntries(), services);
+                process.push(storage, changeLogger.getEntries(), services);
             }
             else if (task.equalsIgnoreCase("archive")) {
                 process.archive(env.getWorkingDirectory(), env.getArchiveDirectory());
             }
+            else if (task.equals("export")) {
+                if (changeFile == null || !changeFile.exists()) {
+                    System.err.println("The export task requires an existing change-file.");
+                    System.exit(1);
+                }
+                File textFile = new File(changeFile.getPath()+".txt");
+                Writer writer = new OutputStreamWriter(new FileOutputStream(textFile), "UTF-8");
+                try {
+                    ChangeFile.exportText(changeFile, writer);
+                }
+                finally {
+                    writer.close();
+                }
+                logger.info("Exported "+changeFile+" to "+textFile);
+            }
             else {
                 System.err.println("Invalid task.");
                 System.exit(1);
             }
         }
+        changeLogger.close();
+    }
+
+    /**
+     * @param archiveDir - The base archive directory.
+     * @return The sorted session years that have at least one archived year directory.
+     */
+    protected List<Integer> getArchivedSessions(File archiveDir)
+    {
+        TreeSet<Integer> sessions = new TreeSet<Integer>();
+        File[] yearDirs = archiveDir.listFiles();
+        if (yearDirs != null) {
+            for (File yearDir : yearDirs) {
+                if (yearDir.isDirectory() && yearDir.getName().matches("[0-9]{4}")) {
+                    sessions.add(SessionYear.getSessionYear(Integer.parseInt(yearDir.getName())));
+                }
+            }
+        }
+        return new ArrayList<Integer>(sessions);
     }
 }
@@ -0,0 +1,234 @@
+package gov.nysenate.openleg.scripts.admin;
+
+import gov.nysenate.openleg.lucene.DocumentBuilder;
+import gov.nysenate.openleg.lucene.Lucene;
+import gov.nysenate.openleg.model.Bill;
+import gov.nysenate.openleg.scripts.BaseScript;
+import gov.nysenate.openleg.util.Application;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Times a set of queries against the configured index with different numbers of segment
+ * search threads, e.g. to pick a value for lucene.searchThreads:
+ * <p>
+ * bin/run.sh admin.LuceneBenchmark --environment app.properties --threads 1,2,4,8
+ * <p>
+ * Run it against a copy of the production index so results reflect the real mix of
+ * sessions and segment sizes. Each query is searched repeatedly after a warm up round,
+ * bypassing the result cache, and the latency percentiles are logged for every thread count.
+ * <p>
+ * To compare sorting with and without the sort fields' doc values on a fresh searcher:
+ * <p>
+ * bin/run.sh admin.LuceneBenchmark --environment app.properties --doc-values 300000
+ * <p>
+ * This builds two temporary indexes of that many synthetic bills, one without the doc values,
+ * and logs the first and warm sort times along with the FieldCache size and heap growth for
+ * each. The configured index isn't touched.
+ */
+public class LuceneBenchmark extends BaseScript
+{
+    /**
+     * Full text queries like the ones that dominate search latency, along with a couple of
+     * typical listings for comparison.
+     */
+    private static final List<String> DEFAULT_QUERIES = Arrays.asList(
+        "full:(tax AND school)",
+        "full:\"public authorities\"",
+        "osearch:(health insurance)",
+        "otype:transcript AND full:(budget)",
+        "otype:bill AND active:true AND year:[2013 TO 2014]",
+        "otype:bill AND sponsor:(smith)"
+    );
+
+    public static void main(String[] args) throws Exception
+    {
+        new LuceneBenchmark().run(args);
+    }
+
+    @Override
+    protected Options getOptions()
+    {
+        Options options = new Options();
+        options.addOption("t", "threads", true, "Comma separated search thread counts to compare. Defaults to 1 and the number of processors.");
+        options.addOption("i", "iterations", true, "Number of timed searches per query. Defaults to 50.");
+        options.addOption("q", "queries", true, "File with one query per line. Defaults to a built in mix of full text queries.");
+        options.addOption("s", "sort", true, "Field to sort results on. Defaults to relevance.");
+        options.addOption("d", "doc-values", true, "Compare sorting with and without doc values on this many synthetic bills instead.");
+        return options;
+    }
+
+    @Override
+    protected void execute(CommandLine opts) throws Exception
+    {
+        if (opts.hasOption("doc-values")) {
+            int count = Integer.parseInt(opts.getOptionValue("doc-values"));
+            benchmarkDocValues(count, false);
+            benchmarkDocValues(count, true);
+            return;
+        }
+
+        File indexDir = new File(Application.getConfig().getValue("lucene.directory"));
+        int iterations = Integer.parseInt(opts.getOptionValue("iterations", "50"));
+        String sort = opts.getOptionValue("sort");
+        String threadList = opts.getOptionValue("threads", "1,"+Runtime.getRuntime().availableProcessors());
+
+        List<String> queries = DEFAULT_QUERIES;
+        if (opts.hasOption("queries")) {
+            queries = new ArrayList<String>();
+            for (String line : FileUtils.readLines(new File(opts.getOptionValue("queries")))) {
+                if (!line.trim().isEmpty()) {
+                    queries.add(line.trim());
+                }
+            }
+        }
+
+        for (String threadCount : threadList.split(",")) {
+            int threads = Integer.parseInt(threadCount.trim());
+            Lucene lucene = new Lucene(indexDir, true, 0, threads);
+            try {
+                logger.info("Benchmarking with "+threads+" search threads");
+                for (String query : queries) {
+                    benchmark(lucene, query, sort, iterations);
+                }
+            }
+            finally {
+                lucene.close();
+            }
+        }
+    }
+
+    private void benchmark(Lucene lucene, String query, String sort, int iterations) throws Exception
+    {
+        // Warm up the searcher and filter caches before timing anything
+        lucene.clearResultCache();
+        lucene.search(query, 0, 20, sort, false);
+
+        List<Long> times = new ArrayList<Long>();
+        for (int i = 0; i < iterations; i++) {
+            lucene.clearResultCache();
+            long start = System.nanoTime();
+            lucene.search(query, 0, 20, sort, false);
+            times.add(System.nanoTime() - start);
+        }
+
+        Collections.sort(times);
+        long total = 0;
+        for (long time : times) {
+            total += time;
+        }
+        logger.info(String.format("%s threads=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+                query, lucene.getSearchThreads(),
+                total/(double)times.size()/1000000.0,
+                percentile(times, 0.50)/1000000.0,
+                percentile(times, 0.99)/1000000.0,
+                times.get(times.size()-1)/1000000.0));
+    }
+
+    private void benchmarkDocValues(int count, boolean docValues) throws Exception
+    {
+        File indexDir = new File(FileUtils.getTempDirectory(), "openleg-benchmark-"+System.nanoTime());
+        try {
+            Lucene lucene = new Lucene(indexDir, false);
+            try {
+                Random random = new Random(count);
+                Date date = new Date();
+                List<Document> batch = new ArrayList<Document>();
+                for (int i = 1; i <= count; i++) {
+                    Bill bill = new Bill("S"+i+"-2013", 2013);
+                    bill.setTitle("An act relating to "+Long.toString(random.nextLong() & Long.MAX_VALUE, 36));
+                    bill.setModifiedDate(new Date(date.getTime() - random.nextInt(Integer.MAX_VALUE)));
+                    bill.setPublishDate(bill.getModifiedDate());
+                    Document document = DocumentBuilder.build(bill);
+                    batch.add(docValues ? document : withoutSortDocValues(document));
+                    if (batch.size() >= 1000) {
+                        lucene.addDocuments(batch);
+                        batch.clear();
+                    }
+                }
+                lucene.addDocuments(batch);
+                lucene.commit();
+            }
+            finally {
+                lucene.close();
+            }
+
+            // Start from an empty FieldCache on a freshly opened reader, as after a restart
+            FieldCache.DEFAULT.purgeAllCaches();
+            long heapBefore = usedHeap();
+            lucene = new Lucene(indexDir, true);
+            try {
+                for (String sort : Arrays.asList("sorttitle", "when")) {
+                    long start = System.nanoTime();
+                    lucene.search("otype:bill", 0, 20, sort, false);
+                    long first = System.nanoTime() - start;
+
+                    lucene.clearResultCache();
+                    start = System.nanoTime();
+                    lucene.search("otype:bill", 0, 20, sort, false);
+                    long warm = System.nanoTime() - start;
+                    lucene.clearResultCache();
+
+                    logger.info(String.format("docValues=%s sort=%s first=%.2fms warm=%.2fms",
+                            docValues, sort, first/1000000.0, warm/1000000.0));
+                }
+
+                long fieldCacheSize = 0;
+                for (FieldCache.CacheEntry entry : FieldCache.DEFAULT.getCacheEntries()) {
+                    fieldCacheSize += RamUsageEstimator.sizeOf(entry.getValue());
+                }
+                logger.info(String.format("docValues=%s documents=%d fieldCache=%.1fMB heapDelta=%.1fMB",
+                        docValues, count, fieldCacheSize/1048576.0, (usedHeap()-heapBefore)/1048576.0));
+            }
+            finally {
+                lucene.close();
+            }
+        }
+        finally {
+            FieldCache.DEFAULT.purgeAllCaches();
+            FileUtils.deleteQuietly(indexDir);
+        }
+    }
+
+    /**
+     * @return A copy of the document without the doc values of its sort fields, as documents
+     *         were indexed before they had them.
+     */
+    private Document withoutSortDocValues(Document document)
+    {
+        Document stripped = new Document();
+        for (IndexableField field : document.getFields()) {
+            if (!DocumentBuilder.SORT_FIELDS.contains(field.name()) || field.fieldType().docValueType() == null) {
+                stripped.add(field);
+            }
+        }
+        return stripped;
+    }
+
+    private long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private long percentile(List<Long> sorted, double percentile)
+    {
+        int index = (int)Math.ceil(percentile*sorted.size()) - 1;
+        return sorted.get(Math.max(index, 0));
+    }
+}
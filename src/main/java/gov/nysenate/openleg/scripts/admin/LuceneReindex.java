@@ -0,0 +1,120 @@
+package gov.nysenate.openleg.scripts.admin;
+
+import gov.nysenate.openleg.model.Change;
+import gov.nysenate.openleg.scripts.BaseScript;
+import gov.nysenate.openleg.services.Lucene;
+import gov.nysenate.openleg.util.Application;
+import gov.nysenate.openleg.util.ChangeLogger;
+import gov.nysenate.openleg.util.Storage;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Map.Entry;
+import java.util.regex.Matcher;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+
+/**
+ * Rebuilds every Lucene document from the published objects in storage. Run after changes to
+ * the document layout, e.g. to add the sort doc values to an existing index:
+ * <p>
+ * bin/run.sh admin.LuceneReindex --environment app.properties --optimize
+ * <p>
+ * The index stays searchable while it runs; documents are replaced one change at a time.
+ * Documents whose objects are no longer published, e.g. because they were deleted while the
+ * index wasn't being updated, are deleted once every published object has been reindexed.
+ */
+public class LuceneReindex extends BaseScript
+{
+    public static void main(String[] args) throws Exception
+    {
+        new LuceneReindex().run(args);
+    }
+
+    /**{@inheritDoc}*/
+    @Override
+    protected boolean luceneReadOnly()
+    {
+        return false;
+    }
+
+    @Override
+    protected Options getOptions()
+    {
+        Options options = new Options();
+        options.addOption("b", "batch-size", true, "Number of objects to index per commit. Defaults to 10000.");
+        options.addOption("o", "optimize", false, "Merge the index down to a single segment when done.");
+        return options;
+    }
+
+    @Override
+    protected void execute(CommandLine opts) throws Exception
+    {
+        int batchSize = Integer.parseInt(opts.getOptionValue("batch-size", "10000"));
+        Storage storage = Application.getStorage();
+        Lucene lucene = new Lucene();
+
+        List<String> keys = storage.getPublishedKeys();
+        logger.info("Reindexing "+keys.size()+" published objects");
+
+        Date now = new Date();
+        int done = 0;
+        List<Entry<String, Change>> batch = new ArrayList<Entry<String, Change>>();
+        for (String key : keys) {
+            Matcher keyMatcher = ChangeLogger.keyPattern.matcher(key);
+            if (!keyMatcher.find()) {
+                logger.warn("Skipping invalid storage key: "+key);
+                continue;
+            }
+            Change change = new Change(keyMatcher.group(3), keyMatcher.group(2), Storage.Status.MODIFIED, now);
+            batch.add(new SimpleEntry<String, Change>(key, change));
+
+            if (batch.size() >= batchSize) {
+                done += reindex(lucene, batch, storage, keys.size(), done);
+            }
+        }
+        reindex(lucene, batch, storage, keys.size(), done);
+
+        // Delete what's left over; deleting a bill's key also deletes its votes and actions
+        Set<String> staleKeys = Application.getLucene().getIndexedKeys();
+        staleKeys.removeAll(new HashSet<String>(keys));
+        logger.info("Deleting "+staleKeys.size()+" unpublished objects");
+        done = 0;
+        for (String key : staleKeys) {
+            Matcher keyMatcher = ChangeLogger.keyPattern.matcher(key);
+            if (!keyMatcher.find()) {
+                logger.warn("Skipping invalid indexed key: "+key);
+                continue;
+            }
+            Change change = new Change(keyMatcher.group(3), keyMatcher.group(2), Storage.Status.DELETED, now);
+            batch.add(new SimpleEntry<String, Change>(key, change));
+
+            if (batch.size() >= batchSize) {
+                done += reindex(lucene, batch, storage, staleKeys.size(), done);
+            }
+        }
+        reindex(lucene, batch, storage, staleKeys.size(), done);
+
+        if (opts.hasOption("optimize")) {
+            logger.info("Merging index segments");
+            Application.getLucene().forceMerge(1);
+            Application.getLucene().commit();
+        }
+    }
+
+    private int reindex(Lucene lucene, List<Entry<String, Change>> batch, Storage storage, int total, int done) throws Exception
+    {
+        int count = batch.size();
+        if (count > 0) {
+            lucene.process(batch, storage);
+            logger.info("Reindexed "+(done+count)+" of "+total);
+            batch.clear();
+        }
+        return count;
+    }
+}
@@ -7,7 +7,6 @@ import gov.nysenate.openleg.services.Lucene;
 import gov.nysenate.openleg.services.ServiceBase;
 import gov.nysenate.openleg.services.Varnish;
 import gov.nysenate.openleg.util.Application;
-import gov.nysenate.openleg.util.ChangeLogger;
 import gov.nysenate.openleg.util.Storage;
 import gov.nysenate.openleg.util.UnpublishListManager;
 import org.apache.commons.cli.CommandLine;
@@ -55,11 +54,11 @@ public class RemoveAmendment extends BaseScript
         storage.set(bill);
 
         if (wasRestored) {
-            ChangeLogger.record(storage.key(bill), storage);
+            storage.getChangeLogger().record(storage.key(bill), storage);
         }
         else {
             bill.setPublishDate(null); // un publish.
-            ChangeLogger.delete(storage.key(bill), storage);
+            storage.getChangeLogger().delete(storage.key(bill), storage);
         }
 
         storage.flush();
@@ -70,7 +69,7 @@ public class RemoveAmendment extends BaseScript
         services.add(new Varnish("127.0.0.1", 80));
 
         DataProcessor process = new DataProcessor();
-        process.push(storage, ChangeLogger.getEntries(), services);
+        process.push(storage, storage.getChangeLogger().getEntries(), services);
 
         // Add the bill to the unpublished bill list
         if (!opts.hasOption('t')) {
@@ -93,7 +92,7 @@ public class RemoveAmendment extends BaseScript
                     billVersion.setActive(true);
                 }
                 storage.set(billVersion);
-                ChangeLogger.record(storage.key(billVersion), storage);
+                storage.getChangeLogger().record(storage.key(billVersion), storage);
             }
         }
     }
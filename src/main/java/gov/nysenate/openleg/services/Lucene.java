@@ -13,117 +13,269 @@ import gov.nysenate.openleg.util.Application;
 import gov.nysenate.openleg.util.Storage;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
 
+/**
+ * Indexes changed objects into Lucene.
+ * <p>
+ * Building documents is CPU heavy so objects are converted to documents on a pool of worker
+ * threads. Storage isn't thread safe, so the objects themselves are read from it on the
+ * calling thread before being handed to the pool. The finished documents are written to the shared IndexWriter
+ * in batches: all of a batch's delete terms first, then all of its documents at once. Every
+ * change is for a different key so deletes never touch documents added in the same batch.
+ */
 public class Lucene extends ServiceBase
 {
+    /**
+     * The documents to add and the terms to delete for a single change.
+     */
+    protected static class IndexUpdate
+    {
+        public final List<Term> deletes = new ArrayList<Term>();
+        public final List<Document> documents = new ArrayList<Document>();
+    }
+
+    /**
+     * Number of threads used to build documents.
+     */
+    protected int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of documents to buffer before writing them to the index.
+     */
+    protected int batchSize = 500;
+
+    /**
+     * Lucene pushes are never timed out; interrupting a thread in the middle of an index
+     * write closes the shared IndexWriter.
+     */
+    public Lucene()
+    {
+        super();
+        timeout = 0;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
     @Override
     public boolean process(List<Entry<String, Change>> entries, Storage storage) throws IOException
     {
         gov.nysenate.openleg.lucene.Lucene lucene = Application.getLucene();
-        for(Entry<String, Change> entry : entries) {
-            try {
-                // Extract object descriptors from the entry key
-                String key = entry.getKey();
-                String otype = key.split("/")[1];
-                String oid = key.split("/")[2];
-                Change change = entry.getValue();
-                logger.debug("Indexing "+change.getStatus()+" "+otype+": "+oid);
-
-                // We don't currently index agendas; meetings get their own entries
-                // and meeting votes are attached to bills
-                if (otype.equals("agenda")) continue;
-
-                if (change.getStatus() == Storage.Status.DELETED) {
-                    if(otype.equals("bill")) {
-                        // When a bill is deleted, also remove its sub-documents
-                        lucene.deleteDocumentsByQuery("otype:action AND billno:" + oid);
-                        lucene.deleteDocumentsByQuery("otype:vote AND billno:" + oid);
-                        lucene.deleteDocumentById(oid);
-                    }
-                    else {
-                        // All sub-documents of other types have their own entries in the
-                        // change log and will delete themselves.
-                        lucene.deleteDocumentById(oid);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        CompletionService<IndexUpdate> builds = new ExecutorCompletionService<IndexUpdate>(executor);
+
+        // Bound the number of finished updates waiting to be written
+        int maxPending = Math.max(1, threads) * 4;
+        int pending = 0;
+
+        IndexUpdate batch = new IndexUpdate();
+        try {
+            for (final Entry<String, Change> entry : entries) {
+                final BaseObject obj = read(entry, storage);
+                builds.submit(new Callable<IndexUpdate>() {
+                    public IndexUpdate call()
+                    {
+                        return buildUpdate(entry, obj);
                     }
-                }
-                else {
-                    // Retrieve new/modified objects from storage so we can index them
-                    Class<? extends BaseObject> objType = classMap.get(otype);
-                    BaseObject obj = storage.get(key, objType);
-                    if (obj.isPublished()) {
-                        Document document = null;
-
-                        if (otype.equals("bill")) {
-                            // Regenerate all the bill sub-documents. Delete them all first to
-                            // account for any removals or changes in the document oid. Add back
-                            // references so that the document can be properly constructed.
-                            //
-                            // TODO: Should we really be pulling the modified date from the bill?
-                            Bill bill = (Bill)obj;
-
-                            lucene.deleteDocumentsByQuery("otype:action AND billno:" + bill.getBillId());
-                            for(Action billEvent:bill.getActions()) {
-                                try {
-                                    billEvent.setBill(bill);
-                                    lucene.updateDocument(DocumentBuilder.build(billEvent));
-                                }
-                                catch (IOException e) {
-                                    logger.error("Error indexing: "+key, e);
-                                }
-                            }
-
-                            lucene.deleteDocumentsByQuery("otype:vote AND billno:" + bill.getBillId());
-                            for(Vote vote: bill.getVotes()) {
-                                try {
-                                    vote.setBill(bill);
-                                    lucene.updateDocument(DocumentBuilder.build(vote));
-                                }
-                                catch(IOException e) {
-                                    logger.error("Error indexing: "+key, e);
-                                }
-                            }
-
-                            document = DocumentBuilder.build(bill);
-                        }
-                        else if (otype.equals("meeting")) {
-                            document = DocumentBuilder.build((Meeting)obj);
-                        }
-                        else if (otype.equals("calendar")) {
-                            document = DocumentBuilder.build((Calendar)obj);
-                        }
-                        else if (otype.equals("transcript")) {
-                            document = DocumentBuilder.build((Transcript)obj);
-                        }
-                        else if (otype.equals("hearing")) {
-                            // Do nothing
-                        }
-
-
-                        if (document != null) {
-                            try {
-                                lucene.updateDocument(document);
-                            }
-                            catch (IOException e) {
-                                logger.error("Error indexing: "+key, e);
-                            }
-                        }
+                });
+                pending++;
+
+                while (pending >= maxPending) {
+                    addToBatch(batch, take(builds));
+                    pending--;
+                    if (batch.documents.size() >= batchSize) {
+                        writeBatch(lucene, batch);
+                        batch = new IndexUpdate();
                     }
                 }
             }
-            catch (ArrayIndexOutOfBoundsException e) {
-                logger.error("Unable to parse oid and otype values from key: "+entry.getKey(), e);
-            }
-            catch (Exception e) {
-                logger.error("Unexpected error processing entry: "+entry.getKey(), e);
+
+            for (; pending > 0; pending--) {
+                addToBatch(batch, take(builds));
             }
+            writeBatch(lucene, batch);
+        }
+        finally {
+            executor.shutdownNow();
         }
 
         lucene.commit();
         logger.info("done indexing objects(" + entries.size() + "). Closing index.");
         return true;
     }
+
+    /**
+     * Reads the object a change log entry needs indexed. Must be called on the thread that
+     * owns the storage. Errors are logged and result in null.
+     *
+     * @param entry - The change log entry.
+     * @param storage - The storage to read new and modified objects from.
+     * @return The new or modified object, or null for deletes, agendas and unreadable objects.
+     */
+    protected BaseObject read(Entry<String, Change> entry, Storage storage)
+    {
+        try {
+            String key = entry.getKey();
+            String otype = key.split("/")[1];
+            if (entry.getValue().getStatus() == Storage.Status.DELETED || otype.equals("agenda")) {
+                return null;
+            }
+            return storage.get(key, classMap.get(otype));
+        }
+        catch (Exception e) {
+            logger.error("Unable to read entry: "+entry.getKey(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Works out the index changes needed for a single change log entry. Errors are logged and
+     * result in an empty update so that one bad object doesn't stop the rest of the push.
+     *
+     * @param entry - The change log entry.
+     * @param obj - The new or modified object read by {@link #read}; ignored for deletes.
+     * @return The terms to delete and documents to add for this change.
+     */
+    protected IndexUpdate buildUpdate(Entry<String, Change> entry, BaseObject obj)
+    {
+        IndexUpdate update = new IndexUpdate();
+        try {
+            // Extract object descriptors from the entry key
+            String key = entry.getKey();
+            String otype = key.split("/")[1];
+            String oid = key.split("/")[2];
+            Change change = entry.getValue();
+            logger.debug("Indexing "+change.getStatus()+" "+otype+": "+oid);
+
+            // We don't currently index agendas; meetings get their own entries
+            // and meeting votes are attached to bills
+            if (otype.equals("agenda")) return update;
+
+            if (change.getStatus() == Storage.Status.DELETED) {
+                if(otype.equals("bill")) {
+                    // When a bill is deleted, also remove its sub-documents
+                    update.deletes.add(new Term("billid", oid.toLowerCase()));
+                }
+                // All sub-documents of other types have their own entries in the
+                // change log and will delete themselves.
+                update.deletes.add(new Term("oid", oid.toLowerCase()));
+            }
+            else if (obj == null) {
+                logger.warn("Unable to read "+otype+" for indexing: "+oid);
+            }
+            else if (obj.isPublished()) {
+                if (otype.equals("bill")) {
+                    // Regenerate all the bill sub-documents. Delete them all first to
+                    // account for any removals or changes in the document oid. Add back
+                    // references so that the document can be properly constructed.
+                    //
+                    // TODO: Should we really be pulling the modified date from the bill?
+                    Bill bill = (Bill)obj;
+                    update.deletes.add(new Term("billid", bill.getBillId().toLowerCase()));
+
+                    for(Action billEvent:bill.getActions()) {
+                        billEvent.setBill(bill);
+                        addDocument(update, DocumentBuilder.build(billEvent));
+                    }
+
+                    for(Vote vote: bill.getVotes()) {
+                        vote.setBill(bill);
+                        addDocument(update, DocumentBuilder.build(vote));
+                    }
+
+                    addDocument(update, DocumentBuilder.build(bill));
+                }
+                else if (otype.equals("meeting")) {
+                    addDocument(update, DocumentBuilder.build((Meeting)obj));
+                }
+                else if (otype.equals("calendar")) {
+                    addDocument(update, DocumentBuilder.build((Calendar)obj));
+                }
+                else if (otype.equals("transcript")) {
+                    addDocument(update, DocumentBuilder.build((Transcript)obj));
+                }
+                else if (otype.equals("hearing")) {
+                    // Do nothing
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException e) {
+            logger.error("Unable to parse oid and otype values from key: "+entry.getKey(), e);
+            return new IndexUpdate();
+        }
+        catch (Exception e) {
+            logger.error("Unexpected error processing entry: "+entry.getKey(), e);
+            return new IndexUpdate();
+        }
+        return update;
+    }
+
+    /**
+     * Adds the document to the update, replacing any existing document with the same oid.
+     */
+    private void addDocument(IndexUpdate update, Document document)
+    {
+        update.deletes.add(new Term("oid", document.get("oid").toLowerCase()));
+        update.documents.add(document);
+    }
+
+    private IndexUpdate take(CompletionService<IndexUpdate> builds) throws IOException
+    {
+        try {
+            return builds.take().get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building documents", e);
+        }
+        catch (ExecutionException e) {
+            // buildUpdate catches everything it can; this should only be errors
+            throw new IOException("Unable to build documents", e.getCause());
+        }
+    }
+
+    private void addToBatch(IndexUpdate batch, IndexUpdate update)
+    {
+        batch.deletes.addAll(update.deletes);
+        batch.documents.addAll(update.documents);
+    }
+
+    private void writeBatch(gov.nysenate.openleg.lucene.Lucene lucene, IndexUpdate batch) throws IOException
+    {
+        if (!batch.deletes.isEmpty()) {
+            lucene.deleteDocuments(batch.deletes.toArray(new Term[batch.deletes.size()]));
+        }
+        if (!batch.documents.isEmpty()) {
+            lucene.addDocuments(batch.documents);
+        }
+    }
 }
@@ -7,6 +7,7 @@ import gov.nysenate.openleg.model.Calendar;
 import gov.nysenate.openleg.model.Change;
 import gov.nysenate.openleg.model.Meeting;
 import gov.nysenate.openleg.model.Transcript;
+import gov.nysenate.openleg.util.CircuitBreaker;
 import gov.nysenate.openleg.util.Storage;
 
 import java.io.IOException;
@@ -20,6 +21,33 @@ public abstract class ServiceBase {
     protected HashMap<String, Class<? extends BaseObject>> classMap;
     protected Logger logger;
 
+    /**
+     * Number of times to retry a failed push before giving up.
+     */
+    protected int retries = 2;
+
+    /**
+     * Milliseconds to wait before the first retry. The delay doubles with each further retry.
+     */
+    protected long retryDelay = 5000;
+
+    /**
+     * Upper bound on the delay between retries.
+     */
+    protected long maxRetryDelay = 60000;
+
+    /**
+     * Stops pushes to the service after repeated failures so that a dead service isn't
+     * hammered with retries. Its state is carried across pushes through the dead letter
+     * directory, so failures from separate runs add up.
+     */
+    protected CircuitBreaker circuitBreaker = new CircuitBreaker(5, 5*60*1000);
+
+    /**
+     * Milliseconds a push (including retries) may run before it is cancelled; 0 for no limit.
+     */
+    protected long timeout = 0;
+
     public ServiceBase() {
         logger = Logger.getLogger(this.getClass());
         classMap = new HashMap<String, Class<? extends BaseObject>>();
@@ -30,6 +58,65 @@ public abstract class ServiceBase {
         classMap.put("transcript", Transcript.class);
     }
 
+    public int getRetries() {
+        return retries;
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    public long getMaxRetryDelay() {
+        return maxRetryDelay;
+    }
+
+    public void setMaxRetryDelay(long maxRetryDelay) {
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+    /**
+     * @param attempt - The retry number, starting at 1.
+     * @return - Milliseconds to wait before the given retry.
+     */
+    public long getRetryDelay(int attempt) {
+        long delay = retryDelay;
+        for (int i = 1; i < attempt && delay < maxRetryDelay; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, maxRetryDelay);
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return - A short lower case name for the service used in logs and metrics.
+     */
+    public String getName() {
+        return this.getClass().getSimpleName().toLowerCase();
+    }
+
     public abstract boolean process(List<Entry<String, Change>> changeLog, Storage storage) throws IOException;
 
 }
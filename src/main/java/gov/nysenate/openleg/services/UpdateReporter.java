@@ -4,36 +4,120 @@ import gov.nysenate.openleg.model.Change;
 import gov.nysenate.openleg.util.Application;
 import gov.nysenate.openleg.util.Storage;
 
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.Map.Entry;
 
+import javax.sql.DataSource;
+
+import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.dbutils.QueryRunner;
-import org.apache.tomcat.jdbc.pool.DataSource;
 
 /*
  * Parses changes from a changeLog file and saves to MySQL database.
+ *
+ * Changes are inserted with JDBC batches of batchSize rows, each batch in its own
+ * transaction on a single connection.
  */
 public class UpdateReporter extends ServiceBase
 {
+    /**
+     * The changelog table is a history keyed on an auto increment id so inserts never
+     * collide; plain inserts also keep the batch portable to other databases.
+     */
+    protected static final String INSERT_SQL = "INSERT INTO changelog (otype, oid, year, time, status) VALUES (?, ?, ?, ?, ?)";
+
+    /**
+     * Number of changes to insert per batch and transaction.
+     */
+    protected int batchSize = 1000;
+
+    public UpdateReporter()
+    {
+        super();
+        timeout = 10 * 60 * 1000;
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
     public boolean process(List<Entry<String, Change>> entries, Storage storage)
     {
-        // Insert changes into database.
-        DataSource datasource = Application.getDB().getDataSource();
-        QueryRunner run = new QueryRunner(datasource);
+        return process(entries, Application.getDB().getDataSource());
+    }
+
+    /**
+     * Inserts changes into the changelog table of the given database. Batches that were
+     * committed before a failure stay committed; retrying the push re-inserts them. Changes
+     * logged without a time are reported at the time of the push.
+     *
+     * @param entries - The changes to insert.
+     * @param datasource - The database to insert into.
+     * @return false if any batch failed to insert.
+     */
+    public boolean process(List<Entry<String, Change>> entries, DataSource datasource)
+    {
+        QueryRunner run = new QueryRunner();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Connection conn = null;
         try {
-            run.update("BEGIN");
-            for(Entry<String, Change> entry: entries) {
-                Change change = entry.getValue();
-                run.update("INSERT INTO changelog (otype, oid, time, status) VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE oid = ?",
-                        change.getOtype(), change.getOid(), change.getTime(), change.getStatus().name(), change.getOid());
+            conn = datasource.getConnection();
+            conn.setAutoCommit(false);
+            int size = Math.max(1, batchSize);
+            for (int start = 0; start < entries.size(); start += size) {
+                List<Entry<String, Change>> batch = entries.subList(start, Math.min(start + size, entries.size()));
+                Object[][] params = new Object[batch.size()][];
+                for (int i = 0; i < batch.size(); i++) {
+                    // Key format is YEAR/OTYPE/OID
+                    String key = batch.get(i).getKey();
+                    int year = Integer.parseInt(key.split("/")[0]);
+                    Change change = batch.get(i).getValue();
+                    Timestamp time = now;
+                    if (change.getTime() != null) {
+                        time = new Timestamp(change.getTime().getTime());
+                    }
+                    else {
+                        logger.warn("No time logged for change to "+key+"; reporting it at "+now);
+                    }
+                    params[i] = new Object[] {
+                        change.getOtype(), change.getOid(), year, time, change.getStatus().name()
+                    };
+                }
+                run.batch(conn, INSERT_SQL, params);
+                conn.commit();
             }
-            run.update("COMMIT");
         }
         catch (SQLException e) {
-            e.printStackTrace();
+            logger.error("Unable to report changes", e);
+            try {
+                DbUtils.rollback(conn);
+            }
+            catch (SQLException rollbackError) {
+                logger.error("Unable to roll back changelog batch", rollbackError);
+            }
             return false;
         }
+        finally {
+            // Pooled connections are reused so put them back the way we found them
+            try {
+                if (conn != null) {
+                    conn.setAutoCommit(true);
+                }
+            }
+            catch (SQLException e) {
+                logger.error("Unable to reset auto commit", e);
+            }
+            DbUtils.closeQuietly(conn);
+        }
         return true;
     }
 
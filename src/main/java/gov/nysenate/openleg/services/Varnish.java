@@ -5,13 +5,29 @@ import gov.nysenate.openleg.model.Change;
 import gov.nysenate.openleg.model.Meeting;
 import gov.nysenate.openleg.util.Storage;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map.Entry;
 
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Purges changed documents from the Varnish cache.
+ * <p>
+ * A single keep-alive connection is reused across purges and requests are pipelined; up to
+ * {@link #pipelineDepth} requests are written before their responses are read back. When
+ * {@link #banBatchSize} is positive, doc: purges are collapsed into BAN requests that each
+ * cover a batch of oids with one regular expression (see the BAN handling in default.vcl).
+ */
 public class Varnish extends ServiceBase {
     protected final InetSocketAddress remoteSocket;
 
@@ -20,16 +36,53 @@ public class Varnish extends ServiceBase {
     protected static final String PURGE_TEMPLATE = "PURGE %s HTTP/1.1\r\n" +
                                                    "User-Agent: HTTPGrab\r\n" +
                                                    "Accept: text/*\r\n" +
-                                                   "Connection: close\r\n" +
                                                    "Host: %s\r\n\r\n";
 
+    protected static final String BAN_TEMPLATE = "BAN / HTTP/1.1\r\n" +
+                                                 "User-Agent: HTTPGrab\r\n" +
+                                                 "Accept: text/*\r\n" +
+                                                 "X-Ban-Url: %s\r\n" +
+                                                 "Host: %s\r\n\r\n";
+
+    /**
+     * Number of oids to combine into a single ban expression. 0 purges each doc individually.
+     */
+    protected int banBatchSize = 100;
+
+    /**
+     * Number of requests to send before reading their responses.
+     */
+    protected int pipelineDepth = 32;
+
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+
     public Varnish(String host, int port) {
         super();
         remoteSocket = new InetSocketAddress(host, port);
+        timeout = 5 * 60 * 1000;
+    }
+
+    public int getBanBatchSize() {
+        return banBatchSize;
+    }
+
+    public void setBanBatchSize(int banBatchSize) {
+        this.banBatchSize = banBatchSize;
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    public void setPipelineDepth(int pipelineDepth) {
+        this.pipelineDepth = pipelineDepth;
     }
 
     @Override
     public boolean process(List<Entry<String, Change>> entries, Storage storage) throws IOException {
+        List<String> oids = new ArrayList<String>();
         for(Entry<String, Change> entry : entries) {
             // Key format is YEAR/OTYPE/OID
             String key = entry.getKey();
@@ -45,34 +98,208 @@ public class Varnish extends ServiceBase {
                     Meeting meeting = (Meeting)storage.get(key, Meeting.class);
                     oid = meeting.getOid();
                 }
+                oids.add(oid);
+            }
+        }
 
-                purgeUri("doc:"+oid);
+        List<String> requests = new ArrayList<String>();
+        if (banBatchSize > 0) {
+            for (int i = 0; i < oids.size(); i += banBatchSize) {
+                requests.add(banRequest(oids.subList(i, Math.min(i + banBatchSize, oids.size()))));
             }
         }
-        purgeUri("search");
-        purgeUri("views");
-        return true;
+        else {
+            for (String oid : oids) {
+                requests.add(purgeRequest("doc:"+oid));
+            }
+        }
+        requests.add(purgeRequest("search"));
+        requests.add(purgeRequest("views"));
+
+        try {
+            return send(requests);
+        }
+        finally {
+            close();
+        }
     }
 
     public void purgeUri(String uri) throws IOException {
-        // This works, but maybe we can do it without manually opening sockets?
-        // TODO: Do we need to re-open the channel for each request?
-        logger.warn(String.format(LOG_TEMPLATE, uri, remoteSocket.getHostName()));
-        SocketChannel channel = SocketChannel.open(remoteSocket);
-        String request = String.format(PURGE_TEMPLATE, uri, remoteSocket.getHostName());
+        send(Collections.singletonList(purgeRequest(uri)));
+    }
+
+    /**
+     * Closes the keep-alive connection. It is reopened by the next purge.
+     */
+    public synchronized void close() {
+        IOUtils.closeQuietly(socket);
+        socket = null;
+        in = null;
+        out = null;
+    }
+
+    protected String purgeRequest(String uri) {
+        logger.info(String.format(LOG_TEMPLATE, uri, remoteSocket.getHostName()));
+        return String.format(PURGE_TEMPLATE, uri, remoteSocket.getHostName());
+    }
+
+    protected String banRequest(List<String> oids) {
+        StringBuilder pattern = new StringBuilder("(");
+        for (String oid : oids) {
+            if (pattern.length() > 1) {
+                pattern.append('|');
+            }
+            pattern.append(escapeRegex(oid));
+        }
+        pattern.append(")");
+        logger.info(String.format(LOG_TEMPLATE, oids.size()+" docs", remoteSocket.getHostName()));
+        return String.format(BAN_TEMPLATE, pattern, remoteSocket.getHostName());
+    }
+
+    /**
+     * Sends the requests over the keep-alive connection, pipelining up to pipelineDepth at a
+     * time. Purges and bans are idempotent so any requests left unanswered when a connection
+     * drops are resent on a new one.
+     *
+     * @param requests - The raw HTTP requests to send.
+     * @return true if every request got a 2xx response.
+     * @throws IOException - If the server can't be reached or the connection keeps failing.
+     */
+    protected synchronized boolean send(List<String> requests) throws IOException {
+        boolean success = true;
+        int done = 0;
+        boolean retried = false;
+        while (done < requests.size()) {
+            try {
+                connect();
+                int end = Math.min(done + Math.max(1, pipelineDepth), requests.size());
+                for (int i = done; i < end; i++) {
+                    out.write(requests.get(i).getBytes("US-ASCII"));
+                }
+                out.flush();
 
-        ByteBuffer header = ByteBuffer.wrap(request.getBytes("US-ASCII"));
-        channel.write(header);
-        channel.finishConnect();
+                for (int i = done; i < end; i++) {
+                    int status = readResponse();
+                    if (status < 200 || status >= 300) {
+                        logger.error("Varnish returned "+status+" for: "+requests.get(i).split("\r\n")[0]);
+                        success = false;
+                    }
+                    done++;
+                    retried = false;
+                    if (socket == null) {
+                        // The server closed the connection; resend the rest on a new one
+                        break;
+                    }
+                }
+            }
+            catch (IOException e) {
+                close();
+                if (retried) {
+                    throw e;
+                }
+                logger.warn("Varnish connection lost, reconnecting: "+e.getMessage());
+                retried = true;
+            }
+        }
+        return success;
+    }
+
+    private void connect() throws IOException {
+        if (socket == null) {
+            socket = new Socket();
+            socket.connect(remoteSocket, 10000);
+            socket.setSoTimeout(60000);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = new BufferedOutputStream(socket.getOutputStream());
+        }
+    }
+
+    /**
+     * Reads a single response from the connection, discarding the body. Closes the
+     * connection if the server asks to.
+     *
+     * @return The response status code.
+     */
+    private int readResponse() throws IOException {
+        String statusLine = readLine();
+        String[] parts = statusLine.split(" ");
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            throw new IOException("Invalid response status line: "+statusLine);
+        }
+        int status = Integer.parseInt(parts[1]);
 
-        // Can't we just close it if we are throwing the response away?
-        ByteBuffer buffer = ByteBuffer.allocate(131072);
-        while(channel.read(buffer) != -1) {
-            buffer.clear();
+        long contentLength = -1;
+        boolean chunked = false;
+        boolean keepAlive = !parts[0].equals("HTTP/1.0");
+        String header;
+        while (!(header = readLine()).isEmpty()) {
+            int colon = header.indexOf(':');
+            if (colon == -1) {
+                continue;
+            }
+            String name = header.substring(0, colon).trim();
+            String value = header.substring(colon+1).trim();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                contentLength = Long.parseLong(value);
+            }
+            else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                chunked = value.equalsIgnoreCase("chunked");
+            }
+            else if (name.equalsIgnoreCase("Connection")) {
+                keepAlive = value.equalsIgnoreCase("keep-alive") || (keepAlive && !value.equalsIgnoreCase("close"));
+            }
         }
 
-        channel.close();
+        if (chunked) {
+            long size;
+            while ((size = Long.parseLong(readLine().split(";")[0].trim(), 16)) > 0) {
+                IOUtils.skipFully(in, size);
+                readLine();
+            }
+            while (!readLine().isEmpty()) {
+                // Skip trailers
+            }
+        }
+        else if (contentLength >= 0) {
+            IOUtils.skipFully(in, contentLength);
+        }
+        else {
+            // No length, the body runs until the connection closes
+            keepAlive = false;
+            IOUtils.skip(in, Long.MAX_VALUE);
+        }
+
+        if (!keepAlive) {
+            close();
+        }
+        return status;
     }
 
-}
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) {
+                throw new IOException("Connection closed by Varnish");
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return line.toString("US-ASCII");
+    }
 
+    /**
+     * Escapes regular expression metacharacters in an oid for use in a ban expression.
+     */
+    private static String escapeRegex(String oid) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : oid.toCharArray()) {
+            if ("\\.^$|?*+()[]{}\"".indexOf(c) != -1) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
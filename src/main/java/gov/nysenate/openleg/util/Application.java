@@ -1,6 +1,7 @@
 package gov.nysenate.openleg.util;
 
 import gov.nysenate.openleg.Environment;
+import gov.nysenate.openleg.lucene.DocumentBuilder;
 import gov.nysenate.openleg.lucene.Lucene;
 import gov.nysenate.util.Config;
 import gov.nysenate.util.DB;
@@ -31,7 +32,9 @@ public class Application
     protected Environment environment;
     protected Lucene lucene;
     protected Storage storage;
+    protected Storage readOnlyStorage;
     protected DB db;
+    protected Metrics metrics = new Metrics();
 
     /**
      * Public access call to build()
@@ -50,8 +53,17 @@ public class Application
             appInstance.db = new DB(appInstance.config, "mysqldb");
             appInstance.mailer = new Mailer(appInstance.config, "mailer");
             appInstance.environment = new Environment(appInstance.config, "env");
-            appInstance.lucene = new Lucene(new File(appInstance.config.getValue("lucene.directory")), luceneReadOnly);
+            DocumentBuilder.setStoreData(Boolean.parseBoolean(appInstance.config.getValue("lucene.storeData", "true")));
+            appInstance.lucene = new Lucene(new File(appInstance.config.getValue("lucene.directory")),
+                                            Lucene.fullTextDirectory(appInstance.config.getValue("lucene.fullTextDirectory", "")),
+                                            luceneReadOnly,
+                                            Long.parseLong(appInstance.config.getValue("lucene.maxStaleness", "1000")),
+                                            Integer.parseInt(appInstance.config.getValue("lucene.searchThreads", "1")));
             appInstance.storage = new Storage(appInstance.environment.getStorageDirectory());
+            appInstance.readOnlyStorage = new Storage(appInstance.environment.getStorageDirectory(), true);
+
+            // Expose metrics for as long as the web app or script is running
+            appInstance.metrics.register();
             return true;
         }
         catch (ConfigurationException ce)
@@ -69,6 +81,7 @@ public class Application
 
     public static boolean shutdown() throws IOException
     {
+        appInstance.metrics.unregister();
         if (appInstance.lucene != null) {
             appInstance.lucene.close();
         }
@@ -94,4 +107,15 @@ public class Application
     public static Storage getStorage() {
         return appInstance.storage;
     }
+
+    /**
+     * @return A read only view of storage that web requests can share.
+     */
+    public static Storage getReadOnlyStorage() {
+        return appInstance.readOnlyStorage;
+    }
+
+    public static Metrics getMetrics() {
+        return appInstance.metrics;
+    }
 }
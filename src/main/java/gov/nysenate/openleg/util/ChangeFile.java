@@ -0,0 +1,268 @@
+package gov.nysenate.openleg.util;
+
+import gov.nysenate.openleg.model.Change;
+import gov.nysenate.openleg.util.Storage.Status;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Date;
+import java.util.Map.Entry;
+import java.util.regex.Matcher;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Binary format for change log files.
+ * <p>
+ * A change file starts with a short header followed by a stream of self-contained records:
+ * <pre>
+ *   header: int magic, byte version
+ *   record: byte status, byte otype code, [UTF otype if code is 0], short year, UTF oid, long epoch millis
+ * </pre>
+ * Known object types are interned to single byte codes. Because every record can be decoded on
+ * its own, any record boundary is a valid offset to start reading from.
+ * <p>
+ * Records are read back one at a time with a {@link Reader} so memory use doesn't grow with
+ * the size of the file. Writers buffer their records, so a file being appended to can end in
+ * a partial record until the writer next flushes. Use {@link #exportText(File, Writer)} for a human readable dump.
+ */
+public class ChangeFile
+{
+    public static final int MAGIC = 0x4f4c4346; // OLCF
+
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_LENGTH = 5;
+
+    /**
+     * Interned object types. The index of each type is its code; code 0 is reserved for
+     * types written out in full.
+     */
+    private static final String[] OTYPES = {null, "bill", "calendar", "agenda", "meeting", "transcript", "action", "vote"};
+
+    private static final Status[] STATUSES = Status.values();
+
+    /**
+     * @param file - The file to check.
+     * @return - True if the file starts with a change file header.
+     * @throws IOException
+     */
+    public static boolean isChangeFile(File file) throws IOException
+    {
+        if (!file.exists() || file.length() < HEADER_LENGTH) {
+            return false;
+        }
+
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return in.readInt() == MAGIC;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens the file for appending records, writing the header if the file is new.
+     *
+     * @param file - The change file to append to.
+     * @return - A buffered stream positioned at the end of the file.
+     * @throws IOException - If the file exists and isn't a change file.
+     */
+    public static DataOutputStream openForAppend(File file) throws IOException
+    {
+        boolean empty = !file.exists() || file.length() == 0;
+        if (!empty && !isChangeFile(file)) {
+            throw new IOException("Cannot append to a file that isn't a change file: "+file);
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (empty) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+        }
+        return out;
+    }
+
+    /**
+     * Writes a single change record.
+     *
+     * @param out - The stream to write to.
+     * @param key - The storage key of the change, e.g. 2013/bill/S1234-2013
+     * @param change - The change to write.
+     * @throws IOException
+     */
+    public static void write(DataOutputStream out, String key, Change change) throws IOException
+    {
+        Matcher keyMatcher = ChangeLogger.keyPattern.matcher(key);
+        if (!keyMatcher.find()) {
+            throw new IOException("Invalid changelog key: "+key);
+        }
+
+        String otype = keyMatcher.group(2);
+        int code = otypeCode(otype);
+        out.writeByte(change.getStatus().ordinal());
+        out.writeByte(code);
+        if (code == 0) {
+            out.writeUTF(otype);
+        }
+        out.writeShort(Integer.parseInt(keyMatcher.group(1)));
+        out.writeUTF(keyMatcher.group(3));
+        out.writeLong(change.getTime() == null ? -1 : change.getTime().getTime());
+    }
+
+    /**
+     * Writes the records in a change file as tab separated key, status, date lines.
+     *
+     * @param inFile - The change file to read.
+     * @param out - Where to write the text to.
+     * @throws IOException
+     */
+    public static void exportText(File inFile, Writer out) throws IOException
+    {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(ChangeLogger.DATE_FORMAT);
+        Reader reader = new Reader(inFile, 0);
+        try {
+            Entry<String, Change> entry;
+            while ((entry = reader.read()) != null) {
+                Date time = entry.getValue().getTime();
+                out.write(entry.getKey()+"\t"+entry.getValue().getStatus()+"\t"+(time == null ? "" : dateFormat.format(time))+"\n");
+            }
+            if (reader.isTruncated()) {
+                out.write("# Partial record at offset "+reader.getOffset()+"\n");
+            }
+            out.flush();
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private static int otypeCode(String otype)
+    {
+        for (int code = 1; code < OTYPES.length; code++) {
+            if (OTYPES[code].equals(otype)) {
+                return code;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Reads the records in a change file one at a time starting from a record boundary.
+     * Records are returned in file order, including UNKNOWN tombstones.
+     * <p>
+     * A partial record at the end of the file, e.g. one still being appended, ends the read
+     * without being returned; {@link #isTruncated()} tells it apart from a clean end of file.
+     * {@link #getOffset()} always points just past the last complete record that was returned.
+     * A record that can't be decoded is an error rather than the end of the file, since every
+     * record after it would be lost.
+     */
+    public static class Reader implements Closeable
+    {
+        private final CountingInputStream counter;
+        private final DataInputStream in;
+        private final long startOffset;
+        private long offset;
+        private boolean truncated;
+
+        /**
+         * @param file - The change file to read.
+         * @param offset - The byte offset to start at; 0 for the start of the file.
+         * @throws IOException - If the file isn't a change file.
+         */
+        public Reader(File file, long offset) throws IOException
+        {
+            FileInputStream fileIn = new FileInputStream(file);
+            try {
+                DataInputStream header = new DataInputStream(fileIn);
+                if (file.length() < HEADER_LENGTH || header.readInt() != MAGIC) {
+                    throw new IOException("Not a change file: "+file);
+                }
+                byte version = header.readByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported change file version "+version+": "+file);
+                }
+                this.startOffset = Math.max(offset, HEADER_LENGTH);
+                IOUtils.skipFully(fileIn, startOffset-HEADER_LENGTH);
+            }
+            catch (IOException e) {
+                fileIn.close();
+                throw e;
+            }
+
+            this.counter = new CountingInputStream(new BufferedInputStream(fileIn));
+            this.in = new DataInputStream(counter);
+            this.offset = startOffset;
+        }
+
+        /**
+         * @return - The byte offset immediately after the last record returned.
+         */
+        public long getOffset()
+        {
+            return offset;
+        }
+
+        /**
+         * @return - True if reading stopped at a partial record rather than the end of the file.
+         */
+        public boolean isTruncated()
+        {
+            return truncated;
+        }
+
+        /**
+         * @return - The next record, or null at the end of the file or a partial record.
+         * @throws IOException - If the next record is corrupt or the file can't be read.
+         */
+        public Entry<String, Change> read() throws IOException
+        {
+            if (truncated) {
+                return null;
+            }
+
+            try {
+                int statusCode = in.read();
+                if (statusCode == -1) {
+                    return null;
+                }
+
+                int code = in.readUnsignedByte();
+                String otype = code == 0 ? in.readUTF() : (code < OTYPES.length ? OTYPES[code] : null);
+                int year = in.readShort();
+                String oid = in.readUTF();
+                long millis = in.readLong();
+
+                if (otype == null || statusCode >= STATUSES.length) {
+                    throw new IOException("Corrupt change record at offset "+offset);
+                }
+
+                offset = startOffset + counter.getByteCount();
+                Change change = new Change(oid, otype, STATUSES[statusCode], millis == -1 ? null : new Date(millis));
+                return new SimpleEntry<String, Change>(year+"/"+otype+"/"+oid, change);
+            }
+            catch (EOFException e) {
+                truncated = true;
+                return null;
+            }
+        }
+
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+}
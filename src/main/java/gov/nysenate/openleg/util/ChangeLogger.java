@@ -3,105 +3,336 @@ package gov.nysenate.openleg.util;
 import gov.nysenate.openleg.model.Change;
 import gov.nysenate.openleg.util.Storage.Status;
 
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
+/**
+ * Tracks the set of storage keys changed while processing data so that the changes can
+ * be pushed out to services.
+ * <p>
+ * Each ChangeLogger keeps the latest change for every key in memory. When constructed with
+ * a log file, every change is also appended to the file so that the log is durable and can be
+ * tailed by consumers from a byte offset with {@link #tail(File, long)}. Appends are buffered
+ * until {@link #flush()}, which processors call once per SOBI block.
+ * Because the file is append-only it can hold many entries for the same key; {@link #compact()}
+ * rewrites it with only the latest change for each key. Compacting moves records, so it is
+ * only done when explicitly asked for and never while consumers are tailing the file.
+ * <p>
+ * Log files use the compact binary {@link ChangeFile} format. Older tab separated text logs
+ * can still be read with {@link #readFromFile(File)}.
+ * <p>
+ * A key that is created and then deleted again is dropped from memory, but a DELETED change
+ * is still appended to the file since a consumer may already have tailed the NEW one. Only
+ * reading or compacting the whole file cancels such pairs out. Older logs appended these with
+ * the UNKNOWN status instead, which is read back the same way.
+ * <p>
+ * Instances are thread safe. The date context is tracked per thread.
+ */
 public class ChangeLogger
 {
     private static final Logger logger = Logger.getLogger(ChangeLogger.class);
-    private static HashMap<String, Change> changeLog = new HashMap<String, Change>();
 
     public static Pattern keyPattern = Pattern.compile("([0-9]+)/([^/]+)/(.*)");
 
-    public static SimpleDateFormat dateFormat = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    public static Pattern changePattern = Pattern.compile("\\s*(.*?)\\s+("+StringUtils.join(Storage.Status.values(), "|")+")\\s+(.*)");
 
-    private static File sourceFile;
-    private static Date datetime;
+    public static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
 
-    public static void clearLog()
+    /**
+     * The latest change for each key.
+     */
+    private final HashMap<String, Change> changeLog = new HashMap<String, Change>();
+
+    /**
+     * The file that changes are appended to, null for memory only logs.
+     */
+    private final File logFile;
+
+    private DataOutputStream logWriter;
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+
+    private final ThreadLocal<Date> datetime = new ThreadLocal<Date>();
+
+    /**
+     * A set of compacted changes read from a change log file and the offset to continue
+     * reading from for the next set of changes.
+     */
+    public static class Segment
     {
-        ChangeLogger.changeLog.clear();
+        private final List<Entry<String, Change>> entries;
+        private final long nextOffset;
+
+        public Segment(List<Entry<String, Change>> entries, long nextOffset)
+        {
+            this.entries = entries;
+            this.nextOffset = nextOffset;
+        }
+
+        /**
+         * @return - The changes in this segment, sorted by key.
+         */
+        public List<Entry<String, Change>> getEntries()
+        {
+            return entries;
+        }
+
+        /**
+         * @return - The byte offset immediately after the last change in this segment.
+         */
+        public long getNextOffset()
+        {
+            return nextOffset;
+        }
     }
 
-    public static List<Entry<String, Change>> getEntries()
+    /**
+     * Creates a memory only change log.
+     */
+    public ChangeLogger()
     {
-        // Use alphabetical ordering for consistency
-        List<Entry<String, Change>> entries = new ArrayList<Entry<String, Change>>(changeLog.entrySet());
-        Collections.sort(entries, new Comparator<Entry<String, Change>>() {
-            public int compare(Entry<String, Change> a, Entry<String, Change> b)
-            {
-                if (a.getKey() == null) {
-                    return -1;
+        this(null);
+    }
+
+    /**
+     * Creates a change log that appends every change to the given file.
+     *
+     * @param logFile - The file to append changes to. null for a memory only log.
+     */
+    public ChangeLogger(File logFile)
+    {
+        this.logFile = logFile;
+    }
+
+    /**
+     * @return - The file changes are appended to; null for memory only logs.
+     */
+    public File getLogFile()
+    {
+        return logFile;
+    }
+
+    public synchronized void clearLog()
+    {
+        changeLog.clear();
+    }
+
+    public synchronized List<Entry<String, Change>> getEntries()
+    {
+        return sortEntries(changeLog);
+    }
+
+    public synchronized HashMap<String, Change> getChangeLog()
+    {
+        return new HashMap<String, Change>(changeLog);
+    }
+
+    /**
+     * Adds all the changes from another log into this one. Changes in the other log
+     * replace any changes to the same keys in this log.
+     *
+     * @param other - The log to merge in.
+     */
+    public void merge(ChangeLogger other)
+    {
+        merge(other.getEntries());
+    }
+
+    /**
+     * Adds the given changes into this log, replacing any changes to the same keys.
+     *
+     * @param entries - The changes to merge in.
+     */
+    public synchronized void merge(List<Entry<String, Change>> entries)
+    {
+        for (Entry<String, Change> entry : entries) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Writes the latest change for every key to the given change file in key order.
+     *
+     * @param outFile - The file to write to. Existing contents are replaced.
+     * @throws IOException
+     */
+    public synchronized void writeToFile(File outFile) throws IOException
+    {
+        writeEntries(outFile, getEntries());
+    }
+
+    /**
+     * Replaces the current log with the changes from the given file. Both binary change files
+     * and older text change logs are accepted.
+     *
+     * @param inFile - The change log file to read.
+     * @throws IOException
+     */
+    public synchronized void readFromFile(File inFile) throws IOException
+    {
+        changeLog.clear();
+        if (ChangeFile.isChangeFile(inFile)) {
+            ChangeFile.Reader reader = new ChangeFile.Reader(inFile, 0);
+            try {
+                readRecords(reader, changeLog, true);
+                if (reader.isTruncated()) {
+                    logger.error("Ignoring partial change record at offset "+reader.getOffset()+" of "+inFile);
                 }
-                else {
-                    return a.getKey().compareTo(b.getKey());
+            }
+            finally {
+                reader.close();
+            }
+        }
+        else {
+            LineIterator lines = FileUtils.lineIterator(inFile, "UTF-8");
+            try {
+                while (lines.hasNext()) {
+                    parseLine(lines.nextLine(), changeLog, dateFormat);
                 }
             }
-        });
-        return entries;
+            finally {
+                lines.close();
+            }
+        }
+        changeLog.values().removeAll(Collections.singleton(null));
     }
 
-    public static void writeToFile(File outFile) throws IOException
+    /**
+     * Replaces the current log with the changes from the given lines. Malformed lines are
+     * logged and skipped.
+     *
+     * @param lines - Lines in the text change log format.
+     */
+    public synchronized void readFromLines(Iterable<String> lines)
     {
-        StringBuffer out = new StringBuffer();
-        for (Entry<String, Change> entry : ChangeLogger.getEntries()) {
-            Date date = entry.getValue().getTime();
-            out.append(entry.getKey()+"\t"+entry.getValue().getStatus()+"\t"+dateFormat.format(date).toString()+"\n");
+        changeLog.clear();
+        for (String line : lines) {
+            parseLine(line, changeLog, dateFormat);
         }
-        FileUtils.write(outFile,out.toString());
+        changeLog.values().removeAll(Collections.singleton(null));
     }
 
-    public static void readFromFile(File inFile) throws IOException
+    /**
+     * Rewrites the log file with only the latest change for each key in it, dropping keys that
+     * were created and deleted again within the file. Every change in the file is kept, not
+     * just the ones logged by this instance.
+     * <p>
+     * Byte offsets into the old file are invalid afterwards, so consumers tailing the log
+     * must start again from 0.
+     *
+     * @throws IOException - If the file can't be read in full, e.g. because it ends in a partial
+     *                       record, since compacting would drop it.
+     */
+    public synchronized void compact() throws IOException
     {
-        ChangeLogger.readFromLines(FileUtils.readLines(inFile));
+        if (logFile == null || !logFile.exists()) {
+            return;
+        }
+
+        closeWriter();
+        HashMap<String, Change> changes = new HashMap<String, Change>();
+        ChangeFile.Reader reader = new ChangeFile.Reader(logFile, 0);
+        try {
+            readRecords(reader, changes, true);
+            if (reader.isTruncated()) {
+                throw new IOException("Not compacting "+logFile+"; it ends in a partial record at offset "+reader.getOffset());
+            }
+        }
+        finally {
+            reader.close();
+        }
+        changes.values().removeAll(Collections.singleton(null));
+
+        File tempFile = new File(logFile.getPath()+".tmp");
+        writeEntries(tempFile, sortEntries(changes));
+        FileUtils.deleteQuietly(logFile);
+        FileUtils.moveFile(tempFile, logFile);
     }
 
-    public static void readFromLines(Iterable<String> lines)
+    /**
+     * Writes out any changes appended since the last flush so consumers tailing the file can
+     * see them.
+     */
+    public synchronized void flush()
     {
-        ChangeLogger.clearLog();
-        Pattern changePattern = Pattern.compile("\\s*(.*?)\\s+("+StringUtils.join(Storage.Status.values(), "|")+")\\s+(.*)");
-        changeLog = new HashMap<String, Change>();
-        for (String line : lines) {
-            if (!line.isEmpty() && !line.matches("\\s*#")) {
-                Matcher changeLine = changePattern.matcher(line);
-                if (changeLine.find()) {
-                    try {
-                        Date date = dateFormat.parse(changeLine.group(3));
-                        Matcher keyMatcher = keyPattern.matcher(changeLine.group(1));
-                        if (keyMatcher.find()) {
-                            String otype = keyMatcher.group(2);
-                            String oid = keyMatcher.group(3);
-                            changeLog.put(changeLine.group(1), new Change(oid, otype, Storage.Status.valueOf(changeLine.group(2).toUpperCase()), date));
-                        }
-                        else {
-                            logger.error("Invalid key format for changelog line: "+line);
-                        }
-                    }
-                    catch (ParseException e) {
-                        logger.error("Invalid date format for changeLog line:"+line,e);
-                    }
-                }
-                else {
-                    logger.fatal("Malformed change line: "+line);
-                    System.exit(0);
+        if (logWriter == null) {
+            return;
+        }
+
+        try {
+            logWriter.flush();
+        }
+        catch (IOException e) {
+            logger.error("Unable to flush change log "+logFile, e);
+        }
+    }
+
+    /**
+     * Closes the log file. It will be reopened for appending if more changes are logged.
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException
+    {
+        closeWriter();
+    }
+
+    /**
+     * Reads the changes appended to a change file after the given byte offset. Multiple
+     * changes to the same key are compacted to the latest one. A key created and deleted
+     * again comes back as DELETED unless reading from 0, since the NEW change may have been
+     * read by an earlier tail.
+     * <p>
+     * Reading stops at a partial record, which is left for the next tail once the writer has
+     * flushed the rest of it.
+     *
+     * @param inFile - The change file to read.
+     * @param offset - The byte offset to start reading from. Must be a record boundary
+     *                 returned by a previous call, or 0 for the start of the file.
+     * @return The changes after the offset and the offset to continue from next time.
+     * @throws IOException - If a record is corrupt or the file can't be read.
+     */
+    public static Segment tail(File inFile, long offset) throws IOException
+    {
+        HashMap<String, Change> changes = new HashMap<String, Change>();
+        long nextOffset = offset;
+
+        if (inFile.exists() && inFile.length() > 0) {
+            ChangeFile.Reader reader = new ChangeFile.Reader(inFile, offset);
+            try {
+                readRecords(reader, changes, offset == 0);
+                nextOffset = reader.getOffset();
+                if (reader.isTruncated()) {
+                    logger.debug("Partial change record at offset "+nextOffset+" of "+inFile);
                 }
             }
+            finally {
+                reader.close();
+            }
         }
+
+        changes.values().removeAll(Collections.singleton(null));
+        return new Segment(sortEntries(changes), nextOffset);
     }
 
     /**
@@ -109,9 +340,8 @@ public class ChangeLogger
      *
      * @param key
      * @param storage
-     * @param block
      */
-    public static void record(String key, Storage storage)
+    public synchronized void record(String key, Storage storage)
     {
         Matcher keyMatcher = keyPattern.matcher(key);
         if (!keyMatcher.find()) {
@@ -121,32 +351,34 @@ public class ChangeLogger
 
         String otype = keyMatcher.group(2);
         String oid = keyMatcher.group(3);
+        Application.getMetrics().increment("changelog.record");
 
         Change change = changeLog.get(key);
         if (change == null) {
-            changeLog.put(key, new Change(oid, otype, storage.status(key), ChangeLogger.datetime));
+            put(key, new Change(oid, otype, storage.status(key), getContextDate()));
         }
         else if (change.getStatus() == Status.DELETED) {
             // If it was previously deleted, make it new
-            changeLog.put(key, new Change(oid, otype, Status.NEW, ChangeLogger.datetime));
+            put(key, new Change(oid, otype, Status.NEW, getContextDate()));
         }
         else if (change.getStatus() != Status.NEW) {
             // Don't change a status marked as NEW
-            changeLog.put(key, new Change(oid, otype, Status.MODIFIED, ChangeLogger.datetime));
+            put(key, new Change(oid, otype, Status.MODIFIED, getContextDate()));
         }
     }
 
-    public static void delete(String key, Storage storage)
+    public synchronized void delete(String key, Storage storage)
     {
+        Application.getMetrics().increment("changelog.delete");
         Change change = changeLog.get(key);
         if (change != null) {
             // Already a change to this key waiting to be pushed to services.
             if (change.getStatus() == Status.NEW) {
                 // If new, just remove it.
-                changeLog.remove(key);
+                remove(key, change);
             } else if (change.getStatus() == Status.MODIFIED){
                 // Can't process a Modification since its file has been deleted.
-                change.setStatus(Status.DELETED);
+                put(key, new Change(change.getOid(), change.getOtype(), Status.DELETED, change.getTime()));
             }
         } else {
             // Otherwise make sure to leave a trace of the object
@@ -154,7 +386,7 @@ public class ChangeLogger
             if (keyMatcher.find()) {
                 String otype = keyMatcher.group(2);
                 String oid = keyMatcher.group(3);
-                changeLog.put(key, new Change(oid, otype, Status.DELETED, ChangeLogger.datetime));
+                put(key, new Change(oid, otype, Status.DELETED, getContextDate()));
             }
             else {
                 logger.error("Invalid changelog key: "+key);
@@ -162,16 +394,167 @@ public class ChangeLogger
         }
     }
 
-    public static void setContext(File sourceFile, Date datetime)
+    /**
+     * @param datetime - The date to record changes made by the current thread with.
+     */
+    public void setContext(Date datetime)
+    {
+        this.datetime.set(datetime);
+    }
+
+    /**
+     * @return - The date set for the current thread's context, or now if no context was set.
+     */
+    private Date getContextDate()
+    {
+        Date date = datetime.get();
+        return date != null ? date : new Date();
+    }
+
+    private synchronized void put(String key, Change change)
     {
-        ChangeLogger.sourceFile = sourceFile;
-        ChangeLogger.datetime = datetime;
+        changeLog.put(key, change);
+        append(key, change);
     }
 
-    public static HashMap<String, Change> getChangeLog()
+    /**
+     * Drops a NEW change that never needs pushing from memory. The file still gets a DELETED
+     * change since a consumer tailing it may already have read the NEW one.
+     */
+    private synchronized void remove(String key, Change change)
     {
-        return changeLog;
+        changeLog.remove(key);
+        append(key, new Change(change.getOid(), change.getOtype(), Status.DELETED, getContextDate()));
     }
 
+    private void append(String key, Change change)
+    {
+        if (logFile == null) {
+            return;
+        }
 
+        try {
+            if (logWriter == null) {
+                logWriter = ChangeFile.openForAppend(logFile);
+            }
+            ChangeFile.write(logWriter, key, change);
+        }
+        catch (IOException e) {
+            logger.error("Unable to append to change log "+logFile+": "+key, e);
+        }
+    }
+
+    private void closeWriter() throws IOException
+    {
+        if (logWriter != null) {
+            logWriter.close();
+            logWriter = null;
+        }
+    }
+
+    /**
+     * Reads change records into the given map. When reading from the start of the file, keys
+     * that were created and deleted again are stored as null since no one can have seen them;
+     * callers should strip nulls afterwards. Otherwise the NEW change may already have been
+     * read, so the delete is kept. UNKNOWN changes from older logs count as deletes.
+     *
+     * @param wholeFile - True if the reader started at the beginning of the file.
+     * @throws IOException - If a record is corrupt.
+     */
+    private static void readRecords(ChangeFile.Reader reader, HashMap<String, Change> changes, boolean wholeFile) throws IOException
+    {
+        Set<String> created = new HashSet<String>();
+        Entry<String, Change> entry;
+        while ((entry = reader.read()) != null) {
+            Change change = entry.getValue();
+            if (!changes.containsKey(entry.getKey()) && change.getStatus() == Status.NEW) {
+                created.add(entry.getKey());
+            }
+            if (change.getStatus() == Status.UNKNOWN) {
+                change = new Change(change.getOid(), change.getOtype(), Status.DELETED, change.getTime());
+            }
+            changes.put(entry.getKey(), change);
+        }
+
+        if (wholeFile) {
+            for (String key : created) {
+                if (changes.get(key).getStatus() == Status.DELETED) {
+                    changes.put(key, null);
+                }
+            }
+        }
+    }
+
+    private static void writeEntries(File outFile, List<Entry<String, Change>> entries) throws IOException
+    {
+        FileUtils.deleteQuietly(outFile);
+        DataOutputStream out = ChangeFile.openForAppend(outFile);
+        try {
+            for (Entry<String, Change> entry : entries) {
+                ChangeFile.write(out, entry.getKey(), entry.getValue());
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Parses a single text change log line into the given map. UNKNOWN changes are stored as null
+     * so that they replace earlier changes to the key; callers should strip nulls afterwards.
+     */
+    private static void parseLine(String line, HashMap<String, Change> changes, SimpleDateFormat dateFormat)
+    {
+        if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+            return;
+        }
+
+        Matcher changeLine = changePattern.matcher(line);
+        if (!changeLine.find()) {
+            logger.error("Malformed change line: "+line);
+            return;
+        }
+
+        Matcher keyMatcher = keyPattern.matcher(changeLine.group(1));
+        if (!keyMatcher.find()) {
+            logger.error("Invalid key format for changelog line: "+line);
+            return;
+        }
+
+        try {
+            Date date = dateFormat.parse(changeLine.group(3));
+            Status status = Storage.Status.valueOf(changeLine.group(2).toUpperCase());
+            if (status == Status.UNKNOWN) {
+                changes.put(changeLine.group(1), null);
+            }
+            else {
+                changes.put(changeLine.group(1), new Change(keyMatcher.group(3), keyMatcher.group(2), status, date));
+            }
+        }
+        catch (ParseException e) {
+            logger.error("Invalid date format for changeLog line:"+line,e);
+        }
+    }
+
+    private static List<Entry<String, Change>> sortEntries(HashMap<String, Change> changes)
+    {
+        List<Entry<String, Change>> entries = new ArrayList<Entry<String, Change>>();
+        for (Entry<String, Change> entry : changes.entrySet()) {
+            entries.add(new SimpleEntry<String, Change>(entry.getKey(), entry.getValue()));
+        }
+
+        // Use alphabetical ordering for consistency
+        Collections.sort(entries, new Comparator<Entry<String, Change>>() {
+            public int compare(Entry<String, Change> a, Entry<String, Change> b)
+            {
+                if (a.getKey() == null) {
+                    return -1;
+                }
+                else {
+                    return a.getKey().compareTo(b.getKey());
+                }
+            }
+        });
+        return entries;
+    }
 }
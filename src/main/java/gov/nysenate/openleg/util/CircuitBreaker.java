@@ -0,0 +1,143 @@
+package gov.nysenate.openleg.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tracks consecutive failures of a remote service and stops calls to it once it looks down.
+ * <p>
+ * The breaker starts closed. After <code>threshold</code> failures in a row it opens and
+ * rejects calls for <code>resetTimeout</code> milliseconds. Once that passes a single trial
+ * call is let through (half open); a success closes the breaker again and a failure reopens it.
+ * <p>
+ * Pushes are made by short lived processes, so the state can be saved to and loaded from a
+ * file to carry failures over from one run to the next.
+ */
+public class CircuitBreaker
+{
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int threshold;
+    private final long resetTimeout;
+
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openedAt = 0;
+
+    /**
+     * @param threshold - Consecutive failures needed to open the breaker.
+     * @param resetTimeout - Milliseconds to wait before allowing a trial call through an open breaker.
+     */
+    public CircuitBreaker(int threshold, long resetTimeout)
+    {
+        this.threshold = threshold;
+        this.resetTimeout = resetTimeout;
+    }
+
+    public int getThreshold()
+    {
+        return threshold;
+    }
+
+    public long getResetTimeout()
+    {
+        return resetTimeout;
+    }
+
+    public synchronized State getState()
+    {
+        return state;
+    }
+
+    /**
+     * @return - True if a call may be made now. Moves an open breaker to half open once
+     *           the reset timeout has passed.
+     */
+    public synchronized boolean allowRequest()
+    {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= resetTimeout) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    public synchronized void recordSuccess()
+    {
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure()
+    {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= threshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Replaces the current state with the state saved to the given file. Does nothing if the
+     * file doesn't exist.
+     *
+     * @param stateFile - A file written by {@link #save(File)}.
+     * @throws IOException
+     */
+    public synchronized void load(File stateFile) throws IOException
+    {
+        if (!stateFile.exists()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(stateFile);
+        try {
+            properties.load(in);
+        }
+        finally {
+            in.close();
+        }
+
+        try {
+            state = State.valueOf(properties.getProperty("state", State.CLOSED.name()));
+            failures = Integer.parseInt(properties.getProperty("failures", "0"));
+            openedAt = Long.parseLong(properties.getProperty("openedAt", "0"));
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("Invalid circuit breaker state in "+stateFile, e);
+        }
+    }
+
+    /**
+     * Writes the current state to the given file, replacing its contents.
+     *
+     * @param stateFile - The file to save to.
+     * @throws IOException
+     */
+    public synchronized void save(File stateFile) throws IOException
+    {
+        Properties properties = new Properties();
+        properties.setProperty("state", state.name());
+        properties.setProperty("failures", String.valueOf(failures));
+        properties.setProperty("openedAt", String.valueOf(openedAt));
+
+        File tempFile = new File(stateFile.getPath()+".tmp");
+        OutputStream out = new FileOutputStream(tempFile);
+        try {
+            properties.store(out, "Circuit breaker state");
+        }
+        finally {
+            out.close();
+        }
+        FileUtils.deleteQuietly(stateFile);
+        FileUtils.moveFile(tempFile, stateFile);
+    }
+}
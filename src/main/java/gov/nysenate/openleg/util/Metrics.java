@@ -0,0 +1,286 @@
+package gov.nysenate.openleg.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig.Feature;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+
+/**
+ * Thread safe registry of named counters and latency histograms for the data processing
+ * pipeline. Metric names are dot separated, e.g. bill.block.4 or storage.miss.
+ * <p>
+ * Metrics can be written out as a JSON or CSV report and are exposed through JMX
+ * while registered.
+ */
+public class Metrics implements MetricsMBean
+{
+    private static final Logger logger = Logger.getLogger(Metrics.class);
+
+    public static final String OBJECT_NAME = "gov.nysenate.openleg:type=Metrics";
+
+    /**
+     * Upper bounds (inclusive) of the latency histogram buckets in milliseconds. A final
+     * overflow bucket holds everything slower than the last bound.
+     */
+    public static final long[] BUCKET_BOUNDS = {1, 5, 10, 50, 100, 500, 1000, 5000, 10000};
+
+    /**
+     * A single named metric. Counters only use the count; timed metrics also
+     * track total/max latency and a histogram.
+     */
+    public static class Stat
+    {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length+1);
+
+        public void increment(long amount)
+        {
+            count.addAndGet(amount);
+        }
+
+        public void record(long nanos)
+        {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+
+            long millis = nanos / 1000000;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+        }
+
+        public long getCount()
+        {
+            return count.get();
+        }
+
+        public double getTotalMillis()
+        {
+            return totalNanos.get() / 1000000.0;
+        }
+
+        public double getMaxMillis()
+        {
+            return maxNanos.get() / 1000000.0;
+        }
+
+        public double getMeanMillis()
+        {
+            long count = getCount();
+            return count == 0 ? 0 : getTotalMillis() / count;
+        }
+
+        public long getBucket(int bucket)
+        {
+            return buckets.get(bucket);
+        }
+    }
+
+    private final ConcurrentHashMap<String, Stat> stats = new ConcurrentHashMap<String, Stat>();
+
+    /**
+     * @param name - The name of the metric to fetch.
+     * @return The metric registered under the given name, created if necessary.
+     */
+    public Stat get(String name)
+    {
+        Stat stat = stats.get(name);
+        if (stat == null) {
+            Stat newStat = new Stat();
+            stat = stats.putIfAbsent(name, newStat);
+            if (stat == null) {
+                stat = newStat;
+            }
+        }
+        return stat;
+    }
+
+    /**
+     * Increments the counter for the named metric by one.
+     *
+     * @param name - The name of the metric to increment.
+     */
+    public void increment(String name)
+    {
+        get(name).increment(1);
+    }
+
+    /**
+     * Records a single timed event for the named metric.
+     *
+     * @param name - The name of the metric to record to.
+     * @param startNanos - The System.nanoTime() value when the event started.
+     */
+    public void record(String name, long startNanos)
+    {
+        get(name).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return - All metric names in alphabetical order.
+     */
+    public List<String> getNames()
+    {
+        List<String> names = new ArrayList<String>(stats.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Writes the current metrics to file. Files ending in .csv are written as CSV,
+     * everything else is written as JSON.
+     *
+     * @param outFile - The file to write the report to.
+     * @throws IOException
+     */
+    public void writeReport(File outFile) throws IOException
+    {
+        if (outFile.getName().toLowerCase().endsWith(".csv")) {
+            FileUtils.write(outFile, toCsv());
+        }
+        else {
+            FileUtils.write(outFile, toJson());
+        }
+    }
+
+    public String toJson() throws IOException
+    {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.enable(Feature.INDENT_OUTPUT);
+        ObjectNode root = mapper.createObjectNode();
+        for (String name : getNames()) {
+            Stat stat = stats.get(name);
+            ObjectNode node = root.putObject(name);
+            node.put("count", stat.getCount());
+            node.put("totalMillis", stat.getTotalMillis());
+            node.put("meanMillis", stat.getMeanMillis());
+            node.put("maxMillis", stat.getMaxMillis());
+            ArrayNode histogram = node.putArray("histogram");
+            for (int i = 0; i <= BUCKET_BOUNDS.length; i++) {
+                histogram.add(stat.getBucket(i));
+            }
+        }
+        return mapper.writeValueAsString(root);
+    }
+
+    public String toCsv()
+    {
+        StringBuilder out = new StringBuilder("name,count,totalMillis,meanMillis,maxMillis");
+        for (long bound : BUCKET_BOUNDS) {
+            out.append(",le").append(bound).append("ms");
+        }
+        out.append(",over").append(BUCKET_BOUNDS[BUCKET_BOUNDS.length-1]).append("ms\n");
+
+        for (String name : getNames()) {
+            Stat stat = stats.get(name);
+            out.append(name).append(',').append(stat.getCount());
+            out.append(',').append(String.format(Locale.US, "%.3f,%.3f,%.3f", stat.getTotalMillis(), stat.getMeanMillis(), stat.getMaxMillis()));
+            for (int i = 0; i <= BUCKET_BOUNDS.length; i++) {
+                out.append(',').append(stat.getBucket(i));
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Exposes these metrics through the platform MBean server. Failures are logged
+     * and otherwise ignored; metrics are still collected for the final report.
+     */
+    public void register()
+    {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        }
+        catch (JMException e) {
+            logger.error("Unable to register metrics with JMX", e);
+        }
+    }
+
+    public void unregister()
+    {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        catch (JMException e) {
+            logger.error("Unable to unregister metrics from JMX", e);
+        }
+    }
+
+    /**{@inheritDoc}*/
+    public String[] getMetricNames()
+    {
+        return getNames().toArray(new String[]{});
+    }
+
+    /**{@inheritDoc}*/
+    public long getCount(String name)
+    {
+        Stat stat = stats.get(name);
+        return stat == null ? 0 : stat.getCount();
+    }
+
+    /**{@inheritDoc}*/
+    public double getMeanMillis(String name)
+    {
+        Stat stat = stats.get(name);
+        return stat == null ? 0 : stat.getMeanMillis();
+    }
+
+    /**{@inheritDoc}*/
+    public String getReport()
+    {
+        return toCsv();
+    }
+
+    /**{@inheritDoc}*/
+    public void reset()
+    {
+        stats.clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder out = new StringBuilder();
+        for (Entry<String, Stat> entry : stats.entrySet()) {
+            out.append(entry.getKey()).append('=').append(entry.getValue().getCount()).append(' ');
+        }
+        return out.toString().trim();
+    }
+}
@@ -0,0 +1,34 @@
+package gov.nysenate.openleg.util;
+
+/**
+ * JMX management interface for {@link Metrics}.
+ */
+public interface MetricsMBean
+{
+    /**
+     * @return - All metric names in alphabetical order.
+     */
+    public String[] getMetricNames();
+
+    /**
+     * @param name - The metric name.
+     * @return - The number of events recorded for the metric.
+     */
+    public long getCount(String name);
+
+    /**
+     * @param name - The metric name.
+     * @return - The mean latency of the metric in milliseconds.
+     */
+    public double getMeanMillis(String name);
+
+    /**
+     * @return - A CSV report of all metrics.
+     */
+    public String getReport();
+
+    /**
+     * Clears all collected metrics.
+     */
+    public void reset();
+}
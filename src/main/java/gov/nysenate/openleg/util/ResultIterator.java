@@ -1,6 +1,7 @@
 package gov.nysenate.openleg.util;
 
 import gov.nysenate.openleg.api.ApiHelper;
+import gov.nysenate.openleg.lucene.Lucene;
 import gov.nysenate.openleg.model.Result;
 import gov.nysenate.openleg.model.SenateResponse;
 
@@ -10,6 +11,7 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import org.apache.log4j.Logger;
+import org.apache.lucene.search.Query;
 
 public class ResultIterator implements Iterator<Result>, Iterable<Result> {
     private static Logger logger = Logger.getLogger(ResultIterator.class);
@@ -32,9 +34,14 @@ public class ResultIterator implements Iterator<Result>, Iterable<Result> {
     //true when search has been completed
     private boolean exhausted = false;
 
+    //cursor for the next page of results; null until the first page is fetched
+    private String cursor;
+
     public String sortBy;
     public boolean reverse;
     public String query;
+    //typed query, used instead of query when set
+    public Query typedQuery;
 
     public SenateResponse senateResponse;
 
@@ -42,8 +49,21 @@ public class ResultIterator implements Iterator<Result>, Iterable<Result> {
         this(query, SIZE, PAGE, SORT_BY, REVERSE);
     }
 
+    public ResultIterator(Query query) {
+        this(query, SIZE, PAGE, SORT_BY, REVERSE);
+    }
+
     public ResultIterator(String query, int max, int page, String sortBy, boolean reverse) {
+        this(max, page, sortBy, reverse);
         this.query = query;
+    }
+
+    public ResultIterator(Query query, int max, int page, String sortBy, boolean reverse) {
+        this(max, page, sortBy, reverse);
+        this.typedQuery = query;
+    }
+
+    private ResultIterator(int max, int page, String sortBy, boolean reverse) {
         this.max = max;
         this.page = page;
         this.sortBy = sortBy;
@@ -81,6 +101,7 @@ public class ResultIterator implements Iterator<Result>, Iterable<Result> {
         pos = 0;
         size = 0;
         exhausted = false;
+        cursor = null;
         senateResponse = null;
     }
 
@@ -90,8 +111,19 @@ public class ResultIterator implements Iterator<Result>, Iterable<Result> {
         }
 
         try {
-            int start = (page-1)*max;
-            senateResponse = Application.getLucene().search(query, start, max, sortBy, reverse);
+            // Continue from the last hit instead of re-collecting every earlier page
+            Lucene lucene = Application.getLucene();
+            if (cursor == null) {
+                int start = (page-1)*max;
+                senateResponse = typedQuery != null
+                        ? lucene.search(typedQuery, start, max, sortBy, reverse)
+                        : lucene.search(query, start, max, sortBy, reverse);
+            }
+            else {
+                senateResponse = typedQuery != null
+                        ? lucene.searchAfter(typedQuery, cursor, max, sortBy, reverse)
+                        : lucene.searchAfter(query, cursor, max, sortBy, reverse);
+            }
             page++;
         }
         catch (IOException e) {
@@ -107,7 +139,8 @@ public class ResultIterator implements Iterator<Result>, Iterable<Result> {
 
         ArrayList<Result> results = senateResponse.getResults();
 
-        if(results.size() != max)
+        cursor = (String)senateResponse.getMetadataByKey("cursor");
+        if(results.size() != max || cursor == null)
             exhausted = true;
 
         size = results.size();
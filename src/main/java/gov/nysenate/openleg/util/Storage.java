@@ -75,8 +75,24 @@ public class Storage
      */
     protected HashSet<String> dirty;
 
+    /**
+     * Content hashes of bills as they were last read from file or saved. Used to detect
+     * saves that don't actually change anything.
+     */
+    protected HashMap<String, String> contentHashes;
+
     private final StorageJsonConverter converter;
 
+    /**
+     * Records changes made to this storage so they can be pushed out to services.
+     */
+    protected ChangeLogger changeLogger;
+
+    /**
+     * True if values can only be read, see {@link #Storage(File, boolean)}.
+     */
+    protected final boolean readOnly;
+
 
     /**
      * Create a new storage connection to the given file path.
@@ -94,8 +110,24 @@ public class Storage
      * @param storageDir - Base directory for the storage on the file system
      */
     public Storage(File storageDir)
+    {
+        this(storageDir, false);
+    }
+
+    /**
+     * Create a new storage connection to the given directory.
+     * <p>
+     * A read only storage never changes its memory or content hashes, so it can be read from
+     * many threads at once, e.g. by web requests. Setting or deleting keys throws an
+     * IllegalStateException.
+     *
+     * @param storageDir - Base directory for the storage on the file system
+     * @param readOnly - True to only allow reading values.
+     */
+    public Storage(File storageDir, boolean readOnly)
     {
         this.logger  = Logger.getLogger(this.getClass());
+        this.readOnly = readOnly;
 
         this.storageDir = storageDir;
         this.publishedDir = new File(storageDir, "published");
@@ -103,8 +135,10 @@ public class Storage
 
         this.memory  = new HashMap<String, BaseObject>();
         this.dirty   = new HashSet<String>();
+        this.contentHashes = new HashMap<String, String>();
 
         this.converter = new StorageJsonConverter(this);
+        this.changeLogger = new ChangeLogger();
     }
 
     /**
@@ -120,15 +154,20 @@ public class Storage
         BaseObject value = null;
         if (memory.containsKey(key)) {
             logger.debug("Cache hit: "+key);
+            Application.getMetrics().increment("storage.hit");
             value = memory.get(key);
         }
         else {
             logger.debug("Cache miss: "+key);
+            Application.getMetrics().increment("storage.miss");
             File storageFile = getStorageFile(key);
             if (storageFile != null) {
                 try {
                     if (cls == Bill.class) {
                         value = this.converter.readBill(storageFile);
+                        if (!readOnly) {
+                            contentHashes.put(key, this.converter.contentHash((Bill)value));
+                        }
                     }
                     else if (cls == Agenda.class) {
                         value = this.converter.readAgenda(storageFile);
@@ -165,16 +204,52 @@ public class Storage
     /**
      * Writes the new value to system memory. To propagate these changes to the file system
      * you must first flush the key (value.getOid()).
+     * <p>
+     * Forgets the content hash for the key, so the next {@link #setIfChanged} always writes.
      *
      * @param value - The new value to store
      */
     public void set(BaseObject value)
     {
+        checkWritable();
         String key = this.key(value);
+        contentHashes.remove(key);
         memory.put(key, value);
         dirty.add(key);
     }
 
+    /**
+     * Writes the new value to system memory only if its content differs from the content
+     * last read from file or saved for the same key. Unchanged values are not marked dirty.
+     * <p>
+     * Only bills are compared; all other values are always written.
+     *
+     * @param value - The new value to store
+     * @return true if the value was written and marked dirty, false if it was unchanged.
+     */
+    public boolean setIfChanged(BaseObject value)
+    {
+        String key = this.key(value);
+        String hash = null;
+        if (value instanceof Bill) {
+            try {
+                hash = this.converter.contentHash((Bill)value);
+                if (hash.equals(contentHashes.get(key))) {
+                    logger.debug("Unchanged key: "+key);
+                    return false;
+                }
+            }
+            catch (IOException e) {
+                logger.error("Unable to compute content hash for key: "+key, e);
+            }
+        }
+        set(value);
+        if (hash != null) {
+            contentHashes.put(key, hash);
+        }
+        return true;
+    }
+
     /**
      * @param value - The storage key for this object
      */
@@ -191,11 +266,25 @@ public class Storage
      */
     public void del(String key)
     {
+        checkWritable();
         logger.debug("Deleting key: "+key);
+        contentHashes.remove(key);
         memory.put(key, null);
         dirty.add(key);
     }
 
+    public boolean isReadOnly()
+    {
+        return readOnly;
+    }
+
+    private void checkWritable()
+    {
+        if (readOnly) {
+            throw new IllegalStateException("Storage at "+storageDir+" is read only.");
+        }
+    }
+
     /**
      * Clears out the storage memory. This operation does not affect changes written to
      * the file system. Make sure to flush first, all unwritten changes (including deletions!)
@@ -212,7 +301,7 @@ public class Storage
         }
 
         memory.clear();
-
+        contentHashes.clear();
     }
 
     /**
@@ -229,6 +318,7 @@ public class Storage
             dirty.remove(key);
         }
         memory.remove(key);
+        contentHashes.remove(key);
     }
 
     /**
@@ -237,10 +327,12 @@ public class Storage
     public void flush()
     {
         logger.info("Flushing "+dirty.size()+" objects.");
+        long start = System.nanoTime();
         for(String key : dirty.toArray(new String[]{})) {
             flush(key);
         }
         dirty.clear();
+        Application.getMetrics().record("storage.flush", start);
     }
 
     /**
@@ -290,6 +382,7 @@ public class Storage
 
         // Mark the key as clean by removing from the dirty set.
         dirty.remove(key);
+        Application.getMetrics().increment("storage.write");
     }
 
     /**
@@ -318,6 +411,22 @@ public class Storage
         }
     }
 
+    /**
+     * @return - The change log for this storage.
+     */
+    public ChangeLogger getChangeLogger()
+    {
+        return changeLogger;
+    }
+
+    /**
+     * @param changeLogger - The new change log for this storage.
+     */
+    public void setChangeLogger(ChangeLogger changeLogger)
+    {
+        this.changeLogger = changeLogger;
+    }
+
     /**
      * @return - Base directory of the storage on the file system.
      */
@@ -347,6 +456,34 @@ public class Storage
         return null;
     }
 
+    /**
+     * @param key - The key to get a storage file for.
+     * @return - The published storage file. null if the key isn't published.
+     */
+    public File getPublishedStorageFile(String key)
+    {
+        File storageFile = getPublishedFile(key);
+        return storageFile.exists() ? storageFile : null;
+    }
+
+    /**
+     * @return - The keys of every published object in storage, in no particular order.
+     */
+    public List<String> getPublishedKeys()
+    {
+        List<String> keys = new ArrayList<String>();
+        if (!publishedDir.isDirectory()) {
+            return keys;
+        }
+
+        String root = publishedDir.getAbsolutePath()+File.separator;
+        for (File file : FileUtils.listFiles(publishedDir, new String[] {"json"}, true)) {
+            String path = file.getAbsolutePath().substring(root.length());
+            keys.add(path.substring(0, path.length()-".json".length()).replace(File.separatorChar, '/'));
+        }
+        return keys;
+    }
+
     /**
      * @param key - The key to fetch a file for.
      * @return - File for the published key.
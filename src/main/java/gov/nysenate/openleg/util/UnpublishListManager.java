@@ -34,7 +34,7 @@ public class UnpublishListManager {
         this(Application.getConfig().getValue("env.unpublished"));
     }
 
-    public Set<String> getUnpublishedBills(){
+    public synchronized Set<String> getUnpublishedBills(){
         if(unpublishedBills!=null){
             return unpublishedBills;
         }
@@ -53,7 +53,7 @@ public class UnpublishListManager {
         }
     }
 
-    public void addUnpublishedBill(String billId){
+    public synchronized void addUnpublishedBill(String billId){
         FileWriter fileWriter;
         try{
             if(unpublishedBills==null){
@@ -9,9 +9,13 @@ CREATE TABLE `changelog` (
   `id` int(11) NOT NULL AUTO_INCREMENT,
   `otype` varchar(255) NOT NULL,
   `oid` varchar(255) NOT NULL,
+  `year` int(11) NOT NULL DEFAULT 0,
   `time` datetime NOT NULL,
   `status` enum('NEW','MODIFIED','DELETED') NOT NULL,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `time` (`time`),
+  KEY `otype_time` (`otype`,`time`),
+  KEY `oid_time` (`oid`,`time`)
 ) ENGINE=INNODB DEFAULT CHARSET=utf8 COLLATE=utf8_unicode_ci;
 
 CREATE TABLE `report` (
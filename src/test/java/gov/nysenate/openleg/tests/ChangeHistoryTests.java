@@ -0,0 +1,122 @@
+package gov.nysenate.openleg.tests;
+
+import static org.junit.Assert.assertEquals;
+import gov.nysenate.openleg.api.ChangeFeed;
+import gov.nysenate.openleg.model.Change;
+import gov.nysenate.openleg.model.admin.ChangeLogDAO;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.dbutils.QueryRunner;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeHistoryTests
+{
+    private JdbcDataSource datasource;
+    private QueryRunner run;
+
+    @Before
+    public void setup() throws SQLException
+    {
+        datasource = new JdbcDataSource();
+        datasource.setURL("jdbc:h2:mem:history;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        run = new QueryRunner(datasource);
+        run.update("CREATE TABLE changelog (id int NOT NULL AUTO_INCREMENT PRIMARY KEY, otype varchar(255) NOT NULL, oid varchar(255) NOT NULL, year int NOT NULL DEFAULT 0, time datetime NOT NULL, status varchar(16) NOT NULL)");
+
+        // Several changes share each timestamp and some are reported out of time order
+        for (int i = 0; i < 25; i++) {
+            run.update("INSERT INTO changelog (otype, oid, time, status) VALUES (?, ?, ?, ?)",
+                    i % 2 == 0 ? "bill" : "calendar", "S"+i+"-2013", new Timestamp(1368000000000L + (i % 5 == 4 ? -1 : i / 4) * 1000), "NEW");
+        }
+    }
+
+    @After
+    public void teardown() throws SQLException
+    {
+        run.update("DROP TABLE changelog");
+    }
+
+    @Test
+    public void testKeysetPaging() throws SQLException
+    {
+        ChangeLogDAO dao = new ChangeLogDAO(datasource);
+        int afterId = 0;
+        int seen = 0;
+        List<Change> page;
+        do {
+            page = dao.getChangesAfter(afterId, null, null, 3);
+            for (Change change : page) {
+                assertEquals("S"+seen+"-2013", change.getOid());
+                seen++;
+            }
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size()-1).getId();
+            }
+        } while (page.size() == 3);
+        assertEquals(25, seen);
+
+        assertEquals(13, dao.getChangesAfter(0, "bill", null, 100).size());
+    }
+
+    @Test
+    public void testFeedCursor() throws IOException
+    {
+        // Every page carries a cursor, including the short and empty pages at the end
+        ChangeFeed feed = new ChangeFeed(new ChangeLogDAO(datasource), null);
+        assertEquals("10", feed(feed, "0").get("next").getTextValue());
+        assertEquals("20", feed(feed, "10").get("next").getTextValue());
+
+        JsonNode page = feed(feed, "20");
+        assertEquals(5, page.get("changes").size());
+        assertEquals("25", page.get("next").getTextValue());
+
+        page = feed(feed, "25");
+        assertEquals(0, page.get("changes").size());
+        assertEquals("25", page.get("next").getTextValue());
+    }
+
+    /**
+     * Requests a page of 10 changes after the given cursor.
+     */
+    private JsonNode feed(ChangeFeed feed, String after) throws IOException
+    {
+        final Map<String, String> params = new HashMap<String, String>();
+        params.put("after", after);
+        params.put("limit", "10");
+        HttpServletRequest request = (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpServletRequest.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                return method.getName().equals("getParameter") ? params.get(args[0]) : null;
+            }
+        });
+
+        final StringWriter body = new StringWriter();
+        HttpServletResponse response = (HttpServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpServletResponse.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                return method.getName().equals("getWriter") ? new PrintWriter(body) : null;
+            }
+        });
+
+        feed.write(request, response);
+        return new ObjectMapper().readTree(body.toString());
+    }
+}
@@ -0,0 +1,199 @@
+package gov.nysenate.openleg.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import gov.nysenate.openleg.model.Bill;
+import gov.nysenate.openleg.util.ChangeFile;
+import gov.nysenate.openleg.util.ChangeLogger;
+import gov.nysenate.openleg.util.Storage;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeLoggerTests
+{
+    private File workDir;
+    private File logFile;
+    private Storage storage;
+
+    @Before
+    public void setup() throws IOException
+    {
+        workDir = new File(FileUtils.getTempDirectory(), "openleg-changelog-test");
+        FileUtils.deleteQuietly(workDir);
+        FileUtils.forceMkdir(workDir);
+        logFile = new File(workDir, "change.log");
+        storage = new Storage(new File(workDir, "json"));
+        storage.setChangeLogger(new ChangeLogger(logFile));
+        storage.getChangeLogger().setContext(new Date());
+    }
+
+    @After
+    public void teardown()
+    {
+        FileUtils.deleteQuietly(workDir);
+    }
+
+    private String save(String billId)
+    {
+        Bill bill = new Bill(billId, 2013);
+        bill.setPublishDate(new Date());
+        storage.set(bill);
+        String key = storage.key(bill);
+        storage.getChangeLogger().record(key, storage);
+        storage.getChangeLogger().flush();
+        return key;
+    }
+
+    @Test
+    public void testTail() throws IOException
+    {
+        ChangeLogger changeLogger = storage.getChangeLogger();
+        String first = save("S1-2013");
+        save("S2-2013");
+
+        ChangeLogger.Segment segment = ChangeLogger.tail(logFile, 0);
+        assertEquals(2, segment.getEntries().size());
+        assertEquals(first, segment.getEntries().get(0).getKey());
+        assertEquals(Storage.Status.NEW, segment.getEntries().get(0).getValue().getStatus());
+
+        // Appends aren't visible until the logger is flushed
+        Bill bill = new Bill("S3-2013", 2013);
+        bill.setPublishDate(new Date());
+        storage.set(bill);
+        changeLogger.record(storage.key(bill), storage);
+        assertEquals(0, ChangeLogger.tail(logFile, segment.getNextOffset()).getEntries().size());
+
+        // Only changes appended after the offset are returned
+        String third = save("S3-2013");
+        ChangeLogger.Segment next = ChangeLogger.tail(logFile, segment.getNextOffset());
+        assertEquals(1, next.getEntries().size());
+        assertEquals(third, next.getEntries().get(0).getKey());
+
+        // New changes that are deleted again cancel out in memory, but the file still records
+        // the delete for consumers that already read the new change
+        changeLogger.delete(third, storage);
+        changeLogger.flush();
+        assertEquals(2, changeLogger.getEntries().size());
+        ChangeLogger.Segment deleted = ChangeLogger.tail(logFile, next.getNextOffset());
+        assertEquals(1, deleted.getEntries().size());
+        assertEquals(third, deleted.getEntries().get(0).getKey());
+        assertEquals(Storage.Status.DELETED, deleted.getEntries().get(0).getValue().getStatus());
+    }
+
+    @Test
+    public void testCompact() throws IOException
+    {
+        ChangeLogger changeLogger = storage.getChangeLogger();
+        String key = save("S1-2013");
+        changeLogger.record(key, storage);
+        changeLogger.delete(save("S2-2013"), storage);
+        changeLogger.flush();
+
+        // Logging never compacts on its own
+        assertEquals(1, ChangeLogger.tail(logFile, 0).getEntries().size());
+        long length = logFile.length();
+        changeLogger.compact();
+        assertTrue(logFile.length() < length);
+
+        ChangeLogger reader = new ChangeLogger();
+        reader.readFromFile(logFile);
+        assertEquals(1, reader.getEntries().size());
+        assertEquals(key, reader.getEntries().get(0).getKey());
+
+        // Changes from earlier runs that aren't in memory are kept
+        ChangeLogger later = new ChangeLogger(logFile);
+        storage.setChangeLogger(later);
+        later.setContext(new Date());
+        String other = save("S3-2013");
+        later.compact();
+        reader = new ChangeLogger();
+        reader.readFromFile(logFile);
+        assertEquals(2, reader.getEntries().size());
+        assertEquals(key, reader.getEntries().get(0).getKey());
+        assertEquals(other, reader.getEntries().get(1).getKey());
+    }
+
+    @Test
+    public void testPartialRecord() throws IOException
+    {
+        save("S1-2013");
+        long length = logFile.length();
+
+        // A half written record is ignored until it is complete
+        FileOutputStream out = new FileOutputStream(logFile, true);
+        out.write(new byte[] {1, 1, 7});
+        out.close();
+        ChangeLogger.Segment segment = ChangeLogger.tail(logFile, 0);
+        assertEquals(1, segment.getEntries().size());
+        assertEquals(length, segment.getNextOffset());
+
+        // Compacting would drop it, so it's refused
+        try {
+            storage.getChangeLogger().compact();
+            fail("Compacted a change log ending in a partial record");
+        }
+        catch (IOException e) {}
+
+        RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+        file.setLength(length);
+        file.close();
+        save("S2-2013");
+        assertEquals(1, ChangeLogger.tail(logFile, segment.getNextOffset()).getEntries().size());
+    }
+
+    @Test
+    public void testCorruptRecord() throws IOException
+    {
+        save("S1-2013");
+        long length = logFile.length();
+
+        // A complete record with an unknown object type code
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(logFile, true));
+        out.writeByte(1);
+        out.writeByte(99);
+        out.writeShort(2013);
+        out.writeUTF("S2-2013");
+        out.writeLong(0);
+        out.close();
+        save("S3-2013");
+
+        // Records after it would be lost, so reading fails rather than stopping early
+        try {
+            ChangeLogger.tail(logFile, 0);
+            fail("Read past a corrupt change record");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("offset "+length));
+        }
+    }
+
+    @Test
+    public void testTextFormats() throws IOException
+    {
+        String key = save("S1-2013");
+        StringWriter text = new StringWriter();
+        ChangeFile.exportText(logFile, text);
+        assertTrue(text.toString().startsWith(key+"\tNEW\t"));
+
+        // Old text logs can still be read
+        File textFile = new File(workDir, "change.txt");
+        FileUtils.writeLines(textFile, Arrays.asList(text.toString().trim(), "malformed line"));
+        ChangeLogger reader = new ChangeLogger();
+        reader.readFromFile(textFile);
+        assertEquals(1, reader.getEntries().size());
+        assertEquals(key, reader.getEntries().get(0).getKey());
+    }
+}
@@ -0,0 +1,509 @@
+package gov.nysenate.openleg.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import gov.nysenate.openleg.api.ApiHelper;
+import gov.nysenate.openleg.lucene.BillNumberFilter;
+import gov.nysenate.openleg.lucene.DocumentBuilder;
+import gov.nysenate.openleg.lucene.FilterCache;
+import gov.nysenate.openleg.lucene.Lucene;
+import gov.nysenate.openleg.lucene.OpenLegislationQueryParser;
+import gov.nysenate.openleg.model.Action;
+import gov.nysenate.openleg.model.Bill;
+import gov.nysenate.openleg.model.Person;
+import gov.nysenate.openleg.model.Result;
+import gov.nysenate.openleg.model.SenateResponse;
+import gov.nysenate.openleg.model.Vote;
+import gov.nysenate.openleg.util.Application;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LuceneTests
+{
+    private File indexDir;
+    private Lucene writer;
+    private Lucene reader;
+
+    @Before
+    public void setup() throws IOException
+    {
+        indexDir = new File(FileUtils.getTempDirectory(), "openleg-lucene-test");
+        FileUtils.deleteQuietly(indexDir);
+        writer = new Lucene(indexDir, false);
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        if (reader != null) {
+            reader.close();
+        }
+        writer.close();
+        FileUtils.deleteQuietly(indexDir);
+    }
+
+    private Document document(String oid)
+    {
+        Document doc = new Document();
+        doc.add(new StringField("otype", "bill", Store.YES));
+        doc.add(new StringField("oid", oid.toLowerCase(), Store.YES));
+        return doc;
+    }
+
+    @Test
+    public void testBackgroundRefresh() throws Exception
+    {
+        reader = new Lucene(indexDir, true, 50);
+        long generation = reader.getGeneration();
+
+        // Commits from another process are picked up without any searches
+        writer.addDocuments(Arrays.asList(document("S1-2013")));
+        writer.commit();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reader.getGeneration() == generation && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(generation + 1, reader.getGeneration());
+        assertEquals(1, reader.search("otype:bill", 0, 10, null, false).getMetadata().get("totalresults"));
+    }
+
+    @Test
+    public void testCommitRefreshesWriter() throws IOException
+    {
+        long generation = writer.getGeneration();
+        writer.addDocuments(Arrays.asList(document("S1-2013")));
+        writer.commit();
+        assertTrue(writer.getGeneration() > generation);
+    }
+
+    @Test
+    public void testSearchAfter() throws IOException
+    {
+        List<Document> docs = new ArrayList<Document>();
+        for (int i = 0; i < 25; i++) {
+            docs.add(document(String.format("S%02d-2013", i)));
+        }
+        writer.addDocuments(docs);
+        writer.commit();
+
+        // Cursor pages line up with offset pages
+        String cursor = null;
+        for (int page = 0; page < 3; page++) {
+            SenateResponse after = writer.searchAfter("otype:bill", cursor, 10, "oid", false);
+            SenateResponse offset = writer.search("otype:bill", page*10, 10, "oid", false);
+            assertEquals(offset.getMetadata().get("totalresults"), after.getMetadata().get("totalresults"));
+            assertEquals(offset.getResults().size(), after.getResults().size());
+            for (int i = 0; i < after.getResults().size(); i++) {
+                assertEquals(offset.getResults().get(i).getOid(), after.getResults().get(i).getOid());
+            }
+            cursor = (String)after.getMetadataByKey("cursor");
+        }
+        assertNull(cursor);
+
+        // A cursor only works with the sort it came from
+        cursor = (String)writer.searchAfter("otype:bill", null, 10, "oid", false).getMetadataByKey("cursor");
+        for (String sort : Arrays.asList("modified", "", "oid")) {
+            try {
+                writer.searchAfter("otype:bill", cursor, 10, sort, sort.equals("oid"));
+                fail("Cursor accepted for sort "+sort);
+            }
+            catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testLeanDocuments() throws IOException
+    {
+        Bill bill = new Bill("S1-2013", 2013);
+        bill.setTitle("An act to amend the tax law");
+        bill.setFulltext("Lengthy bill text");
+        bill.setModifiedDate(new Date());
+        bill.setPublishDate(new Date());
+
+        DocumentBuilder.setStoreData(false);
+        try {
+            Document doc = DocumentBuilder.build(bill);
+            assertNull(doc.get("odata"));
+            assertFalse(doc.getField("full").fieldType().stored());
+            assertEquals("2013/bill/S1-2013", doc.get("okey"));
+            writer.addDocuments(Arrays.asList(doc));
+            writer.commit();
+        }
+        finally {
+            DocumentBuilder.setStoreData(true);
+        }
+
+        // Listings are built from the stored fields alone
+        SenateResponse response = writer.search("otype:bill", 0, 10, null, false);
+        ApiHelper.buildSearchResultList(response);
+        Result result = response.getResults().get(0);
+        assertNull(result.getData());
+        assertEquals("An act to amend the tax law", result.getTitle());
+        assertEquals("2013/bill/S1-2013", result.getFields().get("okey"));
+        assertEquals(1, writer.search("lengthy", 0, 10, null, false).getMetadata().get("totalresults"));
+    }
+
+    @Test
+    public void testSortFields()
+    {
+        Bill bill = new Bill("S1-2013", 2013);
+        bill.setTitle("An act to amend the tax law");
+        bill.setModifiedDate(new Date());
+        bill.setPublishDate(new Date());
+
+        // Every sortable field has exactly one doc values companion
+        Document doc = DocumentBuilder.build(bill);
+        for (String name : DocumentBuilder.SORT_FIELDS) {
+            int count = 0;
+            for (IndexableField field : doc.getFields(name)) {
+                if (field.fieldType().docValueType() != null) {
+                    count++;
+                }
+            }
+            assertEquals(name, 1, count);
+        }
+
+        for (IndexableField field : doc.getFields("when")) {
+            if (field.fieldType().docValueType() != null) {
+                assertEquals(DocValuesType.NUMERIC, field.fieldType().docValueType());
+            }
+        }
+    }
+
+    @Test
+    public void testFilterCache() throws Exception
+    {
+        List<Document> docs = new ArrayList<Document>();
+        for (int i = 0; i < 20; i++) {
+            Document doc = document("S"+i+"-2013");
+            doc.add(new StringField("active", String.valueOf(i % 2 == 0), Store.YES));
+            doc.add(new IntField("year", i < 10 ? 2011 : 2013, Store.YES));
+            docs.add(doc);
+        }
+        writer.addDocuments(docs);
+        writer.commit();
+
+        FilterCache cache = new FilterCache(10);
+        OpenLegislationQueryParser parser = new OpenLegislationQueryParser(new StandardAnalyzer(Version.LUCENE_46));
+        FilterCache.SplitQuery split = cache.split(parser.parse("otype:bill AND active:true AND year:[2013 TO 2014]", "osearch"));
+        assertTrue(split.filter != null);
+        assertEquals(3, cache.size());
+        BooleanQuery scored = (BooleanQuery)split.query;
+        assertEquals(1, scored.clauses().size());
+        assertTrue(scored.clauses().get(0).getQuery() instanceof MatchAllDocsQuery);
+
+        // Filtered searches match the same documents as the scored query
+        assertEquals(5, writer.search("otype:bill AND active:true AND year:[2013 TO 2014]", 0, 100, null, false).getMetadata().get("totalresults"));
+        assertEquals(15, writer.search("otype:bill AND (active:true OR year:[2013 TO 2014])", 0, 100, null, false).getMetadata().get("totalresults"));
+        assertEquals(1, writer.search("otype:bill AND oid:s3-2013", 0, 100, null, false).getMetadata().get("totalresults"));
+    }
+
+    @Test
+    public void testQueryBuilder() throws Exception
+    {
+        List<Document> docs = new ArrayList<Document>();
+        for (String oid : Arrays.asList("S1-2013", "S1A-2013", "S1B-2013", "S10-2013", "S1-2011", "J5-2013", "R7-2013")) {
+            Document doc = document(oid);
+            doc.add(new StringField("active", String.valueOf(!oid.equals("S1B-2013")), Store.YES));
+            doc.add(new IntField("year", Integer.parseInt(oid.split("-")[1]), Store.YES));
+            doc.add(new TextField("billno", oid, Store.NO));
+            docs.add(doc);
+        }
+        writer.addDocuments(docs);
+        writer.commit();
+
+        // Typed queries match the same documents as their parsed equivalents
+        assertEquals(writer.search("otype:bill AND active:true AND year:[2013 TO 2014]", 0, 100, null, false).getMetadata().get("totalresults"),
+                writer.search(writer.queryBuilder().otype("bill").active().inSession(2014).query(), 0, 100, null, false).getMetadata().get("totalresults"));
+        assertEquals(2, writer.search(writer.queryBuilder().otype("resolution").query(), 0, 100, null, false).getMetadata().get("totalresults"));
+        assertEquals(3, writer.search(writer.queryBuilder().otype("bill").amendmentsOf("S1A-2013").query(), 0, 100, null, false).getMetadata().get("totalresults"));
+        assertEquals(1, writer.search(writer.queryBuilder().oid("S1-2011").query(), 0, 100, null, false).getMetadata().get("totalresults"));
+        assertEquals(1, writer.search(writer.queryBuilder().otype("bill").text("oid:s10-2013").query(), 0, 100, null, false).getMetadata().get("totalresults"));
+        assertEquals(7, writer.search(writer.queryBuilder().query(), 0, 100, null, false).getMetadata().get("totalresults"));
+
+        // The text of a built query, used as the search term in views, searches the same way
+        Query resolutions = writer.queryBuilder().otype("resolution").active().inSession(2013).query();
+        assertEquals(2, writer.search(resolutions.toString(), 0, 100, null, false).getMetadata().get("totalresults"));
+    }
+
+    @Test
+    public void testResultCache() throws Exception
+    {
+        writer.addDocuments(Arrays.asList(document("S1-2013")));
+        writer.commit();
+
+        // Repeated searches are served from the cache until the next commit
+        long hits = Application.getMetrics().get("lucene.cache.hit").getCount();
+        writer.search("otype:bill", 0, 10, "oid", false);
+        writer.search(writer.queryBuilder().otype("bill").query(), 0, 10, "oid", false);
+        assertEquals(hits + 1, Application.getMetrics().get("lucene.cache.hit").getCount());
+
+        writer.addDocuments(Arrays.asList(document("S2-2013")));
+        writer.commit();
+        assertEquals(2, writer.search("otype:bill", 0, 10, "oid", false).getMetadata().get("totalresults"));
+        assertEquals(hits + 1, Application.getMetrics().get("lucene.cache.hit").getCount());
+    }
+
+    @Test
+    public void testResultFields() throws Exception
+    {
+        Bill bill = new Bill("S1-2013", 2013);
+        bill.setTitle("An act to amend the tax law");
+        bill.setFulltext("Lengthy bill text");
+        bill.setModifiedDate(new Date());
+        bill.setPublishDate(new Date());
+        writer.addDocuments(Arrays.asList(DocumentBuilder.build(bill)));
+        writer.commit();
+
+        // Listings skip the full text unless it is asked for
+        Result listed = writer.search(writer.queryBuilder().otype("bill").query(), 0, 10, null, false).getResults().get(0);
+        assertEquals("S1-2013", listed.getOid());
+        assertEquals("An act to amend the tax law", listed.getFields().get("title"));
+        assertFalse(listed.getFields().containsKey("full"));
+
+        Set<String> fields = new HashSet<String>(Arrays.asList("full"));
+        Result full = writer.search(writer.queryBuilder().otype("bill").query(), 0, 10, null, false, fields).getResults().get(0);
+        assertEquals("Lengthy bill text", full.getFields().get("full"));
+        assertFalse(full.getFields().containsKey("title"));
+        assertTrue(full.getData() != null);
+    }
+
+    @Test
+    public void testResultDecoding() throws Exception
+    {
+        Bill bill = new Bill("S1-2013", 2013);
+        bill.setTitle("An act to amend the tax law");
+        bill.setModifiedDate(new Date());
+        bill.setPublishDate(new Date());
+        writer.addDocuments(Arrays.asList(DocumentBuilder.build(bill)));
+        writer.commit();
+
+        // Stored data is decoded once per result, however many times the list is built
+        SenateResponse response = writer.search("otype:bill", 0, 10, null, false);
+        Result result = ApiHelper.buildSearchResultList(response).get(0);
+        Bill decoded = (Bill)result.getObject();
+        assertEquals("An act to amend the tax law", decoded.getTitle());
+        assertEquals("An act to amend the tax law", result.getTitle());
+        ApiHelper.buildSearchResultList(response);
+        assertTrue(decoded == response.getResults().get(0).getObject());
+    }
+
+    @Test
+    public void testParallelSearch() throws Exception
+    {
+        // Several commits leave several segments to search in parallel
+        for (int segment = 0; segment < 4; segment++) {
+            List<Document> docs = new ArrayList<Document>();
+            for (int i = 0; i < 10; i++) {
+                docs.add(document(String.format("S%d%02d-2013", segment, i)));
+            }
+            writer.addDocuments(docs);
+            writer.commit();
+        }
+
+        reader = new Lucene(indexDir, true, 0, 4);
+        assertEquals(4, reader.getSearchThreads());
+        String cursor = null;
+        for (int page = 0; page < 4; page++) {
+            SenateResponse parallel = reader.searchAfter("otype:bill", cursor, 10, "oid", false);
+            SenateResponse serial = writer.search("otype:bill", page*10, 10, "oid", false);
+            assertEquals(40, parallel.getMetadata().get("totalresults"));
+            for (int i = 0; i < 10; i++) {
+                assertEquals(serial.getResults().get(i).getOid(), parallel.getResults().get(i).getOid());
+            }
+            cursor = (String)parallel.getMetadataByKey("cursor");
+        }
+    }
+
+    @Test
+    public void testFullTextIndex() throws Exception
+    {
+        File fullTextDir = new File(FileUtils.getTempDirectory(), "openleg-lucene-fulltext-test");
+        FileUtils.deleteQuietly(fullTextDir);
+        writer.close();
+        writer = new Lucene(indexDir, fullTextDir, false, 0, 1);
+        try {
+            List<Document> docs = new ArrayList<Document>();
+            for (int i = 1; i <= 3; i++) {
+                Bill bill = new Bill("S"+i+"-2013", 2013);
+                bill.setTitle("An act to amend the tax law");
+                bill.setFulltext(i == 1 ? "School tax relief" : i == 2 ? "Highway repairs and other repairs" : "Highway repairs on the highway");
+                bill.setModifiedDate(new Date());
+                bill.setPublishDate(new Date());
+                docs.add(DocumentBuilder.build(bill));
+            }
+            writer.addDocuments(docs);
+            writer.commit();
+
+            // Full text lives only in its own index but is still searchable by field
+            Set<String> fields = new HashSet<String>(Arrays.asList("full"));
+            SenateResponse response = writer.search(writer.queryBuilder().otype("bill").text("full:school").query(), 0, 10, null, false, fields);
+            assertEquals(1, response.getMetadata().get("totalresults"));
+            assertEquals("S1-2013", response.getResults().get(0).getOid());
+            assertNull(response.getResults().get(0).getFields().get("full"));
+            assertEquals(3, writer.search("full:school OR full:highway", 0, 10, null, false).getMetadata().get("totalresults"));
+            assertEquals(2, writer.search("otype:bill AND NOT full:school", 0, 10, null, false).getMetadata().get("totalresults"));
+            assertEquals(0, writer.search("full:bridges", 0, 10, null, false).getMetadata().get("totalresults"));
+
+            // Unqualified searches match the text too, alone or with the rest of osearch
+            assertEquals(1, writer.search("school", 0, 10, null, false).getMetadata().get("totalresults"));
+            assertEquals(1, writer.search("tax AND school", 0, 10, null, false).getMetadata().get("totalresults"));
+            assertEquals(2, writer.search("tax AND NOT school", 0, 10, null, false).getMetadata().get("totalresults"));
+
+            // Matches by text are ranked by their full text score, alone or with the rest of osearch
+            assertEquals("S3-2013", writer.search("highway", 0, 10, null, false).getResults().get(0).getOid());
+            assertEquals("S3-2013", writer.search("tax AND highway", 0, 10, null, false).getResults().get(0).getOid());
+            assertEquals("S2-2013", writer.search("full:repairs", 0, 10, null, false).getResults().get(0).getOid());
+
+            // Deleting by query deletes the full text of the matching documents
+            writer.deleteDocumentsByQuery("oid:S2-2013 AND active:true");
+            writer.commit();
+            assertEquals(1, writer.search("full:highway", 0, 10, null, false).getMetadata().get("totalresults"));
+            DirectoryReader fullTextReader = DirectoryReader.open(FSDirectory.open(fullTextDir));
+            assertEquals(2, fullTextReader.numDocs());
+            fullTextReader.close();
+
+            // Replacing a document replaces its full text
+            Bill bill = new Bill("S1-2013", 2013);
+            bill.setFulltext("Bridges");
+            bill.setModifiedDate(new Date());
+            bill.setPublishDate(new Date());
+            writer.updateDocument(DocumentBuilder.build(bill));
+            writer.commit();
+            assertEquals(0, writer.search("full:school", 0, 10, null, false).getMetadata().get("totalresults"));
+            assertEquals(1, writer.search("full:bridges", 0, 10, null, false).getMetadata().get("totalresults"));
+        }
+        finally {
+            writer.close();
+            writer = new Lucene(indexDir, false);
+            FileUtils.deleteQuietly(fullTextDir);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFacets() throws Exception
+    {
+        List<Document> docs = new ArrayList<Document>();
+        String[] actions = {"REFERRED TO FINANCE", "amend and recommit to finance", "SIGNED CHAP.123", "print number 4a", null};
+        Bill firstBill = null;
+        for (int i = 1; i <= 5; i++) {
+            Bill bill = new Bill("S"+i+"-2013", 2013);
+            bill.setTitle("An act to amend the tax law");
+            bill.setCurrentCommittee(i <= 3 ? "FINANCE" : "HEALTH");
+            bill.setSponsor(new Person("SMITH"));
+            bill.setModifiedDate(new Date());
+            bill.setPublishDate(new Date());
+            if (actions[i-1] != null) {
+                bill.addAction(new Action(new Date(), actions[i-1], bill));
+            }
+            docs.add(DocumentBuilder.build(bill));
+            firstBill = firstBill == null ? bill : firstBill;
+        }
+
+        // Votes in the second year of the session are counted in that session
+        Vote vote = new Vote(firstBill, new SimpleDateFormat("yyyy-MM-dd").parse("2014-03-01"), Vote.VOTE_TYPE_FLOOR, "1");
+        vote.setModifiedDate(new Date());
+        vote.setPublishDate(new Date());
+        docs.add(DocumentBuilder.build(vote));
+        writer.addDocuments(docs);
+        writer.commit();
+
+        // Counts cover every hit, not just the page, and only the requested dimensions
+        Set<String> facets = new HashSet<String>(Arrays.asList("committee", "session", "status"));
+        SenateResponse response = writer.search(writer.queryBuilder().otype("bill").query(), 0, 1, "oid", false, null, facets);
+        assertEquals(1, response.getResults().size());
+        Map<String, Map<String, Integer>> counts = (Map<String, Map<String, Integer>>)response.getMetadataByKey("facets");
+        assertEquals(new HashSet<String>(Arrays.asList("committee", "session", "status")), counts.keySet());
+        assertEquals(Integer.valueOf(3), counts.get("committee").get("FINANCE"));
+        assertEquals(Integer.valueOf(2), counts.get("committee").get("HEALTH"));
+        assertEquals(Integer.valueOf(5), counts.get("session").get("2013"));
+        assertEquals(Integer.valueOf(2), counts.get("status").get("IN COMMITTEE"));
+        assertEquals(Integer.valueOf(1), counts.get("status").get("SIGNED"));
+        assertEquals(Integer.valueOf(1), counts.get("status").get("AMENDED"));
+        assertEquals(3, counts.get("status").size());
+
+        counts = (Map<String, Map<String, Integer>>)writer.search(writer.queryBuilder().query(), 0, 1, "oid", false, null, facets).getMetadataByKey("facets");
+        assertEquals(Collections.singletonMap("2013", 6), counts.get("session"));
+
+        // The vote has its bill's storage key
+        assertEquals(5, writer.getIndexedKeys().size());
+        assertTrue(writer.getIndexedKeys().contains("2013/bill/S1-2013"));
+        assertEquals("PASSED SENATE", DocumentBuilder.statusFacet("passed senate"));
+        assertEquals("DELIVERED TO GOVERNOR", DocumentBuilder.statusFacet("DELIVERED TO GOVERNOR"));
+        assertEquals("ON CALENDAR", DocumentBuilder.statusFacet("ADVANCED TO THIRD READING"));
+        assertEquals("OTHER", DocumentBuilder.statusFacet("HOME RULE REQUEST"));
+
+        // Filters and cursors apply to the counts the same way they apply to the hits
+        response = writer.searchAfter(writer.queryBuilder().otype("bill").text("committee:health").query(), null, 1, "oid", false, facets);
+        counts = (Map<String, Map<String, Integer>>)response.getMetadataByKey("facets");
+        assertEquals(1, counts.get("committee").size());
+        assertEquals(Integer.valueOf(2), counts.get("committee").get("HEALTH"));
+        assertNull(writer.search("otype:bill", 0, 1, "oid", false).getMetadataByKey("facets"));
+    }
+
+    @Test
+    public void testBillNumberTerms() throws Exception
+    {
+        List<Document> docs = new ArrayList<Document>();
+        for (String billId : Arrays.asList("S1-2013", "S1A-2013", "S10-2013")) {
+            Bill bill = new Bill(billId, 2013);
+            bill.setSameAs(billId.equals("S1A-2013") ? "A0372B" : "A10");
+            bill.setTitle("Relates to bill A0372B");
+            bill.setModifiedDate(new Date());
+            bill.setPublishDate(new Date());
+            docs.add(DocumentBuilder.build(bill));
+        }
+        writer.addDocuments(docs);
+        writer.commit();
+
+        // Amendment families and same as bills match on the indexed base bill number
+        assertEquals("s1234-2013", BillNumberFilter.baseBillNumber("S01234A-2013"));
+        assertNull(BillNumberFilter.baseBillNumber("budget"));
+        assertEquals(2, writer.search(writer.queryBuilder().otype("bill").amendmentsOf("S1B-2013").query(), 0, 10, null, false).getMetadata().get("totalresults"));
+        assertEquals(1, writer.search("billno:s10-2013", 0, 10, null, false).getMetadata().get("totalresults"));
+        assertEquals(1, writer.search("sameas:A372", 0, 10, null, false).getMetadata().get("totalresults"));
+
+        // Query text isn't expanded, so a specific amendment only matches itself
+        assertEquals(1, writer.search("billno:S1A-2013", 0, 10, null, false).getMetadata().get("totalresults"));
+        assertEquals(0, writer.search("sameas:A372A", 0, 10, null, false).getMetadata().get("totalresults"));
+
+        // Only bill number fields are expanded; other text is indexed as written
+        assertEquals(3, writer.search("title:A0372B", 0, 10, null, false).getMetadata().get("totalresults"));
+        assertEquals(0, writer.search("title:A372", 0, 10, null, false).getMetadata().get("totalresults"));
+    }
+}
@@ -0,0 +1,114 @@
+package gov.nysenate.openleg.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gov.nysenate.openleg.util.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricsTests
+{
+    private File workDir;
+    private Metrics metrics;
+
+    @Before
+    public void setup() throws IOException
+    {
+        workDir = new File(FileUtils.getTempDirectory(), "openleg-metrics-test");
+        FileUtils.deleteQuietly(workDir);
+        FileUtils.forceMkdir(workDir);
+
+        metrics = new Metrics();
+        metrics.increment("storage.miss");
+        metrics.increment("storage.miss");
+        metrics.get("storage.hit").increment(5);
+
+        // 3ms, 3ms and 20s: two in the <= 5ms bucket and one in the overflow bucket
+        Metrics.Stat stat = metrics.get("bill.block");
+        stat.record(3000000);
+        stat.record(3000000);
+        stat.record(20000000000L);
+    }
+
+    @After
+    public void teardown()
+    {
+        FileUtils.deleteQuietly(workDir);
+    }
+
+    @Test
+    public void testCounts()
+    {
+        assertEquals(Arrays.asList("bill.block", "storage.hit", "storage.miss"), metrics.getNames());
+        assertEquals(2, metrics.getCount("storage.miss"));
+        assertEquals(5, metrics.getCount("storage.hit"));
+        assertEquals(0, metrics.getCount("storage.flush"));
+
+        Metrics.Stat stat = metrics.get("bill.block");
+        assertEquals(3, stat.getCount());
+        assertEquals(20000.0, stat.getMaxMillis(), 0.001);
+        assertEquals(20006.0 / 3, stat.getMeanMillis(), 0.001);
+        assertEquals(2, stat.getBucket(1));
+        assertEquals(1, stat.getBucket(Metrics.BUCKET_BOUNDS.length));
+    }
+
+    @Test
+    public void testJsonReport() throws IOException
+    {
+        File reportFile = new File(workDir, "metrics.json");
+        metrics.writeReport(reportFile);
+
+        JsonNode report = new ObjectMapper().readTree(reportFile);
+        assertEquals(2, report.get("storage.miss").get("count").getLongValue());
+        JsonNode block = report.get("bill.block");
+        assertEquals(3, block.get("count").getLongValue());
+        assertEquals(20006.0, block.get("totalMillis").getDoubleValue(), 0.001);
+        assertEquals(Metrics.BUCKET_BOUNDS.length+1, block.get("histogram").size());
+        assertEquals(2, block.get("histogram").get(1).getLongValue());
+    }
+
+    @Test
+    public void testCsvReport() throws IOException
+    {
+        File reportFile = new File(workDir, "metrics.csv");
+        metrics.writeReport(reportFile);
+
+        List<String> lines = FileUtils.readLines(reportFile);
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).startsWith("name,count,totalMillis,meanMillis,maxMillis,le1ms,"));
+        assertTrue(lines.get(0).endsWith(",over10000ms"));
+        assertEquals("bill.block,3,20006.000,6668.667,20000.000,0,2,0,0,0,0,0,0,0,1", lines.get(1));
+        assertEquals("storage.miss,2,0.000,0.000,0.000,0,0,0,0,0,0,0,0,0,0", lines.get(3));
+    }
+
+    @Test
+    public void testJmx() throws JMException
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        metrics.register();
+        try {
+            assertEquals(2L, server.invoke(name, "getCount", new Object[]{"storage.miss"}, new String[]{String.class.getName()}));
+        }
+        finally {
+            metrics.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
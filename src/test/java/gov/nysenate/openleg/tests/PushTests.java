@@ -0,0 +1,203 @@
+package gov.nysenate.openleg.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gov.nysenate.openleg.model.Change;
+import gov.nysenate.openleg.processors.DataProcessor;
+import gov.nysenate.openleg.services.ServiceBase;
+import gov.nysenate.openleg.util.CircuitBreaker;
+import gov.nysenate.openleg.util.Storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class PushTests
+{
+    private static class FakeService extends ServiceBase
+    {
+        static final AtomicInteger running = new AtomicInteger();
+        static volatile boolean overlapped = false;
+        final AtomicInteger calls = new AtomicInteger();
+        List<Entry<String, Change>> received;
+        Storage storage;
+        int failures;
+        final long delay;
+        String name = "fake"+System.identityHashCode(this);
+
+        FakeService(int failures, long delay)
+        {
+            this.failures = failures;
+            this.delay = delay;
+            this.retryDelay = 0;
+        }
+
+        @Override
+        public String getName()
+        {
+            return name;
+        }
+
+        @Override
+        public boolean process(List<Entry<String, Change>> changeLog, Storage storage) throws IOException
+        {
+            received = changeLog;
+            this.storage = storage;
+            if (running.incrementAndGet() > 1) {
+                overlapped = true;
+            }
+            try {
+                if (calls.incrementAndGet() <= failures) {
+                    throw new IOException("Failure "+calls.get());
+                }
+                Thread.sleep(delay);
+            }
+            catch (InterruptedException e) {
+                return false;
+            }
+            finally {
+                running.decrementAndGet();
+            }
+            return true;
+        }
+    }
+
+    private final List<Entry<String, Change>> changes = new ArrayList<Entry<String, Change>>();
+
+    @Test
+    public void testRetry()
+    {
+        FakeService flaky = new FakeService(2, 0);
+        FakeService broken = new FakeService(10, 0);
+        broken.setRetries(1);
+
+        assertTrue(new DataProcessor().push(null, changes, Arrays.<ServiceBase>asList(flaky)));
+        assertEquals(3, flaky.calls.get());
+
+        assertFalse(new DataProcessor().push(null, changes, Arrays.<ServiceBase>asList(broken)));
+        assertEquals(2, broken.calls.get());
+    }
+
+    @Test
+    public void testTimeout()
+    {
+        // A slow service times out without holding up the others, which run alongside it
+        FakeService slow = new FakeService(0, 60000);
+        slow.setTimeout(100);
+        FakeService steady = new FakeService(0, 500);
+        steady.setTimeout(1000);
+        FakeService fast = new FakeService(0, 0);
+
+        long start = System.currentTimeMillis();
+        assertFalse(new DataProcessor().push(null, changes, Arrays.<ServiceBase>asList(slow, steady, fast)));
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertEquals(1, steady.calls.get());
+        assertEquals(1, fast.calls.get());
+        assertTrue(FakeService.overlapped);
+    }
+
+    @Test
+    public void testSeparateStorage() throws IOException
+    {
+        File storageDir = new File(FileUtils.getTempDirectory(), "openleg-push-test");
+        FileUtils.deleteQuietly(storageDir);
+        try {
+            // Services read concurrently, so each gets its own read only storage
+            FakeService first = new FakeService(0, 0);
+            FakeService second = new FakeService(0, 0);
+            assertTrue(new DataProcessor().push(new Storage(storageDir), changes, Arrays.<ServiceBase>asList(first, second)));
+            assertTrue(first.storage != second.storage);
+            assertTrue(first.storage.isReadOnly());
+            assertEquals(storageDir, second.storage.getStorageDir());
+        }
+        finally {
+            FileUtils.deleteQuietly(storageDir);
+        }
+    }
+
+    @Test
+    public void testCircuitBreaker()
+    {
+        // The breaker opens after two failures so the third retry is never made
+        FakeService broken = new FakeService(10, 0);
+        broken.setRetries(5);
+        broken.setCircuitBreaker(new CircuitBreaker(2, 60000));
+
+        assertFalse(new DataProcessor().push(null, changes, Arrays.<ServiceBase>asList(broken)));
+        assertEquals(2, broken.calls.get());
+        assertEquals(CircuitBreaker.State.OPEN, broken.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void testCircuitBreakerAcrossPushes() throws IOException
+    {
+        File deadLetterDir = new File(FileUtils.getTempDirectory(), "openleg-breaker-test");
+        FileUtils.deleteQuietly(deadLetterDir);
+        try {
+            // Each push is a separate run with new service instances, as with ProcessData
+            for (int run = 0; run < 2; run++) {
+                DataProcessor process = new DataProcessor();
+                process.setDeadLetterDirectory(deadLetterDir);
+                FakeService broken = new FakeService(10, 0);
+                broken.name = "broken";
+                broken.setRetries(1);
+                broken.setCircuitBreaker(new CircuitBreaker(3, 60000));
+                assertFalse(process.push(null, changes, Arrays.<ServiceBase>asList(broken)));
+                assertEquals(run == 0 ? 2 : 1, broken.calls.get());
+            }
+
+            // The breaker opened during the second run and stays open for the third
+            FakeService broken = new FakeService(10, 0);
+            broken.name = "broken";
+            broken.setCircuitBreaker(new CircuitBreaker(3, 60000));
+            DataProcessor process = new DataProcessor();
+            process.setDeadLetterDirectory(deadLetterDir);
+            assertFalse(process.push(null, changes, Arrays.<ServiceBase>asList(broken)));
+            assertEquals(0, broken.calls.get());
+            assertEquals(CircuitBreaker.State.OPEN, broken.getCircuitBreaker().getState());
+        }
+        finally {
+            FileUtils.deleteQuietly(deadLetterDir);
+        }
+    }
+
+    @Test
+    public void testDeadLetters() throws IOException
+    {
+        File deadLetterDir = new File(FileUtils.getTempDirectory(), "openleg-deadletter-test");
+        FileUtils.deleteQuietly(deadLetterDir);
+        try {
+            DataProcessor process = new DataProcessor();
+            process.setDeadLetterDirectory(deadLetterDir);
+            FakeService down = new FakeService(10, 0);
+            down.setRetries(0);
+            FakeService up = new FakeService(0, 0);
+
+            changes.add(new SimpleEntry<String, Change>("2013/bill/S1-2013", new Change("S1-2013", "bill", Storage.Status.NEW, new Date())));
+            assertFalse(process.push(null, changes, Arrays.<ServiceBase>asList(down, up)));
+            assertTrue(process.getDeadLetterFile(down).exists());
+            assertFalse(process.getDeadLetterFile(up).exists());
+
+            // A later push without changes only redelivers to the service that failed
+            down.failures = 0;
+            assertTrue(process.push(null, new ArrayList<Entry<String, Change>>(), Arrays.<ServiceBase>asList(down, up)));
+            assertEquals(1, down.received.size());
+            assertEquals("2013/bill/S1-2013", down.received.get(0).getKey());
+            assertEquals(2, up.calls.get());
+            assertFalse(process.getDeadLetterFile(down).exists());
+        }
+        finally {
+            FileUtils.deleteQuietly(deadLetterDir);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package gov.nysenate.openleg.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gov.nysenate.openleg.model.Change;
+import gov.nysenate.openleg.processors.BillProcessor;
+import gov.nysenate.openleg.processors.DataProcessor;
+import gov.nysenate.openleg.util.ChangeLogger;
+import gov.nysenate.openleg.util.Storage;
+import gov.nysenate.openleg.util.UnpublishListManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplayTests
+{
+    private static final File SOBI_DIR = new File("src/test/resources/sobi");
+
+    private File workDir;
+    private File archiveDir;
+    private File storageDir;
+
+    @Before
+    public void setup() throws IOException
+    {
+        workDir = new File(FileUtils.getTempDirectory(), "openleg-replay-test");
+        FileUtils.deleteQuietly(workDir);
+        FileUtils.forceMkdir(workDir);
+        archiveDir = new File(workDir, "archive");
+        storageDir = new File(workDir, "json");
+        BillProcessor.setUnpublishListManager(new UnpublishListManager(new File(workDir, "unpublished.txt").getPath()));
+
+        // Archive the fixtures by calendar year; the 2011 session spans 2011 and 2012
+        for (File file : SOBI_DIR.listFiles()) {
+            String year = "20"+file.getName().substring(6, 8);
+            FileUtils.copyFileToDirectory(file, new File(new File(archiveDir, year), "bills"));
+        }
+    }
+
+    @After
+    public void teardown()
+    {
+        BillProcessor.setUnpublishListManager(null);
+        FileUtils.deleteQuietly(workDir);
+    }
+
+    @Test
+    public void testReplay() throws IOException
+    {
+        File logFile = new File(workDir, "replay.change.log");
+        ChangeLogger changes = new ChangeLogger(logFile);
+        assertTrue(new DataProcessor().replay(archiveDir, storageDir, Arrays.asList(2011, 2013), 2, changes));
+
+        // Both sessions' changes are merged into the one log and its file
+        Set<String> sessions = new HashSet<String>();
+        for (Entry<String, Change> entry : changes.getEntries()) {
+            sessions.add(entry.getKey().split("/")[0]);
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("2011", "2013")), sessions);
+        assertEquals(changes.getEntries().size(), ChangeLogger.tail(logFile, 0).getEntries().size());
+
+        // Replaying the sessions concurrently gives the same storage as ingesting every file in order
+        File expectedDir = new File(workDir, "expected");
+        List<File> files = new ArrayList<File>(FileUtils.listFiles(archiveDir, TrueFileFilter.INSTANCE, TrueFileFilter.INSTANCE));
+        Collections.sort(files, new Comparator<File>() {
+            public int compare(File a, File b)
+            {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        new DataProcessor().ingest(files, new Storage(expectedDir));
+
+        Collection<File> expectedFiles = FileUtils.listFiles(expectedDir, TrueFileFilter.INSTANCE, TrueFileFilter.INSTANCE);
+        assertFalse(expectedFiles.isEmpty());
+        for (File expected : expectedFiles) {
+            String path = expected.getPath().substring(expectedDir.getPath().length());
+            assertEquals(path, FileUtils.readFileToString(expected), FileUtils.readFileToString(new File(storageDir, path)));
+        }
+        assertEquals(expectedFiles.size(), FileUtils.listFiles(storageDir, TrueFileFilter.INSTANCE, TrueFileFilter.INSTANCE).size());
+    }
+}
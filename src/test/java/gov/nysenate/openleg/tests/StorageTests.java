@@ -0,0 +1,88 @@
+package gov.nysenate.openleg.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import gov.nysenate.openleg.model.Bill;
+import gov.nysenate.openleg.util.Storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StorageTests
+{
+    private File storageDir;
+    private Storage storage;
+
+    @Before
+    public void setup() throws IOException
+    {
+        storageDir = new File(FileUtils.getTempDirectory(), "openleg-storage-test");
+        FileUtils.deleteQuietly(storageDir);
+        FileUtils.forceMkdir(storageDir);
+        storage = new Storage(storageDir);
+    }
+
+    @After
+    public void teardown()
+    {
+        FileUtils.deleteQuietly(storageDir);
+    }
+
+    @Test
+    public void testSetIfChanged()
+    {
+        Bill bill = new Bill("S1234-2013", 2013);
+        bill.setTitle("An act to amend the tax law");
+        bill.setPublishDate(new Date());
+        String key = storage.key(bill);
+
+        assertTrue(storage.setIfChanged(bill));
+        storage.flush();
+        storage.clear();
+
+        // Re-applying the same data shouldn't dirty the key
+        Bill stored = storage.getBill("S1234", 2013);
+        stored.setTitle("An act to amend the tax law");
+        stored.addDataSource("SOBI.D130101.T000000.TXT");
+        assertFalse(storage.setIfChanged(stored));
+        assertEquals(Storage.Status.UNMODIFIED, storage.status(key));
+
+        stored.setTitle("An act to amend the tax law, in relation to fees");
+        assertTrue(storage.setIfChanged(stored));
+        assertEquals(Storage.Status.MODIFIED, storage.status(key));
+
+        // A plain set replaces the content the hash was taken from
+        stored.setTitle("An act to amend the tax law");
+        storage.set(stored);
+        stored.setTitle("An act to amend the tax law, in relation to fees");
+        assertTrue(storage.setIfChanged(stored));
+    }
+
+    @Test
+    public void testReadOnly()
+    {
+        Bill bill = new Bill("S1234-2013", 2013);
+        bill.setPublishDate(new Date());
+        storage.set(bill);
+        storage.flush();
+
+        Storage readOnly = new Storage(storageDir, true);
+        Bill stored = (Bill)readOnly.get(storage.key(bill), Bill.class);
+        assertEquals("S1234-2013", stored.getBillId());
+        try {
+            readOnly.set(stored);
+            fail("Read only storage accepted a value");
+        }
+        catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package gov.nysenate.openleg.tests;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal local HTTP/1.1 server standing in for Varnish. Records the request line and
+ * X-Ban-Url header of every request and answers each with a small 200 response.
+ */
+public class StubVarnishServer implements Runnable
+{
+    private final ServerSocket serverSocket;
+    private final int requestsPerConnection;
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /**
+     * @param requestsPerConnection - Close each connection after this many requests; 0 for never.
+     */
+    public StubVarnishServer(int requestsPerConnection) throws IOException
+    {
+        this.serverSocket = new ServerSocket(0);
+        this.requestsPerConnection = requestsPerConnection;
+        Thread thread = new Thread(this, "stub-varnish");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    public List<String> getRequests()
+    {
+        return new ArrayList<String>(requests);
+    }
+
+    public int getConnections()
+    {
+        return connections.get();
+    }
+
+    public void close() throws IOException
+    {
+        serverSocket.close();
+    }
+
+    public void run()
+    {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                new Thread(new Runnable() {
+                    public void run()
+                    {
+                        handle(socket);
+                    }
+                }).start();
+            }
+            catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void handle(Socket socket)
+    {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            OutputStream out = socket.getOutputStream();
+            int handled = 0;
+            String requestLine;
+            while ((requestLine = reader.readLine()) != null) {
+                String request = requestLine;
+                String header;
+                while ((header = reader.readLine()) != null && !header.isEmpty()) {
+                    if (header.startsWith("X-Ban-Url:")) {
+                        request += " "+header.substring(10).trim();
+                    }
+                }
+                requests.add(request);
+                handled++;
+
+                boolean close = requestsPerConnection > 0 && handled >= requestsPerConnection;
+                String body = "Purged";
+                out.write(("HTTP/1.1 200 OK\r\nContent-Length: "+body.length()+"\r\n"+(close ? "Connection: close\r\n" : "")+"\r\n"+body).getBytes("US-ASCII"));
+                out.flush();
+                if (close) {
+                    break;
+                }
+            }
+            socket.close();
+        }
+        catch (IOException e) {
+            // Client went away
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package gov.nysenate.openleg.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.nysenate.openleg.model.Change;
+import gov.nysenate.openleg.services.UpdateReporter;
+import gov.nysenate.openleg.util.Storage;
+
+import java.sql.SQLException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.handlers.ScalarHandler;
+import org.apache.log4j.Logger;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UpdateReporterTests
+{
+    private static Logger logger = Logger.getLogger(UpdateReporterTests.class);
+
+    private JdbcDataSource datasource;
+    private QueryRunner run;
+
+    @Before
+    public void setup() throws SQLException
+    {
+        datasource = new JdbcDataSource();
+        datasource.setURL("jdbc:h2:mem:changelog;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        run = new QueryRunner(datasource);
+        run.update("CREATE TABLE changelog (id int NOT NULL AUTO_INCREMENT PRIMARY KEY, otype varchar(255) NOT NULL, oid varchar(255) NOT NULL, year int NOT NULL DEFAULT 0, time datetime NOT NULL, status varchar(16) NOT NULL)");
+    }
+
+    @After
+    public void teardown() throws SQLException
+    {
+        run.update("DROP TABLE changelog");
+    }
+
+    @Test
+    public void testBatchInsert() throws SQLException
+    {
+        List<Entry<String, Change>> entries = new ArrayList<Entry<String, Change>>();
+        Date now = new Date();
+        for (int i = 0; i < 100000; i++) {
+            String oid = "S"+i+"-2013";
+            entries.add(new SimpleEntry<String, Change>("2013/bill/"+oid, new Change(oid, "bill", Storage.Status.MODIFIED, now)));
+        }
+
+        UpdateReporter reporter = new UpdateReporter();
+        reporter.setBatchSize(2000);
+        long start = System.nanoTime();
+        assertTrue(reporter.process(entries, datasource));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        logger.info(String.format("Inserted %d changes in %.3f seconds (%.0f/s)", entries.size(), seconds, entries.size() / seconds));
+
+        assertEquals(100000L, ((Number)run.query("SELECT COUNT(*) FROM changelog", new ScalarHandler<Object>())).longValue());
+        assertEquals("MODIFIED", run.query("SELECT status FROM changelog WHERE oid = 'S99999-2013'", new ScalarHandler<Object>()));
+    }
+
+    @Test
+    public void testMissingTime() throws SQLException
+    {
+        List<Entry<String, Change>> entries = new ArrayList<Entry<String, Change>>();
+        entries.add(new SimpleEntry<String, Change>("2013/bill/S1-2013", new Change("S1-2013", "bill", Storage.Status.NEW, null)));
+        entries.add(new SimpleEntry<String, Change>("2013/bill/S2-2013", new Change("S2-2013", "bill", Storage.Status.NEW, new Date())));
+
+        // A change without a time doesn't stop the rest of the batch
+        assertTrue(new UpdateReporter().process(entries, datasource));
+        assertEquals(2L, ((Number)run.query("SELECT COUNT(*) FROM changelog", new ScalarHandler<Object>())).longValue());
+    }
+}
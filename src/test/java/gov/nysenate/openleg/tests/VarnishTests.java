@@ -0,0 +1,71 @@
+package gov.nysenate.openleg.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gov.nysenate.openleg.model.Change;
+import gov.nysenate.openleg.services.Varnish;
+import gov.nysenate.openleg.util.Storage;
+
+import java.io.IOException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class VarnishTests
+{
+    private StubVarnishServer server;
+
+    @After
+    public void teardown() throws IOException
+    {
+        server.close();
+    }
+
+    private List<Entry<String, Change>> changes(int count)
+    {
+        List<Entry<String, Change>> changes = new ArrayList<Entry<String, Change>>();
+        for (int i = 1; i <= count; i++) {
+            String oid = "S"+i+"-2013";
+            changes.add(new SimpleEntry<String, Change>("2013/bill/"+oid, new Change(oid, "bill", Storage.Status.NEW, new Date())));
+        }
+        return changes;
+    }
+
+    @Test
+    public void testBanBatching() throws IOException
+    {
+        server = new StubVarnishServer(0);
+        Varnish varnish = new Varnish("127.0.0.1", server.getPort());
+        varnish.setBanBatchSize(2);
+
+        assertTrue(varnish.process(changes(3), null));
+        List<String> requests = server.getRequests();
+        assertEquals(4, requests.size());
+        assertEquals("BAN / HTTP/1.1 (S1-2013|S2-2013)", requests.get(0));
+        assertEquals("BAN / HTTP/1.1 (S3-2013)", requests.get(1));
+        assertEquals("PURGE search HTTP/1.1", requests.get(2));
+        assertEquals(1, server.getConnections());
+    }
+
+    @Test
+    public void testPipelinedPurges() throws IOException
+    {
+        // The server drops the connection every 3 requests; the rest are resent
+        server = new StubVarnishServer(3);
+        Varnish varnish = new Varnish("127.0.0.1", server.getPort());
+        varnish.setBanBatchSize(0);
+        varnish.setPipelineDepth(4);
+
+        assertTrue(varnish.process(changes(8), null));
+        List<String> requests = server.getRequests();
+        assertEquals(10, requests.size());
+        assertEquals("PURGE doc:S1-2013 HTTP/1.1", requests.get(0));
+        assertEquals("PURGE views HTTP/1.1", requests.get(9));
+        assertEquals(4, server.getConnections());
+    }
+}